@@ -2,9 +2,31 @@ package net.lrstudios.android.pachi;
 
 import android.app.Application;
 
+import lrstudios.games.ego.lib.EngineProcessPool;
+import lrstudios.util.Log;
+import lrstudios.util.android.AndroidLogger;
+
 public class MyApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+        Log.setLogger(new AndroidLogger());
+        if (BuildConfig.DEBUG)
+            PachiEngine.getMetrics().startPeriodicDump(60 * 1000);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // The running engine is handled by the game activity
+        if (level >= TRIM_MEMORY_RUNNING_LOW)
+            EngineProcessPool.trimAll();
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        // Standby engine processes can be started again when needed
+        EngineProcessPool.trimAll();
     }
 }
@@ -0,0 +1,201 @@
+package net.lrstudios.android.pachi;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import lrstudios.games.ego.lib.EngineProcess;
+import lrstudios.games.ego.lib.GtpResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the speed of Pachi on this device, so the bot levels can be converted into a number
+ * of playouts per move. A level then has the same strength on all devices, and fast devices
+ * play faster instead of playing stronger.
+ * <p/>
+ * The speed is measured once with a short benchmark, then adjusted after each move with the
+ * speed reported by Pachi (so it follows the device if it gets slower when it heats up).
+ * The speeds are stored for each number of threads, as 9x9 playouts per second.
+ */
+public class PachiCalibration {
+    private static final String TAG = "PachiCalibration";
+
+    /**
+     * Increment this counter when the benchmark or the pachi executable changes
+     * (this will force the calibration to run again).
+     */
+    private static final int CALIBRATION_VERSION = 1;
+
+    private static final String PREF_KEY_SPEED = "pachi_calibration_v" + CALIBRATION_VERSION + "_speed_";
+
+    private static final int BENCHMARK_PLAYOUTS = 5000;
+    private static final long BENCHMARK_TIMEOUT = 30000;
+
+    /**
+     * The speed (9x9 playouts per second) of the devices the levels were first tuned on,
+     * when they were defined as a thinking time.
+     */
+    private static final int REFERENCE_SPEED = 2000;
+
+    /**
+     * Slow devices can think up to this factor longer than the reference time to reach the
+     * playout budget of the level. Beyond this, the time is limited and the bot is weaker.
+     */
+    private static final double MAX_SLOWDOWN = 2.0;
+
+    /**
+     * Weight of a new measurement in the stored speed.
+     */
+    private static final double SPEED_SMOOTHING = 0.2;
+
+    /**
+     * Searches shorter than this are ignored to adjust the speed (mostly startup costs).
+     */
+    private static final double MIN_SEARCH_SECONDS = 1.0;
+
+    // Values used to estimate the size of the tree built by Pachi
+    private static final int EXPAND_PLAYOUTS = 8;
+    private static final int NODE_BYTES = 96;
+    private static final int MIN_TREE_SIZE = 32;
+
+    private final SharedPreferences _prefs;
+
+
+    public PachiCalibration(Context context) {
+        _prefs = PreferenceManager.getDefaultSharedPreferences(context);
+    }
+
+    /**
+     * Returns the thinking time of a level (in seconds) as it was defined before the calibration.
+     */
+    public static double getReferenceTime(int level, int boardSize) {
+        return (boardSize * 1.5) * (0.5 + level / 10.0);
+    }
+
+    /**
+     * Returns the time (in seconds) Pachi may think to play a move of the specified level. It is
+     * used if the playout budget can't be reached in time, or if the device is not calibrated.
+     */
+    public static int getMaxTime(int level, int boardSize) {
+        return (int) Math.round(getReferenceTime(level, boardSize) * MAX_SLOWDOWN);
+    }
+
+    /**
+     * Returns the number of playouts per move of the specified level.
+     */
+    public static int getPlayoutBudget(int level, int boardSize) {
+        return Math.max(1000, (int) Math.round(getReferenceTime(level, boardSize) * _scaleSpeed(REFERENCE_SPEED, boardSize)));
+    }
+
+    /**
+     * Returns an estimate of the memory (in MB) needed by the tree of a search of the specified
+     * number of playouts, with a safety margin.
+     */
+    public static int getTreeSize(int playouts, int boardSize) {
+        long bytes = (long) playouts / EXPAND_PLAYOUTS * (boardSize * boardSize + 1) * NODE_BYTES;
+        return Math.max(MIN_TREE_SIZE, (int) (bytes * 2 / (1024 * 1024)));
+    }
+
+
+    /**
+     * Returns true if the speed of this device with the specified number of threads is known.
+     */
+    public boolean isCalibrated(int threads) {
+        return _prefs.getInt(PREF_KEY_SPEED + threads, 0) > 0;
+    }
+
+    /**
+     * Returns the measured number of playouts per second on the specified board size,
+     * or 0 if the device has not been calibrated for this number of threads.
+     */
+    public int getSpeed(int boardSize, int threads) {
+        return _scaleSpeed(_prefs.getInt(PREF_KEY_SPEED + threads, 0), boardSize);
+    }
+
+    /**
+     * Runs the benchmark in a new Pachi process and stores the measured speed. This takes
+     * a few seconds.
+     *
+     * @return The measured 9x9 speed, in playouts per second.
+     * @throws IOException The engine could not be started, or did not answer in time.
+     */
+    public synchronized int runBenchmark(File engineFile, int threads) throws IOException {
+        EngineProcess process = EngineProcess.start(new String[]{
+                engineFile.getAbsolutePath(), "-t", "=" + BENCHMARK_PLAYOUTS,
+                "threads=" + threads + ",max_tree_size=" + MIN_TREE_SIZE + ",pondering=0"});
+        try {
+            // Best speed, and number of searches
+            final int[] speed = new int[2];
+            PachiStatsParser parser = new PachiStatsParser();
+            parser.addListener(new PachiStatsAdapter() {
+                @Override
+                public void onSearchSpeed(PachiStatsParser.SearchSpeed searchSpeed) {
+                    // The first search is slower (memory allocation, caches), keep the best one
+                    synchronized (speed) {
+                        speed[0] = Math.max(speed[0], searchSpeed.gamesPerSecond);
+                        speed[1]++;
+                        speed.notifyAll();
+                    }
+                }
+            });
+            process.setErrorListener(parser);
+
+            String[] commands = {"boardsize 9", "clear_board", "komi 7", "genmove b", "genmove w", "genmove b"};
+            Future<GtpResponse>[] responses = process.getClient().sendAll(commands);
+            long end = System.currentTimeMillis() + BENCHMARK_TIMEOUT;
+            int result;
+            try {
+                for (Future<GtpResponse> response : responses)
+                    response.get(Math.max(1, end - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+                // The standard error is read by another thread, so the last speed may not be there yet
+                synchronized (speed) {
+                    long remaining;
+                    while (speed[1] < 3 && (remaining = end - System.currentTimeMillis()) > 0)
+                        speed.wait(remaining);
+                    result = speed[0];
+                }
+            }
+            catch (Exception e) {
+                throw new IOException("The benchmark did not complete", e);
+            }
+            if (result <= 0)
+                throw new IOException("Pachi did not report its speed");
+
+            Log.i(TAG, "Measured speed : " + result + " playouts/s with " + threads + " threads");
+            _prefs.edit().putInt(PREF_KEY_SPEED + threads, result).apply();
+            return result;
+        }
+        finally {
+            process.destroy();
+        }
+    }
+
+    /**
+     * Adjusts the stored speed with the speed of a search made during a game.
+     */
+    public void onSearchSpeed(PachiStatsParser.SearchSpeed speed, int boardSize, int threads) {
+        if (speed.seconds < MIN_SEARCH_SECONDS || speed.gamesPerSecond <= 0 || !isCalibrated(threads))
+            return;
+
+        int measured = (int) Math.round(speed.gamesPerSecond * boardSize * boardSize / 81.0);
+        int current = _prefs.getInt(PREF_KEY_SPEED + threads, 0);
+        int updated = (int) Math.round(current + (measured - current) * SPEED_SMOOTHING);
+        if (updated > 0 && updated != current)
+            _prefs.edit().putInt(PREF_KEY_SPEED + threads, updated).apply();
+    }
+
+
+    /**
+     * Converts a 9x9 speed to another board size. A playout is roughly proportional
+     * to the number of intersections.
+     */
+    private static int _scaleSpeed(int speed, int boardSize) {
+        return (int) Math.round(speed * 81.0 / (boardSize * boardSize));
+    }
+}
@@ -4,11 +4,21 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 import android.util.Log;
+import lrstudios.games.ego.lib.AnalysisDispatcher;
+import lrstudios.games.ego.lib.AnalysisInfo;
+import lrstudios.games.ego.lib.AnalysisListener;
+import lrstudios.games.ego.lib.Coords;
+import lrstudios.games.ego.lib.EngineResultCache;
 import lrstudios.games.ego.lib.ExternalGtpEngine;
+import lrstudios.games.ego.lib.GoGame;
+import lrstudios.games.ego.lib.GtpMetricsRecorder;
+import lrstudios.games.ego.lib.OpeningBook;
 import lrstudios.games.ego.lib.Utils;
 import lrstudios.util.android.AndroidUtils;
+import lrstudios.util.android.CpuInfo;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Properties;
 
 
@@ -26,8 +36,56 @@ public class PachiEngine extends ExternalGtpEngine {
 
     private static final String PREF_KEY_VERSION = "pachi_exe_version";
 
-    private int _time = 600;
+    /**
+     * Pachi prints its progress every REPORT_FREQ playouts (per thread). The default (10000) is
+     * too slow for a live analysis on a phone.
+     */
+    private static final int REPORT_FREQ = 1000;
+
+    /**
+     * Values of the "performance" property, which chooses the number of threads and the
+     * thinking time together.
+     */
+    public static final String
+            PERFORMANCE_MAX = "max",
+            PERFORMANCE_BALANCED = "balanced",
+            PERFORMANCE_BATTERY = "battery";
+
+    /**
+     * With the maximum strength policy, the bot plays more playouts than the level requires.
+     */
+    private static final double MAX_STRENGTH_FACTOR = 1.5;
+
+    /**
+     * Maximum number of answers kept in the result cache (a few hundred KB on disk).
+     */
+    private static final int RESULT_CACHE_SIZE = 20000;
+    private static final String RESULT_CACHE_FILE = "pachi_results.cache";
+
+    /**
+     * The opening book is read from the external files directory of the application, so a book
+     * built with OpeningBook.main() can be copied there.
+     */
+    private static final String OPENING_BOOK_FILE = "opening.book";
+
+    private static final GtpMetricsRecorder _metrics = new GtpMetricsRecorder();
+    private static final PachiStatsAggregate _stats = new PachiStatsAggregate(16);
+    private static final EngineResultCache _resultCache = new EngineResultCache(RESULT_CACHE_SIZE);
+    private static volatile boolean _resultCacheLoaded;
+    private static Thread _setupThread;
+    private static OpeningBook _openingBook;
+    private static boolean _openingBookLoaded;
+
+    private String _time = "600";
     private int _maxTreeSize = 256;
+    private int _maxRamTreeSize = 256;
+    private int _threads = 1;
+    private int _boardSize = 9;
+    private boolean _pondering = true;
+    private final PachiCalibration _calibration;
+    private final PachiStatsParser _statsParser = new PachiStatsParser();
+    private AnalysisDispatcher _analysisDispatcher;
+    private PachiStatsListener _analysisListener;
 
 
     public PachiEngine(Context context) {
@@ -37,23 +95,275 @@ public class PachiEngine extends ExternalGtpEngine {
         // be too high compared to the total RAM available, because Android can kill a
         // process at any time if it uses too much memory.
         if (totalRam > 0)
-            _maxTreeSize = Math.max(256, (int) Math.round(totalRam / 1024.0 / 1024.0 * 0.5));
+            _maxRamTreeSize = Math.max(256, (int) Math.round(totalRam / 1024.0 / 1024.0 * 0.5));
+        _maxTreeSize = _maxRamTreeSize;
+        setMetrics(_metrics);
+        setResultCache(_resultCache);
+
+        _calibration = new PachiCalibration(context);
+        _statsParser.addListener(_stats);
+        _statsParser.addListener(new PachiStatsAdapter() {
+            @Override
+            public void onSearchSpeed(PachiStatsParser.SearchSpeed speed) {
+                _calibration.onSearchSpeed(speed, _boardSize, _threads);
+            }
+        });
+    }
+
+    /**
+     * Returns the search statistics of the last moves played by Pachi.
+     */
+    public static PachiStatsAggregate getStats() {
+        return _stats;
+    }
+
+    /**
+     * Returns the parser which reads the search statistics of this engine, to add other listeners.
+     */
+    public PachiStatsParser getStatsParser() {
+        return _statsParser;
+    }
+
+    /**
+     * Returns the measurements of all commands sent to Pachi since the application started.
+     */
+    public static GtpMetricsRecorder getMetrics() {
+        return _metrics;
     }
 
+    /**
+     * Measures the speed of the device before the first game, so the level can be converted
+     * into a number of playouts. This is called from the UI thread, so the benchmark and the
+     * loading of the result cache run in the background (see {@link #_startSetup(int)}).
+     */
     @Override
     public boolean init(Properties properties) {
+        _startSetup(getThreadCount(properties.getProperty("performance")));
+        setOpeningBook("false".equals(properties.getProperty("opening_book")) ? null : _loadOpeningBook());
+        return super.init(properties);
+    }
+
+    /**
+     * Loads the result cache and runs the benchmark on another thread, if they are needed. The
+     * benchmark takes a few seconds : until the speed is known, readProperties() gives the level
+     * as the reference thinking time, and the next games use the measured speed.
+     */
+    private void _startSetup(final int threads) {
+        synchronized (PachiEngine.class) {
+            final boolean calibrate = !_calibration.isCalibrated(threads);
+            if ((!calibrate && _resultCacheLoaded) || (_setupThread != null && _setupThread.isAlive()))
+                return;
+
+            // The executable is extracted here, so it is never written by two threads at once
+            final File engineFile = getEngineFile();
+            final File cacheFile = new File(_context.getFilesDir(), RESULT_CACHE_FILE);
+            final PachiCalibration calibration = _calibration;
+            _setupThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (!_resultCacheLoaded) {
+                        _resultCache.load(cacheFile);
+                        _resultCacheLoaded = true;
+                    }
+                    if (calibrate) {
+                        try {
+                            calibration.runBenchmark(engineFile, threads);
+                        }
+                        catch (IOException e) {
+                            Log.e(TAG, "Cannot calibrate the engine, the level will be a thinking time", e);
+                        }
+                    }
+                }
+            }, TAG);
+            _setupThread.start();
+        }
+    }
+
+    /**
+     * Returns the opening book found in the external files directory, or null if there is none.
+     */
+    private OpeningBook _loadOpeningBook() {
+        synchronized (PachiEngine.class) {
+            if (!_openingBookLoaded) {
+                _openingBookLoaded = true;
+                File dir = _context.getExternalFilesDir(null);
+                File file = (dir == null) ? null : new File(dir, OPENING_BOOK_FILE);
+                if (file != null && file.exists()) {
+                    try {
+                        _openingBook = OpeningBook.open(file);
+                        Log.i(TAG, "Opening book loaded : " + _openingBook.getPositionCount() + " positions");
+                    }
+                    catch (IOException e) {
+                        Log.e(TAG, "Cannot load the opening book " + file, e);
+                    }
+                }
+            }
+            return _openingBook;
+        }
+    }
+
+    /**
+     * Also saves the result cache, so the answers of this session are kept for the next ones.
+     */
+    @Override
+    public void release() {
+        super.release();
+        synchronized (_resultCache) {
+            if (_resultCacheLoaded) {
+                Log.i(TAG, "Result cache : " + _resultCache.formatStats());
+                _resultCache.save(new File(_context.getFilesDir(), RESULT_CACHE_FILE));
+            }
+        }
+    }
+
+    /**
+     * The moves depend on the number of playouts (or the thinking time) and on the tree size.
+     */
+    @Override
+    protected String getCacheSettings() {
+        return super.getCacheSettings() + " -t " + _time + " max_tree_size=" + _maxTreeSize;
+    }
+
+    @Override
+    protected void readProperties(Properties properties) {
         int level = Utils.tryParseInt(properties.getProperty("level"), 5);
-        int boardsize = Utils.tryParseInt(properties.getProperty("boardsize"), 9);
+        _boardSize = Utils.tryParseInt(properties.getProperty("boardsize"), 9);
+        _pondering = !"false".equals(properties.getProperty("pondering"));
+        String performance = properties.getProperty("performance");
+        _threads = getThreadCount(performance);
+        double factor = PERFORMANCE_MAX.equals(performance) ? MAX_STRENGTH_FACTOR : 1.0;
 
-        _time = (int) Math.round((boardsize * 1.5) * (0.5 + level / 10.0));
-        return super.init(properties);
+        // Each level is a fixed number of playouts if this device can play them in a reasonable
+        // time, otherwise a thinking time
+        _maxTreeSize = _maxRamTreeSize;
+        int playouts = (int) Math.round(PachiCalibration.getPlayoutBudget(level, _boardSize) * factor);
+        int maxTime = (int) Math.round(PachiCalibration.getMaxTime(level, _boardSize) * factor);
+        int speed = _calibration.getSpeed(_boardSize, _threads);
+        if (speed > 0 && playouts / (double) speed <= maxTime) {
+            _time = "=" + playouts;
+            // When pondering, the tree keeps growing during the player's turn
+            if (!_pondering)
+                _maxTreeSize = Math.min(_maxRamTreeSize, PachiCalibration.getTreeSize(playouts, _boardSize));
+        }
+        else if (speed > 0) {
+            _time = "" + maxTime;
+        }
+        else {
+            _time = "" + Math.round(PachiCalibration.getReferenceTime(level, _boardSize) * factor);
+        }
+    }
+
+    /**
+     * Returns the number of threads used by Pachi with the specified performance policy.
+     * Pachi can't choose the cores its threads run on, so on big.LITTLE devices the balanced
+     * policy only starts one thread per big core : the slow cores would mostly make the
+     * search less efficient. The battery policy uses half of these threads, so the balanced
+     * policy uses at least two threads when the device has several cores.
+     */
+    public static int getThreadCount(String performance) {
+        CpuInfo cpu = CpuInfo.getInstance();
+        int coreCount = Math.max(1, cpu.getCoreCount());
+        int balanced = Math.min(coreCount, Math.max(2, cpu.getBigCoreCount()));
+        if (PERFORMANCE_MAX.equals(performance))
+            return coreCount;
+        else if (PERFORMANCE_BATTERY.equals(performance))
+            return Math.max(1, balanced / 2);
+        else
+            return balanced;
+    }
+
+    @Override
+    public boolean isPondering() {
+        return _pondering;
+    }
+
+    /**
+     * Pachi has no GTP command to only stop pondering : it only stops for play, undo, genmove and
+     * final_status_list, and answers the other commands (such as "name") while it keeps searching.
+     * Asking for the dead stones doesn't change the game state, and is cheap because the pondering
+     * has already run the playouts it needs (about 0.4 ms on 9x9 and 1 ms on 19x19, measured with
+     * a desktop build of Pachi after 2 seconds of pondering).
+     */
+    @Override
+    public void stopPondering() {
+        if (_pondering && !isSuspended())
+            sendGtpCommand("final_status_list dead");
+    }
+
+    /**
+     * The analysis is made of the progress printed by Pachi during its own searches, and during
+     * the player's turn if pondering is enabled.
+     */
+    @Override
+    public synchronized boolean startAnalysis(AnalysisListener listener) {
+        stopAnalysis();
+        final AnalysisDispatcher dispatcher = new AnalysisDispatcher(listener);
+        _analysisListener = new PachiStatsAdapter() {
+            @Override
+            public void onProgress(PachiStatsParser.Progress progress) {
+                AnalysisInfo info = _toAnalysisInfo(progress);
+                if (info != null)
+                    dispatcher.publish(info);
+            }
+        };
+        _analysisDispatcher = dispatcher;
+        _statsParser.addListener(_analysisListener);
+        return true;
+    }
+
+    @Override
+    public synchronized void stopAnalysis() {
+        if (_analysisDispatcher != null) {
+            _statsParser.removeListener(_analysisListener);
+            _analysisDispatcher.cancel();
+            _analysisDispatcher = null;
+            _analysisListener = null;
+        }
+    }
+
+    private AnalysisInfo _toAnalysisInfo(PachiStatsParser.Progress progress) {
+        GoGame game = getGame();
+        if (game == null)
+            return null;
+
+        // Pachi searches for the player to move : the engine during genmove, the player when pondering
+        byte color = game.getNextPlayer();
+        ArrayList<AnalysisInfo.Candidate> candidates = new ArrayList<>(progress.candidates.length);
+        for (int i = 0; i < progress.candidates.length; i++) {
+            Coords coords = _str2point(progress.candidates[i]);
+            if (coords != null)
+                candidates.add(new AnalysisInfo.Candidate(coords, progress.candidateWinRates[i], -1));
+        }
+        ArrayList<Coords> sequence = new ArrayList<>(progress.bestSequence.length);
+        for (String move : progress.bestSequence) {
+            Coords coords = _str2point(move);
+            if (coords == null)
+                break;
+            sequence.add(coords);
+        }
+        return new AnalysisInfo(color, color != getBotColor(), progress.playouts, progress.winRate,
+                candidates, sequence);
+    }
+
+    @Override
+    protected void onErrorLine(String line) {
+        // Pachi prints its progress several times per second, which is only worth logging in debug builds
+        if (BuildConfig.DEBUG)
+            Log.v(TAG, line);
+        _statsParser.onErrorLine(line);
     }
 
     @Override
     protected String[] getProcessArgs() {
         Log.v(TAG, "Set max_tree_size = " + _maxTreeSize);
         Log.v(TAG, "Set time = " + _time);
-        return new String[]{"-t", "" + _time, "max_tree_size=" + _maxTreeSize};
+        Log.v(TAG, "Set pondering = " + _pondering);
+        Log.v(TAG, "Set threads = " + _threads);
+        // Engine arguments are separated by commas. When pondering, Pachi keeps searching after
+        // its move and reuses the tree when the opponent plays.
+        String engineArgs = "max_tree_size=" + _maxTreeSize + ",pondering=" + (_pondering ? 1 : 0)
+                + ",threads=" + _threads + ",reportfreq=" + REPORT_FREQ;
+        return new String[]{"-t", _time, engineArgs};
     }
 
     @Override
@@ -0,0 +1,23 @@
+package net.lrstudios.android.pachi;
+
+
+/**
+ * An empty implementation of {@link PachiStatsListener}, to only override the needed methods.
+ */
+public class PachiStatsAdapter implements PachiStatsListener {
+    @Override
+    public void onProgress(PachiStatsParser.Progress progress) {
+    }
+
+    @Override
+    public void onMoveChosen(PachiStatsParser.MoveChosen move) {
+    }
+
+    @Override
+    public void onSearchSpeed(PachiStatsParser.SearchSpeed speed) {
+    }
+
+    @Override
+    public void onMemoryLimit(PachiStatsParser.MemoryLimit limit) {
+    }
+}
@@ -0,0 +1,125 @@
+package net.lrstudios.android.pachi;
+
+import java.util.Locale;
+
+
+/**
+ * Keeps rolling statistics about the last searches of Pachi : average speed, win rate, memory usage.
+ */
+public class PachiStatsAggregate implements PachiStatsListener {
+    private final int[] _gamesPerSecond;
+    private final double[] _searchSeconds;
+    private int _sampleCount;
+    private int _nextSample;
+
+    private int _moveCount;
+    private long _totalPlayedGames;
+    private int _memoryLimitHits;
+    private long _maxTreeSize;
+    private double _lastWinRate = Double.NaN;
+    private int _lastPlayouts;
+    private String _lastMove;
+
+
+    /**
+     * @param windowSize The number of searches used to compute the averages.
+     */
+    public PachiStatsAggregate(int windowSize) {
+        _gamesPerSecond = new int[windowSize];
+        _searchSeconds = new double[windowSize];
+    }
+
+
+    @Override
+    public synchronized void onProgress(PachiStatsParser.Progress progress) {
+        _lastWinRate = progress.winRate;
+        _lastPlayouts = progress.playouts;
+    }
+
+    @Override
+    public synchronized void onMoveChosen(PachiStatsParser.MoveChosen move) {
+        _moveCount++;
+        _totalPlayedGames += move.playedGames;
+        _lastWinRate = move.winRate;
+        _lastPlayouts = move.totalPlayouts;
+        _lastMove = move.move;
+    }
+
+    @Override
+    public synchronized void onSearchSpeed(PachiStatsParser.SearchSpeed speed) {
+        _gamesPerSecond[_nextSample] = speed.gamesPerSecond;
+        _searchSeconds[_nextSample] = speed.seconds;
+        _nextSample = (_nextSample + 1) % _gamesPerSecond.length;
+        _sampleCount = Math.min(_sampleCount + 1, _gamesPerSecond.length);
+    }
+
+    @Override
+    public synchronized void onMemoryLimit(PachiStatsParser.MemoryLimit limit) {
+        _memoryLimitHits++;
+        _maxTreeSize = limit.maxTreeSize;
+    }
+
+
+    /**
+     * Returns the average number of playouts per second of the last searches, or 0 if there
+     * was no search yet.
+     */
+    public synchronized int getAverageGamesPerSecond() {
+        if (_sampleCount == 0)
+            return 0;
+        long sum = 0;
+        for (int i = 0; i < _sampleCount; i++)
+            sum += _gamesPerSecond[i];
+        return (int) (sum / _sampleCount);
+    }
+
+    /**
+     * Returns the average duration of the last searches, in seconds.
+     */
+    public synchronized double getAverageSearchSeconds() {
+        if (_sampleCount == 0)
+            return 0;
+        double sum = 0;
+        for (int i = 0; i < _sampleCount; i++)
+            sum += _searchSeconds[i];
+        return sum / _sampleCount;
+    }
+
+    public synchronized int getMoveCount() {
+        return _moveCount;
+    }
+
+    public synchronized long getTotalPlayedGames() {
+        return _totalPlayedGames;
+    }
+
+    /**
+     * Returns the number of searches which have reached max_tree_size.
+     */
+    public synchronized int getMemoryLimitHits() {
+        return _memoryLimitHits;
+    }
+
+    /**
+     * Returns the last win rate estimated by Pachi for the player to move, or NaN.
+     */
+    public synchronized double getLastWinRate() {
+        return _lastWinRate;
+    }
+
+    public synchronized int getLastPlayouts() {
+        return _lastPlayouts;
+    }
+
+    public synchronized String getLastMove() {
+        return _lastMove;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US,
+                "moves=%d games=%d avg_speed=%d games/s avg_time=%.2fs memory_limit_hits=%d (max_tree_size=%d) last=%s %.3f (%d playouts)",
+                _moveCount, _totalPlayedGames, getAverageGamesPerSecond(), getAverageSearchSeconds(),
+                _memoryLimitHits, _maxTreeSize, _lastMove, _lastWinRate, _lastPlayouts);
+    }
+}
@@ -0,0 +1,31 @@
+package net.lrstudios.android.pachi;
+
+import java.util.EventListener;
+
+
+/**
+ * Receives the search statistics printed by Pachi (see {@link PachiStatsParser}).
+ * All methods are called from the thread which reads the standard error of the engine.
+ */
+public interface PachiStatsListener extends EventListener {
+    /**
+     * Called periodically during a search (or while pondering).
+     */
+    void onProgress(PachiStatsParser.Progress progress);
+
+    /**
+     * Called when a search has ended and the engine has chosen its move.
+     */
+    void onMoveChosen(PachiStatsParser.MoveChosen move);
+
+    /**
+     * Called after each genmove, with the speed of the search.
+     */
+    void onSearchSpeed(PachiStatsParser.SearchSpeed speed);
+
+    /**
+     * Called when the search tree has reached max_tree_size (the search goes on, but the tree
+     * won't grow anymore).
+     */
+    void onMemoryLimit(PachiStatsParser.MemoryLimit limit);
+}
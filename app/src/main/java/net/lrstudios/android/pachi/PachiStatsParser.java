@@ -0,0 +1,344 @@
+package net.lrstudios.android.pachi;
+
+import lrstudios.games.ego.lib.EngineProcess;
+import lrstudios.util.EventListenerList;
+
+
+/**
+ * Reads the lines written by Pachi on its standard error and turns the search statistics into
+ * events. Other lines are ignored. The recognized lines are :
+ * <pre>
+ * [10000] best 0.523128 xkomi 0.0 | seq D4  C3  D3  C4  | can D4(0.523) C3(0.498) ...
+ * *** WINNER is D4 (4,4) with score 0.5231 (6021/10000:10000/10000 games), extra komi 0.000000
+ * genmove in 2.01s (4975 games/s, 2487 games/s/thread)
+ * memory limit hit (268435500 > 268435456)
+ * </pre>
+ * The last progress line of a pondering search is prefixed with "(pondering) ".
+ * <p/>
+ * Lines are parsed in place, only the move coordinates are copied.
+ */
+public class PachiStatsParser implements EngineProcess.ErrorListener {
+    private static final String
+            _PONDERING = "(pondering) ",
+            _BEST = "best ",
+            _XKOMI = "xkomi ",
+            _SEQ = "| seq ",
+            _CAN = "| can ",
+            _WINNER = "*** WINNER is ",
+            _WITH_SCORE = "with score ",
+            _GENMOVE = "genmove in ",
+            _MEMORY_LIMIT = "memory limit hit (";
+
+    private final EventListenerList _listeners = new EventListenerList();
+    private String _line;
+    private int _pos;
+
+
+    public void addListener(PachiStatsListener listener) {
+        _listeners.add(PachiStatsListener.class, listener);
+    }
+
+    public void removeListener(PachiStatsListener listener) {
+        _listeners.remove(PachiStatsListener.class, listener);
+    }
+
+
+    @Override
+    public void onErrorLine(String line) {
+        _line = line;
+        _pos = 0;
+        boolean pondering = _skip(_PONDERING);
+
+        if (_skip("[")) {
+            Progress progress = _parseProgress(pondering);
+            if (progress != null) {
+                for (PachiStatsListener listener : _listeners.getListeners(PachiStatsListener.class))
+                    listener.onProgress(progress);
+            }
+        }
+        else if (_skip(_WINNER)) {
+            MoveChosen move = _parseMoveChosen();
+            if (move != null) {
+                for (PachiStatsListener listener : _listeners.getListeners(PachiStatsListener.class))
+                    listener.onMoveChosen(move);
+            }
+        }
+        else if (_skip(_GENMOVE)) {
+            SearchSpeed speed = _parseSearchSpeed();
+            if (speed != null) {
+                for (PachiStatsListener listener : _listeners.getListeners(PachiStatsListener.class))
+                    listener.onSearchSpeed(speed);
+            }
+        }
+        else if (_skip(_MEMORY_LIMIT)) {
+            long treeSize = _readLong();
+            long maxTreeSize = (_skip(" > ")) ? _readLong() : -1;
+            if (treeSize >= 0 && maxTreeSize >= 0) {
+                MemoryLimit limit = new MemoryLimit(treeSize, maxTreeSize);
+                for (PachiStatsListener listener : _listeners.getListeners(PachiStatsListener.class))
+                    listener.onMemoryLimit(limit);
+            }
+        }
+        _line = null;
+    }
+
+
+    // [10000] best 0.523128 xkomi 0.0 | seq D4  C3  D3  C4  | can ...
+    private Progress _parseProgress(boolean pondering) {
+        long playouts = _readLong();
+        if (playouts < 0 || !_skip("] ") || !_skip(_BEST))
+            return null;
+        double winRate = _readDouble();
+        if (Double.isNaN(winRate))
+            return null;
+        _skipSpaces();
+
+        double extraKomi = 0;
+        if (_skip(_XKOMI)) {
+            extraKomi = _readDouble();
+            _skipSpaces();
+        }
+
+        String[] sequence = new String[4];
+        int count = 0;
+        if (_skip(_SEQ)) {
+            _skipSpaces();
+            while (count < sequence.length && _pos < _line.length() && _line.charAt(_pos) != '|') {
+                sequence[count++] = _readWord();
+                _skipSpaces();
+            }
+        }
+        String[] trimmedSequence = new String[count];
+        System.arraycopy(sequence, 0, trimmedSequence, 0, count);
+
+        // Candidates, such as "D4(0.523) C3(0.498)"
+        String[] candidates = new String[4];
+        double[] winRates = new double[4];
+        count = 0;
+        if (_skip(_CAN)) {
+            _skipSpaces();
+            while (count < candidates.length && _pos < _line.length()) {
+                int start = _pos;
+                int end = _line.indexOf('(', start);
+                if (end < 0)
+                    break;
+                _pos = end + 1;
+                double value = _readDouble();
+                if (Double.isNaN(value) || !_skip(")"))
+                    break;
+                candidates[count] = _line.substring(start, end);
+                winRates[count++] = value;
+                _skipSpaces();
+            }
+        }
+        String[] trimmedCandidates = new String[count];
+        double[] trimmedWinRates = new double[count];
+        System.arraycopy(candidates, 0, trimmedCandidates, 0, count);
+        System.arraycopy(winRates, 0, trimmedWinRates, 0, count);
+
+        return new Progress(pondering, (int) playouts, winRate, extraKomi, trimmedSequence,
+                trimmedCandidates, trimmedWinRates);
+    }
+
+    // D4 (4,4) with score 0.5231 (6021/10000:10000/10000 games), extra komi 0.000000
+    private MoveChosen _parseMoveChosen() {
+        String move = _readWord();
+        if (move == null)
+            return null;
+        int index = _line.indexOf(_WITH_SCORE, _pos);
+        if (index < 0)
+            return null;
+        _pos = index + _WITH_SCORE.length();
+
+        double winRate = _readDouble();
+        if (Double.isNaN(winRate) || !_skip(" ("))
+            return null;
+        long movePlayouts = _readLong();
+        if (!_skip("/"))
+            return null;
+        long totalPlayouts = _readLong();
+        if (!_skip(":"))
+            return null;
+        long newPlayouts = _readLong();
+        if (!_skip("/"))
+            return null;
+        long playedGames = _readLong();
+        if (movePlayouts < 0 || totalPlayouts < 0 || newPlayouts < 0 || playedGames < 0)
+            return null;
+        return new MoveChosen(move, winRate, (int) movePlayouts, (int) totalPlayouts, (int) playedGames);
+    }
+
+    // 2.01s (4975 games/s, 2487 games/s/thread)
+    private SearchSpeed _parseSearchSpeed() {
+        double time = _readDouble();
+        if (Double.isNaN(time) || !_skip("s ("))
+            return null;
+        long gamesPerSecond = _readLong();
+        if (gamesPerSecond < 0 || !_skip(" games/s, "))
+            return null;
+        long gamesPerSecondPerThread = _readLong();
+        if (gamesPerSecondPerThread < 0)
+            return null;
+        return new SearchSpeed(time, (int) gamesPerSecond, (int) gamesPerSecondPerThread);
+    }
+
+
+    private boolean _skip(String expected) {
+        if (_line.startsWith(expected, _pos)) {
+            _pos += expected.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void _skipSpaces() {
+        while (_pos < _line.length() && _line.charAt(_pos) == ' ')
+            _pos++;
+    }
+
+    /**
+     * Reads a positive integer, or returns -1 if there is no digit at the current position.
+     */
+    private long _readLong() {
+        int start = _pos;
+        long value = 0;
+        int len = _line.length();
+        while (_pos < len) {
+            char ch = _line.charAt(_pos);
+            if (ch < '0' || ch > '9')
+                break;
+            value = value * 10 + (ch - '0');
+            _pos++;
+        }
+        return (_pos > start) ? value : -1;
+    }
+
+    /**
+     * Reads a decimal number such as "0.5231" or "-1.5", or returns NaN if there is no number
+     * at the current position.
+     */
+    private double _readDouble() {
+        boolean negative = false;
+        if (_pos < _line.length() && _line.charAt(_pos) == '-') {
+            negative = true;
+            _pos++;
+        }
+        long integer = _readLong();
+        if (integer < 0)
+            return Double.NaN;
+
+        double value = integer;
+        if (_pos < _line.length() && _line.charAt(_pos) == '.') {
+            _pos++;
+            int start = _pos;
+            long fraction = _readLong();
+            if (fraction > 0)
+                value += fraction / Math.pow(10, _pos - start);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads the next word (skipping the spaces before it), or returns null at the end of the line.
+     */
+    private String _readWord() {
+        _skipSpaces();
+        int start = _pos;
+        while (_pos < _line.length() && _line.charAt(_pos) != ' ')
+            _pos++;
+        return (_pos > start) ? _line.substring(start, _pos) : null;
+    }
+
+
+    /**
+     * The state of a search in progress.
+     */
+    public static final class Progress {
+        public final boolean pondering;
+        public final int playouts;
+        /**
+         * The estimated win rate of the best move, for the player to move (between 0 and 1).
+         */
+        public final double winRate;
+        public final double extraKomi;
+        /**
+         * The expected sequence of moves (GTP coordinates), up to 4 moves.
+         */
+        public final String[] bestSequence;
+        /**
+         * The moves with the most playouts (GTP coordinates), up to 4 moves, best first.
+         */
+        public final String[] candidates;
+        /**
+         * The win rate of each candidate.
+         */
+        public final double[] candidateWinRates;
+
+        Progress(boolean pondering, int playouts, double winRate, double extraKomi, String[] bestSequence,
+                 String[] candidates, double[] candidateWinRates) {
+            this.pondering = pondering;
+            this.playouts = playouts;
+            this.winRate = winRate;
+            this.extraKomi = extraKomi;
+            this.bestSequence = bestSequence;
+            this.candidates = candidates;
+            this.candidateWinRates = candidateWinRates;
+        }
+    }
+
+    /**
+     * The move chosen at the end of a search.
+     */
+    public static final class MoveChosen {
+        /**
+         * The move, in GTP coordinates.
+         */
+        public final String move;
+        public final double winRate;
+        public final int movePlayouts;
+        /**
+         * The number of playouts in the tree (including the ones reused from the previous searches).
+         */
+        public final int totalPlayouts;
+        /**
+         * The number of playouts done during this search.
+         */
+        public final int playedGames;
+
+        MoveChosen(String move, double winRate, int movePlayouts, int totalPlayouts, int playedGames) {
+            this.move = move;
+            this.winRate = winRate;
+            this.movePlayouts = movePlayouts;
+            this.totalPlayouts = totalPlayouts;
+            this.playedGames = playedGames;
+        }
+    }
+
+    /**
+     * The speed of the last genmove.
+     */
+    public static final class SearchSpeed {
+        public final double seconds;
+        public final int gamesPerSecond;
+        public final int gamesPerSecondPerThread;
+
+        SearchSpeed(double seconds, int gamesPerSecond, int gamesPerSecondPerThread) {
+            this.seconds = seconds;
+            this.gamesPerSecond = gamesPerSecond;
+            this.gamesPerSecondPerThread = gamesPerSecondPerThread;
+        }
+    }
+
+    /**
+     * The size of the tree when it reached the memory limit, in bytes.
+     */
+    public static final class MemoryLimit {
+        public final long treeSize;
+        public final long maxTreeSize;
+
+        MemoryLimit(long treeSize, long maxTreeSize) {
+            this.treeSize = treeSize;
+            this.maxTreeSize = maxTreeSize;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.bench;
+
+import lrstudios.util.io.BitReader;
+import lrstudios.util.io.BitWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+
+/**
+ * Throughput of {@link BitWriter} and {@link BitReader}, in values per second. The values have
+ * random widths between 1 and 17 bits, like the coordinates and counts of the LRF format.
+ */
+@State(Scope.Thread)
+public class BitIoBenchmark {
+    private static final int VALUES = 65536;
+
+    private final long[] _values = new long[VALUES];
+    private final int[] _widths = new int[VALUES];
+    private ByteBuffer _buffer;
+
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < VALUES; i++) {
+            _widths[i] = 1 + random.nextInt(17);
+            _values[i] = random.nextInt(1 << _widths[i]);
+        }
+        _buffer = ByteBuffer.allocate(VALUES * 3);
+        write();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public int write() throws IOException {
+        _buffer.clear();
+        BitWriter writer = new BitWriter(_buffer);
+        for (int i = 0; i < VALUES; i++)
+            writer.write(_values[i], _widths[i]);
+        writer.flush();
+        return _buffer.position();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public long read() throws IOException {
+        BitReader reader = new BitReader(ByteBuffer.wrap(_buffer.array(), 0, _buffer.capacity()));
+        long sum = 0;
+        for (int i = 0; i < VALUES; i++)
+            sum += reader.read(_widths[i]);
+        return sum;
+    }
+}
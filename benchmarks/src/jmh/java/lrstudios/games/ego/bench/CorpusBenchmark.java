@@ -0,0 +1,100 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.bench;
+
+import lrstudios.games.ego.lib.GoBoard;
+import lrstudios.games.ego.lib.GoGame;
+import lrstudios.games.ego.lib.SgfParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Benchmarks on the files of the corpus directory (given by the "corpus.dir" property) :
+ * loading and replaying each game, and counting the legal move sequences like {@link Perft}.
+ */
+@State(Scope.Thread)
+public class CorpusBenchmark {
+    @Param({"many_captures.sgf", "deep_variations.sgf", "huge_chain.sgf", "problems.sgf"})
+    public String file;
+
+    @Param({"ko.sgf", "huge_chain.sgf", "empty9.sgf"})
+    public String perftPosition;
+
+    private byte[] _sgf;
+    private GoBoard _perftBoard;
+    private byte _perftColor;
+
+
+    @Setup
+    public void setup() throws IOException {
+        File directory = new File(System.getProperty("corpus.dir", "corpus"));
+        _sgf = _readFile(new File(directory, file));
+        GoGame game = Perft.loadPosition(directory, perftPosition);
+        _perftBoard = game.board;
+        _perftColor = game.getNextPlayer();
+    }
+
+    /**
+     * Parses the file, then plays the main variation of each game to its last move.
+     */
+    @Benchmark
+    public int replay() throws IOException {
+        int moves = 0;
+        for (GoGame game : new SgfParser().parse(new ByteArrayInputStream(_sgf))) {
+            game.gotoLastMove();
+            moves += game.getCurrentMoveNumber();
+        }
+        return moves;
+    }
+
+    /**
+     * Counts the legal move sequences of length 3.
+     */
+    @Benchmark
+    public long perft() {
+        return Perft.count(_perftBoard, _perftColor, _perftBoard.getKoCoords(), 3);
+    }
+
+
+    private static byte[] _readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        InputStream stream = new FileInputStream(file);
+        try {
+            int offset = 0;
+            int count;
+            while (offset < data.length && (count = stream.read(data, offset, data.length - offset)) > 0)
+                offset += count;
+        }
+        finally {
+            stream.close();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.bench;
+
+import lrstudios.games.ego.lib.GoBoard;
+import lrstudios.games.ego.lib.GoGame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Rules of {@link GoBoard} : placing stones (with captures), legality and liberties.
+ * The positions come from random games, stopped after the board is about half full.
+ */
+@State(Scope.Thread)
+public class GoBoardBenchmark {
+    @Param({"9", "13", "19"})
+    public int size;
+
+    private int[] _moves;
+    private GoBoard _position;
+
+
+    @Setup
+    public void setup() {
+        _moves = Positions.randomMoves(size, size * size, 42);
+        GoGame game = Positions.randomGame(size, size * size / 2, 42);
+        _position = game.board;
+    }
+
+    /**
+     * Places all stones of a whole game on an empty board.
+     */
+    @Benchmark
+    public GoBoard placeMove() {
+        GoBoard board = new GoBoard(size);
+        int[] moves = _moves;
+        for (int i = 0; i < moves.length; i += 3)
+            board.placeMove(moves[i], moves[i + 1], (byte) moves[i + 2]);
+        return board;
+    }
+
+    /**
+     * Checks the legality of a move on each intersection.
+     */
+    @Benchmark
+    public int isLegal() {
+        int count = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (_position.isLegal(x, y, GoBoard.BLACK))
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Looks for the liberties of each stone.
+     */
+    @Benchmark
+    public int hasLiberty() {
+        int count = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (_position.hasLiberty(x, y))
+                    count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.bench;
+
+import lrstudios.games.ego.lib.GoGame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Navigation in long games and scoring with {@link GoGame}.
+ */
+@State(Scope.Thread)
+public class GoGameBenchmark {
+    @Param({"100", "300"})
+    public int moves;
+
+    private GoGame _game;
+    private GoGame _finishedGame;
+
+
+    @Setup
+    public void setup() {
+        _game = Positions.randomGame(19, moves, 42);
+        _game.gotoFirstMove();
+        _finishedGame = Positions.randomGame(19, 19 * 19 * 2, 42);
+    }
+
+    /**
+     * Goes to the last move, then back to the first one.
+     */
+    @Benchmark
+    public int navigate() {
+        return _game.navigate(moves) + _game.navigate(-moves);
+    }
+
+    /**
+     * Counts the territories at the end of a game.
+     */
+    @Benchmark
+    public GoGame.Result computeTerritories() {
+        return _finishedGame.computeTerritories();
+    }
+}
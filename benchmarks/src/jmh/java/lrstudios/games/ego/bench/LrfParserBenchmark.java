@@ -0,0 +1,76 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.bench;
+
+import lrstudios.games.ego.lib.GoGame;
+import lrstudios.games.ego.lib.LrfParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Round-trips of a game with variations through the LRF format, with both encodings
+ * of the move tree.
+ */
+@State(Scope.Thread)
+public class LrfParserBenchmark {
+    @Param({"0", "1"}) // LrfParser.ENCODING_FIXED, ENCODING_ARITHMETIC
+    public int encoding;
+
+    private GoGame _game;
+    private byte[] _lrf;
+    private ByteArrayOutputStream _output;
+
+
+    @Setup
+    public void setup() throws IOException {
+        _game = Positions.variationTree(19, 100, 200, 10, 42);
+        _output = new ByteArrayOutputStream();
+        save();
+        _lrf = _output.toByteArray();
+    }
+
+    @Benchmark
+    public int save() throws IOException {
+        _output.reset();
+        LrfParser parser = new LrfParser();
+        parser.setEncoding(encoding);
+        parser.save(_game, _output);
+        return _output.size();
+    }
+
+    @Benchmark
+    public GoGame parse() throws IOException {
+        return new LrfParser().parse(ByteBuffer.wrap(_lrf));
+    }
+
+    @Benchmark
+    public GoGame roundTrip() throws IOException {
+        save();
+        return new LrfParser().parse(ByteBuffer.wrap(_output.toByteArray()));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.bench;
+
+import lrstudios.games.ego.lib.GoBoard;
+import lrstudios.games.ego.lib.GoGame;
+import lrstudios.games.ego.lib.SgfParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+
+/**
+ * Generates the positions used by the benchmarks. The games are random but reproducible
+ * (the same seed always gives the same game), so the results can be compared between runs.
+ */
+final class Positions {
+    private Positions() {
+    }
+
+    /**
+     * Returns a random game of the specified number of moves. The players never fill their own
+     * eyes, and pass when they have no other legal move.
+     */
+    static GoGame randomGame(int size, int moves, long seed) {
+        GoGame game = new GoGame(size, 6.5, 0);
+        Random random = new Random(seed);
+        for (int i = 0; i < moves; i++)
+            _playRandomMove(game, random);
+        return game;
+    }
+
+    /**
+     * Returns a game with many variations : a main line of the specified length, and
+     * the specified number of variations which start from random moves of the main line.
+     */
+    static GoGame variationTree(int size, int mainLine, int variations, int variationLength, long seed) {
+        GoGame game = randomGame(size, mainLine, seed);
+        Random random = new Random(seed + 1);
+        for (int i = 0; i < variations; i++) {
+            game.gotoLastMove();
+            game.navigate(-random.nextInt(mainLine));
+            for (int j = 0; j < variationLength; j++)
+                _playRandomMove(game, random);
+            game.gotoFirstMove();
+            game.gotoLastMove();
+        }
+        game.gotoFirstMove();
+        return game;
+    }
+
+    /**
+     * Returns the moves of a random game, as {x, y, color} triples (passes are not included).
+     */
+    static int[] randomMoves(int size, int moves, long seed) {
+        GoGame game = randomGame(size, moves, seed);
+        ArrayList<Integer> list = new ArrayList<>();
+        game.gotoFirstMove();
+        while (game.navigate(1) > 0) {
+            int x = game.getCurrentNode().x;
+            if (x >= 0) {
+                list.add(x);
+                list.add((int) game.getCurrentNode().y);
+                list.add((int) game.getCurrentNode().color);
+            }
+        }
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = list.get(i);
+        return result;
+    }
+
+    static byte[] toSgf(GoGame game) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new SgfParser().save(game, stream);
+        return stream.toByteArray();
+    }
+
+
+    private static void _playRandomMove(GoGame game, Random random) {
+        int size = game.board.getSize();
+        byte color = game.getNextPlayer();
+        int start = random.nextInt(size * size);
+        for (int i = 0; i < size * size; i++) {
+            int point = (start + i) % (size * size);
+            int x = point % size;
+            int y = point / size;
+            if (game.board.isLegal(x, y, color) && !_isEye(game.board, x, y, color)) {
+                game.playMove(x, y, color);
+                return;
+            }
+        }
+        game.pass();
+    }
+
+    private static boolean _isEye(GoBoard board, int x, int y, byte color) {
+        int size = board.getSize();
+        return (x == 0 || board.getColor(x - 1, y) == color)
+                && (x == size - 1 || board.getColor(x + 1, y) == color)
+                && (y == 0 || board.getColor(x, y - 1) == color)
+                && (y == size - 1 || board.getColor(x, y + 1) == color);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.bench;
+
+import lrstudios.games.ego.lib.GoGame;
+import lrstudios.games.ego.lib.SgfParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+
+/**
+ * Reading and writing SGF files with {@link SgfParser}. The small file is a single game of
+ * 250 moves, the huge one contains 2000 variations (about 40000 moves).
+ */
+@State(Scope.Thread)
+public class SgfParserBenchmark {
+    @Param({"small", "huge"})
+    public String file;
+
+    private GoGame _game;
+    private byte[] _sgf;
+    private ByteArrayOutputStream _output;
+
+
+    @Setup
+    public void setup() throws IOException {
+        if (file.equals("small"))
+            _game = Positions.randomGame(19, 250, 42);
+        else
+            _game = Positions.variationTree(19, 250, 2000, 20, 42);
+        _sgf = Positions.toSgf(_game);
+        _output = new ByteArrayOutputStream(_sgf.length * 2);
+    }
+
+    @Benchmark
+    public GoGame[] parse() throws IOException {
+        return new SgfParser().parse(new ByteArrayInputStream(_sgf));
+    }
+
+    @Benchmark
+    public int save() throws IOException {
+        _output.reset();
+        new SgfParser().save(_game, _output);
+        return _output.size();
+    }
+}
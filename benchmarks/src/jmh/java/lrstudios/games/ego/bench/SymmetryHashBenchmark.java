@@ -0,0 +1,82 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.bench;
+
+import lrstudios.games.ego.lib.GoBoard;
+import lrstudios.games.ego.lib.GoGame;
+import lrstudios.games.ego.lib.SymmetryHash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Canonical hashes of {@link SymmetryHash} : computed from the board, or kept up to date
+ * while the stones are placed.
+ */
+@State(Scope.Thread)
+public class SymmetryHashBenchmark {
+    @Param({"9", "19"})
+    public int size;
+
+    private int[] _moves;
+    private GoBoard _position;
+
+
+    @Setup
+    public void setup() {
+        _moves = Positions.randomMoves(size, size * size, 42);
+        GoGame game = Positions.randomGame(size, size * size / 2, 42);
+        _position = game.board;
+        _position.getSymmetryHash();
+    }
+
+    /**
+     * Computes the 8 hashes of a position from its stones.
+     */
+    @Benchmark
+    public long fromBoard() {
+        return new SymmetryHash(_position).getCanonicalHash(null, GoBoard.BLACK);
+    }
+
+    /**
+     * Reads the canonical hash of a position whose hashes are up to date.
+     */
+    @Benchmark
+    public long incremental() {
+        return _position.getCanonicalHash(GoBoard.BLACK);
+    }
+
+    /**
+     * Places all stones of a whole game on an empty board which updates its hashes
+     * (compare with GoBoardBenchmark.placeMove).
+     */
+    @Benchmark
+    public long placeMove() {
+        GoBoard board = new GoBoard(size);
+        board.getSymmetryHash();
+        int[] moves = _moves;
+        for (int i = 0; i < moves.length; i += 3)
+            board.placeMove(moves[i], moves[i + 1], (byte) moves[i + 2]);
+        return board.getCanonicalHash(GoBoard.BLACK);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.bench;
+
+import lrstudios.games.ego.lib.Coords;
+import lrstudios.games.ego.lib.GoBoard;
+import lrstudios.games.ego.lib.GoGame;
+import lrstudios.games.ego.lib.SgfParser;
+import lrstudios.games.ego.lib.Utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * Counts the sequences of legal moves of a given length from a position, like the "perft"
+ * of chess engines. The counts of the corpus positions are compared to known values, so the
+ * same run finds the regressions of the rules (captures, suicide, ko) and measures the speed
+ * of {@link GoBoard}.
+ * <p/>
+ * Passes are not counted, and only the simple ko rule is used (no superko). Each move is
+ * played on a copy of the board.
+ */
+public final class Perft {
+    private static final String GOLDEN_FILE = "perft.txt";
+
+    private final int _size;
+
+
+    private Perft(int size) {
+        _size = size;
+    }
+
+    /**
+     * Returns the number of sequences of legal moves of the specified length.
+     *
+     * @param color The color of the first move.
+     * @param ko    The intersection which can't be played because of a ko, or null.
+     */
+    public static long count(GoBoard board, byte color, Coords ko, int depth) {
+        int size = board.getSize();
+        int koPoint = (ko == null || ko.x < 0) ? -1 : ko.y * size + ko.x;
+        return new Perft(size)._count(board.getBoardArray().clone(), color, koPoint, depth);
+    }
+
+    /**
+     * Checks the counts of the positions listed in the perft.txt file of the corpus directory.
+     * Each line contains a file (with "#N" to select the Nth game of a collection), a depth and
+     * the expected count. The program exits with 1 if a count is wrong.
+     * <pre>
+     * Perft CORPUS_DIRECTORY [--update]
+     * </pre>
+     * With --update, the lines are printed with the current counts instead of being checked.
+     */
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "corpus");
+        boolean update = args.length > 1 && args[1].equals("--update");
+
+        int failures = 0;
+        long totalNodes = 0;
+        long totalTime = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(new File(directory, GOLDEN_FILE)), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    if (update)
+                        System.out.println(line);
+                    continue;
+                }
+
+                String[] words = line.split("\\s+");
+                GoGame game = loadPosition(directory, words[0]);
+                int depth = Integer.parseInt(words[1]);
+                long expected = Long.parseLong(words[2]);
+
+                long start = System.nanoTime();
+                long nodes = count(game.board, game.getNextPlayer(), game.board.getKoCoords(), depth);
+                long time = System.nanoTime() - start;
+                totalNodes += nodes;
+                totalTime += time;
+
+                if (update) {
+                    System.out.println(words[0] + " " + depth + " " + nodes);
+                }
+                else {
+                    boolean ok = nodes == expected;
+                    if (!ok)
+                        failures++;
+                    System.out.println(String.format(Locale.US, "%-28s depth %d : %12d nodes %12.0f nodes/s  %s",
+                            words[0], depth, nodes, nodes / (time / 1e9), ok ? "OK" : "FAILED (expected " + expected + ")"));
+                }
+            }
+        }
+        finally {
+            Utils.closeObject(reader);
+        }
+
+        if (!update) {
+            System.out.println(String.format(Locale.US, "Total : %d nodes in %.2f s (%.0f nodes/s), %d failed",
+                    totalNodes, totalTime / 1e9, totalNodes / (totalTime / 1e9), failures));
+        }
+        System.exit(failures > 0 ? 1 : 0);
+    }
+
+    /**
+     * Loads the last position of the main variation of a corpus file ("name.sgf" or "name.sgf#N").
+     */
+    static GoGame loadPosition(File directory, String name) throws IOException {
+        int index = 0;
+        int pos = name.indexOf('#');
+        if (pos >= 0) {
+            index = Integer.parseInt(name.substring(pos + 1)) - 1;
+            name = name.substring(0, pos);
+        }
+        GoGame game = SgfParser.parse(new File(directory, name))[index];
+        game.gotoLastMove();
+        return game;
+    }
+
+
+    private long _count(byte[] colors, byte color, int koPoint, int depth) {
+        GoBoard board = new GoBoard(_size, colors);
+        long nodes = 0;
+        for (int point = 0; point < colors.length; point++) {
+            int x = point % _size;
+            int y = point / _size;
+            if (point == koPoint || !board.isLegal(x, y, color))
+                continue;
+            if (depth == 1) {
+                nodes++;
+                continue;
+            }
+
+            byte[] next = colors.clone();
+            List<Coords> prisoners = new GoBoard(_size, next).placeMove(x, y, color);
+            nodes += _count(next, GoBoard.getOppositeColor(color), _getKoPoint(next, x, y, color, prisoners), depth - 1);
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the intersection which can't be played by the opponent after the specified
+     * move, or -1 if there is no ko. There is a ko if the move captured a single stone, and the
+     * played stone is alone with the captured intersection as its only liberty.
+     */
+    private int _getKoPoint(byte[] colors, int x, int y, byte color, List<Coords> prisoners) {
+        if (prisoners.size() != 1)
+            return -1;
+        int[][] neighbours = {{x - 1, y}, {x + 1, y}, {x, y - 1}, {x, y + 1}};
+        for (int[] n : neighbours) {
+            if (n[0] < 0 || n[1] < 0 || n[0] >= _size || n[1] >= _size)
+                continue;
+            byte neighbour = colors[n[1] * _size + n[0]];
+            if (neighbour == color)
+                return -1;
+            if (neighbour == GoBoard.EMPTY && (n[0] != prisoners.get(0).x || n[1] != prisoners.get(0).y))
+                return -1;
+        }
+        return prisoners.get(0).y * _size + prisoners.get(0).x;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.games.ego.lib;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+
+/**
+ * Delivers analysis updates to an {@link AnalysisListener} on the main thread, at a bounded rate.
+ * Updates published faster than that replace each other, so the listener only receives the latest
+ * one (by default, at most one update per frame).
+ */
+public final class AnalysisDispatcher {
+    public static final long DEFAULT_MIN_INTERVAL = 16;
+
+    private final Handler _handler = new Handler(Looper.getMainLooper());
+    private final AnalysisListener _listener;
+    private final long _minInterval;
+    private AnalysisInfo _latest;
+    private boolean _posted;
+    private boolean _cancelled;
+    private long _lastDelivery;
+
+    private final Runnable _deliver = new Runnable() {
+        @Override
+        public void run() {
+            AnalysisInfo info;
+            synchronized (AnalysisDispatcher.this) {
+                _posted = false;
+                if (_cancelled)
+                    return;
+                info = _latest;
+                _latest = null;
+                _lastDelivery = SystemClock.uptimeMillis();
+            }
+            if (info != null)
+                _listener.onAnalysis(info);
+        }
+    };
+
+
+    public AnalysisDispatcher(AnalysisListener listener) {
+        this(listener, DEFAULT_MIN_INTERVAL);
+    }
+
+    /**
+     * @param minInterval The minimum time between two updates, in milliseconds.
+     */
+    public AnalysisDispatcher(AnalysisListener listener, long minInterval) {
+        _listener = listener;
+        _minInterval = minInterval;
+    }
+
+
+    public AnalysisListener getListener() {
+        return _listener;
+    }
+
+    /**
+     * Publishes a new analysis (this can be called from any thread).
+     */
+    public synchronized void publish(AnalysisInfo info) {
+        if (_cancelled)
+            return;
+        _latest = info;
+        if (!_posted) {
+            _posted = true;
+            long delay = _lastDelivery + _minInterval - SystemClock.uptimeMillis();
+            _handler.postDelayed(_deliver, Math.max(0, delay));
+        }
+    }
+
+    /**
+     * Stops delivering updates. The pending update, if any, is dropped.
+     */
+    public synchronized void cancel() {
+        _cancelled = true;
+        _latest = null;
+        _handler.removeCallbacks(_deliver);
+    }
+}
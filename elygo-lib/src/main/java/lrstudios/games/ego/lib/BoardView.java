@@ -493,7 +493,13 @@ public final class BoardView extends SurfaceView implements SurfaceHolder.Callba
 
     private void _computeDimensions(boolean allowRotation) {
         final Rect maxBounds = new Rect(0, 0, _size - 1, _size - 1);
-        _clipBounds = (_baseBounds == null) ? _game.board.getBounds() : _baseBounds;
+        if (_baseBounds == null) {
+            lrstudios.util.Rect stoneBounds = _game.board.getBounds();
+            _clipBounds = new Rect(stoneBounds.left, stoneBounds.top, stoneBounds.right, stoneBounds.bottom);
+        }
+        else {
+            _clipBounds = _baseBounds;
+        }
 
         // _baseBounds avoids rotating/zooming the same problem multiple times (this may
         // happen especially when the user go to the preferences screen during playing
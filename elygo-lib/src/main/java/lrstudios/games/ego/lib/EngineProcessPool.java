@@ -0,0 +1,327 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.games.ego.lib;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Timer;
+import java.util.TimerTask;
+
+
+/**
+ * Keeps engine processes started with the same command line ready for use, so a new game (or
+ * a restart after the process was killed) doesn't have to wait for the engine to start.
+ * <p/>
+ * A process is obtained with {@link #lease()} and given back with {@link #release(EngineProcess)}.
+ * After each lease, the pool starts new processes in the background until it has
+ * {@link #setStandbyCount(int) standby count} idle processes.
+ * <p/>
+ * Each engine process may use a large part of the RAM, so only the pool used by the last lease
+ * keeps idle processes : the other pools (started with other settings) are trimmed. Idle
+ * processes are also killed after {@link #MAX_IDLE_TIME}.
+ */
+public final class EngineProcessPool {
+    private static final String TAG = "EngineProcessPool";
+
+    private static final long _LEASE_CHECK_TIMEOUT = 2000;
+    private static final long _RELEASE_CHECK_TIMEOUT = 60000;
+
+    /**
+     * Idle processes are killed after this time (in milliseconds).
+     */
+    public static final long MAX_IDLE_TIME = 5 * 60 * 1000;
+
+    private static final HashMap<String, EngineProcessPool> _pools = new HashMap<>();
+    private static EngineProcessPool _activePool;
+    private static int _defaultStandbyCount = 1;
+    private static Timer _trimTimer;
+
+    private final String[] _command;
+    private final ArrayDeque<EngineProcess> _idle = new ArrayDeque<>();
+    private int _standbyCount;
+    private int _starting;
+
+
+    private EngineProcessPool(String[] command, int standbyCount) {
+        _command = command;
+        _standbyCount = standbyCount;
+    }
+
+    /**
+     * Returns the pool of processes started with the specified command line.
+     *
+     * @param command The engine executable followed by its arguments.
+     */
+    public static EngineProcessPool getPool(String[] command) {
+        StringBuilder key = new StringBuilder();
+        for (String arg : command)
+            key.append(arg).append('\0');
+
+        synchronized (_pools) {
+            EngineProcessPool pool = _pools.get(key.toString());
+            if (pool == null) {
+                pool = new EngineProcessPool(command.clone(), _defaultStandbyCount);
+                _pools.put(key.toString(), pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Kills the idle processes of all pools (call this when the system is low on memory).
+     */
+    public static void trimAll() {
+        ArrayList<EngineProcessPool> pools;
+        synchronized (_pools) {
+            pools = new ArrayList<>(_pools.values());
+        }
+        for (EngineProcessPool pool : pools)
+            pool.trim(0);
+    }
+
+    /**
+     * Kills the processes of all pools which have been idle for more than the specified time.
+     */
+    public static void trimAllIdle(long maxIdleMillis) {
+        ArrayList<EngineProcessPool> pools;
+        synchronized (_pools) {
+            pools = new ArrayList<>(_pools.values());
+        }
+        for (EngineProcessPool pool : pools)
+            pool.trimIdle(maxIdleMillis);
+    }
+
+    /**
+     * Sets the standby count of all pools, including the ones created later (1 by default,
+     * 0 disables the pools, which is better on devices with little RAM).
+     */
+    public static void setDefaultStandbyCount(int count) {
+        ArrayList<EngineProcessPool> pools;
+        synchronized (_pools) {
+            _defaultStandbyCount = Math.max(0, count);
+            pools = new ArrayList<>(_pools.values());
+        }
+        for (EngineProcessPool pool : pools)
+            pool.setStandbyCount(count);
+    }
+
+
+    /**
+     * Sets the number of idle processes to keep ready (see {@link #setDefaultStandbyCount(int)}).
+     */
+    public void setStandbyCount(int count) {
+        synchronized (this) {
+            _standbyCount = Math.max(0, count);
+        }
+        trim(_standbyCount);
+    }
+
+    /**
+     * Returns the number of idle processes.
+     */
+    public synchronized int getIdleCount() {
+        return _idle.size();
+    }
+
+    /**
+     * Returns a running engine process. An idle process is returned if there is a healthy one,
+     * otherwise a new process is started.
+     *
+     * @throws IOException The process could not be started.
+     */
+    public EngineProcess lease() throws IOException {
+        _setActive();
+        EngineProcess process;
+        while ((process = _pollIdle()) != null) {
+            if (process.checkHealth(_LEASE_CHECK_TIMEOUT))
+                break;
+            Log.w(TAG, "Discarding an idle engine process which is not responding");
+            process.destroy();
+        }
+
+        if (process == null)
+            process = EngineProcess.start(_command);
+        prewarm();
+        return process;
+    }
+
+    /**
+     * Gives back a process which is no longer used. It is kept for the next lease if it still
+     * responds and the pool isn't full, otherwise it is killed. This doesn't block the caller.
+     */
+    public void release(final EngineProcess process) {
+        process.setErrorListener(null);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Waits for the pending commands (such as genmove) to complete
+                boolean keep = process.checkHealth(_RELEASE_CHECK_TIMEOUT);
+                if (keep) {
+                    try {
+                        keep = process.getClient().sendAndWait("clear_board").isSuccess();
+                    }
+                    catch (IOException e) {
+                        keep = false;
+                    }
+                }
+
+                if (keep && _addIdle(process))
+                    return;
+                process.destroy();
+            }
+        }, TAG).start();
+    }
+
+    /**
+     * Starts new processes in the background until the pool contains enough idle processes.
+     * The other pools are trimmed, because this one will be used by the next lease.
+     */
+    public void prewarm() {
+        _setActive();
+        final int count;
+        synchronized (this) {
+            count = _standbyCount - _idle.size() - _starting;
+            if (count <= 0)
+                return;
+            _starting += count;
+        }
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    EngineProcess process = null;
+                    try {
+                        process = EngineProcess.start(_command);
+                        if (!process.checkHealth(_RELEASE_CHECK_TIMEOUT)) {
+                            process.destroy();
+                            process = null;
+                        }
+                    }
+                    catch (IOException e) {
+                        Log.e(TAG, "Cannot start a standby engine process", e);
+                    }
+
+                    synchronized (EngineProcessPool.this) {
+                        _starting--;
+                    }
+                    if (process != null && !_addIdle(process))
+                        process.destroy();
+                }
+            }
+        }, TAG).start();
+    }
+
+    /**
+     * Kills the idle processes until at most maxIdle of them remain.
+     */
+    public void trim(int maxIdle) {
+        ArrayList<EngineProcess> removed = new ArrayList<>();
+        synchronized (this) {
+            while (_idle.size() > maxIdle)
+                removed.add(_idle.pollFirst());
+        }
+        for (EngineProcess process : removed)
+            process.destroy();
+    }
+
+    /**
+     * Kills the processes which have been idle for more than the specified time.
+     */
+    public void trimIdle(long maxIdleMillis) {
+        long now = SystemClock.elapsedRealtime();
+        ArrayList<EngineProcess> removed = new ArrayList<>();
+        synchronized (this) {
+            Iterator<EngineProcess> it = _idle.iterator();
+            while (it.hasNext()) {
+                EngineProcess process = it.next();
+                if (now - process.idleSince > maxIdleMillis) {
+                    it.remove();
+                    removed.add(process);
+                }
+            }
+        }
+        for (EngineProcess process : removed)
+            process.destroy();
+    }
+
+
+    private synchronized EngineProcess _pollIdle() {
+        return _idle.pollFirst();
+    }
+
+    /**
+     * Makes this pool the one which keeps idle processes, and kills the idle processes of the
+     * other pools.
+     */
+    private void _setActive() {
+        ArrayList<EngineProcessPool> others = new ArrayList<>();
+        synchronized (_pools) {
+            if (_activePool == this)
+                return;
+            _activePool = this;
+            for (EngineProcessPool pool : _pools.values()) {
+                if (pool != this)
+                    others.add(pool);
+            }
+        }
+        for (EngineProcessPool pool : others)
+            pool.trim(0);
+    }
+
+    /**
+     * Adds a process to the idle ones if this pool is the active one and isn't full, and plans
+     * to kill it if it stays idle for too long.
+     *
+     * @return false if the process was not added.
+     */
+    private boolean _addIdle(EngineProcess process) {
+        synchronized (_pools) {
+            if (_activePool != this)
+                return false;
+        }
+        synchronized (this) {
+            if (_idle.size() >= _standbyCount)
+                return false;
+            process.idleSince = SystemClock.elapsedRealtime();
+            _idle.addLast(process);
+        }
+        _scheduleIdleTrim();
+        return true;
+    }
+
+    private static void _scheduleIdleTrim() {
+        synchronized (_pools) {
+            if (_trimTimer == null)
+                _trimTimer = new Timer(TAG, true);
+            _trimTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    trimAllIdle(MAX_IDLE_TIME);
+                }
+            }, MAX_IDLE_TIME + 1000);
+        }
+    }
+}
@@ -1,17 +1,19 @@
 package lrstudios.games.ego.lib;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.util.Log;
 
-import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.util.ArrayList;
 import java.util.Properties;
 
+import lrstudios.util.android.AndroidUtils;
+
 
 /**
  * Provides functions to start a GTP engine in another process and communicate with it.
@@ -22,12 +24,15 @@ public abstract class ExternalGtpEngine extends GtpEngine {
 
     private static final String TAG = "ExternalGtpEngine";
 
-    private Thread _stdErrThread;
+    protected Context _context;
     private Thread _exitThread;
-    private OutputStreamWriter _writer;
-    private BufferedReader _reader;
-    private boolean _isRunning;
+    private volatile EngineProcess _process;
+    private volatile GtpClient _client;
+    private volatile boolean _isRunning;
+    private volatile boolean _suspended;
     private Properties _properties;
+    private Boolean _supportsLoadSgf;
+    private GtpMetrics _metrics;
 
 
     /**
@@ -37,21 +42,20 @@ public abstract class ExternalGtpEngine extends GtpEngine {
 
 
     public ExternalGtpEngine(Context context) {
-        super(context);
+        _context = context;
+        // A standby process may use as much memory as the running one
+        if (AndroidUtils.isLowRamDevice(context))
+            EngineProcessPool.setDefaultStandbyCount(0);
     }
 
     @Override
     public boolean init(Properties properties) {
         _properties = properties;
+        readProperties(properties);
         try {
             if (!_isRunning) {
-                String propArgs = properties.getProperty("process_args");
-                String[] processArgs = (propArgs == null) ? getProcessArgs() : propArgs.split(" ");
-                int len = processArgs.length;
-                String[] args = new String[len + 1];
-                args[0] = getEngineFile().getAbsolutePath();
-                System.arraycopy(processArgs, 0, args, 1, len);
-                _engineProcess = new ProcessBuilder(args).start();
+                _process = EngineProcessPool.getPool(_getCommand(properties)).lease();
+                _engineProcess = _process.getProcess();
                 _isRunning = true;
             }
             else {
@@ -63,42 +67,27 @@ public abstract class ExternalGtpEngine extends GtpEngine {
             return false;
         }
 
-        InputStream is = _engineProcess.getInputStream();
-        _reader = new BufferedReader(new InputStreamReader(is), 8192);
-        _writer = new OutputStreamWriter(_engineProcess.getOutputStream());
-
-        if (_stdErrThread != null && _stdErrThread.isAlive())
-            _stdErrThread.interrupt();
-        _stdErrThread = new Thread(new Runnable() {
+        _supportsLoadSgf = null;
+        _client = _process.getClient();
+        _client.setMetrics(_metrics);
+        _process.setErrorListener(new EngineProcess.ErrorListener() {
             @Override
-            public void run() {
-                InputStream is = _engineProcess.getErrorStream();
-                BufferedReader reader = new BufferedReader(new InputStreamReader(is), 8192);
-                try {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        Log.e(TAG, "[Err] " + line);
-                        if (Thread.currentThread().isInterrupted())
-                            return;
-                    }
-                }
-                catch (IOException e) {
-                    e.printStackTrace();
-                }
+            public void onErrorLine(String line) {
+                ExternalGtpEngine.this.onErrorLine(line);
             }
         });
-        _stdErrThread.start();
 
         // Starts a thread to restart the Pachi process if it was killed
+        final EngineProcess process = _process;
         _exitThread = new Thread(new Runnable() {
             @Override
             public void run() {
                 try {
-                    Process ep = _engineProcess;
-                    if (ep != null)
-                        ep.waitFor();
-                    _isRunning = false;
-                    Log.w(TAG, "##### Engine process has exited with code " + (ep != null ? ep.exitValue() : "[null]"));
+                    Process ep = process.getProcess();
+                    ep.waitFor();
+                    if (process == _process)
+                        _isRunning = false;
+                    Log.w(TAG, "##### Engine process has exited with code " + ep.exitValue());
                 }
                 catch (InterruptedException ignored) {
                 }
@@ -108,49 +97,214 @@ public abstract class ExternalGtpEngine extends GtpEngine {
         return true;
     }
 
+    /**
+     * Starts engine processes in the background with the specified properties, so the next call
+     * to init() with the same properties will not have to wait for the engine to start.
+     */
+    public void prewarm(Properties properties) {
+        readProperties(properties);
+        EngineProcessPool.getPool(_getCommand(properties)).prewarm();
+    }
+
+    /**
+     * Gives the engine process back to the pool. This engine can't be used anymore
+     * until init() is called again.
+     */
+    @Override
+    public void release() {
+        EngineProcess process = _process;
+        if (process != null) {
+            process.getClient().setMetrics(null);
+            _suspended = false;
+            _process = null;
+            _client = null;
+            _isRunning = false;
+            if (_exitThread != null)
+                _exitThread.interrupt();
+            EngineProcessPool.getPool(_getCommand(_properties)).release(process);
+        }
+    }
+
+    /**
+     * At moderate pressure (and when the game is hidden), pondering is stopped and the game is
+     * replayed from a cleared board, which frees the search tree of most engines. At critical
+     * pressure, the process is stopped (see {@link #suspend()}).
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        if (_client == null)
+            return;
+
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL || level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            Log.w(TAG, "Critical memory pressure (" + level + "), suspending the engine");
+            suspend();
+        }
+        else {
+            Log.w(TAG, "Memory pressure (" + level + "), clearing the engine state");
+            stopPondering();
+            try {
+                replayGame();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stops the engine process to free its memory, before Android kills it. The game is kept,
+     * so the process is started again and the game replayed by {@link #resume()}, or when the
+     * next command is sent.
+     */
+    public void suspend() {
+        EngineProcess process = _process;
+        if (process != null) {
+            process.getClient().setMetrics(null);
+            _suspended = true;
+            _process = null;
+            _client = null;
+            _isRunning = false;
+            if (_exitThread != null)
+                _exitThread.interrupt();
+            process.destroy();
+        }
+    }
+
+    /**
+     * Kills the engine process to interrupt the current command. The process is started again,
+     * and the game replayed, when the next command is sent.
+     */
+    @Override
+    public boolean abort() {
+        Log.d(TAG, "Aborting the current command");
+        suspend();
+        return true;
+    }
+
+    /**
+     * Returns true if the engine process has been stopped by {@link #suspend()} and has not
+     * been needed since.
+     */
+    public boolean isSuspended() {
+        return _suspended;
+    }
+
     /**
      * Restarts the engine process with the same properties given to the last init() call.
      */
     public boolean restart() {
+        if (_metrics != null)
+            _metrics.onRestart();
+        if (_process != null) {
+            _process.destroy();
+            _isRunning = false;
+        }
         return init(_properties);
     }
 
     /**
-     * Clears the board and send commands to the engine to replay the whole game.
+     * Sends the whole game to the engine. If the engine supports the "loadsgf" command, the main
+     * variation is saved in a temporary SGF file and loaded with a single command, otherwise
+     * the board is cleared and all moves are sent at once. Pachi doesn't implement loadsgf, so it
+     * always gets the moves : the SGF path is only used by other engines (GNU Go, for example).
      */
     public void replayGame() throws IOException {
+        long startTime = System.nanoTime();
+        if (_supportsLoadSgf == null)
+            _supportsLoadSgf = _client.sendAndWait("known_command loadsgf").getText().trim().equals("true");
+        if (!_supportsLoadSgf || !_loadGameFromSgf())
+            _replayMoves();
+
+        if (_metrics != null)
+            _metrics.onReplay(System.nanoTime() - startTime, getGame().getCurrentMoveNumber());
+    }
+
+    /**
+     * Saves the main variation of the game in a temporary SGF file and loads it with "loadsgf".
+     * Returns false if the engine could not load the file.
+     */
+    private boolean _loadGameFromSgf() throws IOException {
+        File file = File.createTempFile("gtp_replay", ".sgf", _context.getCacheDir());
+        try {
+            OutputStream stream = new FileOutputStream(file);
+            try {
+                new SgfParser().saveMainLine(getGame(), stream);
+            }
+            finally {
+                Utils.closeObject(stream);
+            }
+
+            GtpResponse response = _client.sendAndWait("loadsgf " + file.getAbsolutePath());
+            if (!response.isSuccess())
+                Log.w(TAG, "Cannot load the game with loadsgf : " + response.getText());
+            return response.isSuccess();
+        }
+        finally {
+            if (!file.delete())
+                Log.w(TAG, "Cannot delete " + file);
+        }
+    }
+
+    /**
+     * Clears the board and sends all moves of the main variation.
+     */
+    private void _replayMoves() throws IOException {
         GoGame game = getGame();
-        _intSendGtpCommand("clear_board");
-        _intSendGtpCommand("boardsize " + game.board.getSize());
-        _intSendGtpCommand("komi " + ((int) (game.info.komi * 10.0) / 10.0));
+        ArrayList<String> commands = new ArrayList<>();
+        commands.add("clear_board");
+        commands.add("boardsize " + game.board.getSize());
+        commands.add("komi " + ((int) (game.info.komi * 10.0) / 10.0));
         if (game.info.handicap > 0)
-            _intSendGtpCommand("fixed_handicap " + game.info.handicap);
+            commands.add("fixed_handicap " + game.info.handicap);
 
         GameNode node = game.getBaseNode();
         while (node.nextNodes.size() > 0) {
             GameNode nextNode = node.nextNodes.get(0);
             if (nextNode.color != GoBoard.EMPTY) {
-                _intSendGtpCommand(String.format("play %s %s",
+                commands.add(String.format("play %s %s",
                         _getColorString(nextNode.color), _point2str(nextNode.x, nextNode.y)));
             }
             node = nextNode;
         }
+        _client.sendAllAndWait(commands.toArray(new String[commands.size()]));
     }
 
 
     @Override
     public String sendGtpCommand(String command) {
+        GtpResponse response = sendCommand(command);
+        return (response == null) ? null : response.toString();
+    }
+
+    /**
+     * Sends all commands at once without waiting for the responses between them.
+     */
+    @Override
+    public GtpResponse[] sendCommands(String... commands) {
+        GtpClient client = _client;
+        if (client == null && _suspended) {
+            resume();
+            client = _client;
+        }
+        if (client == null) {
+            Log.e(TAG, "[sendGtpCommand] The engine is not running (init() was not called, or the engine was released)");
+            return null;
+        }
         try {
-            return _intSendGtpCommand(command);
+            return client.sendAllAndWait(commands);
         }
         catch (IOException e) {
+            // The process has been stopped on purpose, it will be restarted by the next command
+            if (_suspended)
+                return null;
+
             e.printStackTrace();
             // An IOException means that Android killed the process, so we start it
             // again and replay the whole game
             if (restart()) {
                 try {
                     replayGame();
-                    return _intSendGtpCommand(command);
+                    return _client.sendAllAndWait(commands);
                 }
                 catch (IOException e2) {
                     Log.e(TAG, "[sendGtpCommand] Unable to restart the engine : cannot replay moves");
@@ -165,27 +319,59 @@ public abstract class ExternalGtpEngine extends GtpEngine {
         }
     }
 
-    private String _intSendGtpCommand(String command) throws IOException {
-        Log.v(TAG, "Send: " + command);
-        _writer.write(command + "\n");
-        _writer.flush();
-        String res;
-        char ch;
-        do {
-            res = _reader.readLine();
-            if (res == null)
-                throw new IOException("The process is not running");
-/*            res += "\n";
-            if (command.contains("list_commands")) { // This is the only multi-line command
-                String line;
-                while ((line = _reader.readLine()).length() > 2)
-                    res += line + "\n";
-                res += "\n";
-            }*/
-            Log.v(TAG, " >> " + res);
-            ch = res.length() > 0 ? res.charAt(0) : 0;
-        } while (ch != '=' && ch != '?');
-        return res;
+    /**
+     * Starts the engine again after {@link #suspend()}, and sends the whole game to it. This
+     * takes as long as a new game, so it should not be called from the UI thread. Nothing is
+     * done if the engine is not suspended.
+     */
+    public void resume() {
+        if (!_suspended)
+            return;
+        Log.d(TAG, "Resuming the suspended engine");
+        _suspended = false;
+        if (!init(_properties)) {
+            Log.e(TAG, "[resume] Unable to restart the engine : init() failed");
+            return;
+        }
+        try {
+            replayGame();
+        }
+        catch (IOException e) {
+            // If the engine was aborted again, it will be resumed by the next command
+            if (!_suspended) {
+                Log.e(TAG, "[resume] Unable to restart the engine : cannot replay moves");
+                e.printStackTrace();
+                release();
+            }
+        }
+    }
+
+    /**
+     * Sets the object which will receive measurements about the commands sent to the engine
+     * (null to disable measurements).
+     */
+    public void setMetrics(GtpMetrics metrics) {
+        _metrics = metrics;
+        if (_client != null)
+            _client.setMetrics(metrics);
+    }
+
+    /**
+     * Returns the client used to communicate with the engine process, which can be used to
+     * send commands asynchronously.
+     */
+    public GtpClient getClient() {
+        return _client;
+    }
+
+    private String[] _getCommand(Properties properties) {
+        String propArgs = properties.getProperty("process_args");
+        String[] processArgs = (propArgs == null) ? getProcessArgs() : propArgs.split(" ");
+        int len = processArgs.length;
+        String[] args = new String[len + 1];
+        args[0] = getEngineFile().getAbsolutePath();
+        System.arraycopy(processArgs, 0, args, 1, len);
+        return args;
     }
 
     public InputStream getInputStream() {
@@ -196,6 +382,21 @@ public abstract class ExternalGtpEngine extends GtpEngine {
         return _engineProcess.getOutputStream();
     }
 
+    /**
+     * Called for each line written by the engine on its standard error (from another thread).
+     * By default, the line is only logged.
+     */
+    protected void onErrorLine(String line) {
+        Log.e(TAG, line);
+    }
+
+    /**
+     * Override this to read the engine settings from the properties given to init(), before
+     * {@link #getProcessArgs()} is called.
+     */
+    protected void readProperties(Properties properties) {
+    }
+
     /**
      * Override this to return custom command line arguments. This will be called just before
      * starting the engine process.
@@ -0,0 +1,163 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.games.ego.lib;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+
+
+/**
+ * Records the latency of each type of GTP command in a histogram, as well as the number of bytes
+ * exchanged, the engine restarts and the time needed to replay games after a restart.
+ */
+public class GtpMetricsRecorder implements GtpMetrics {
+    private static final String TAG = "GtpMetrics";
+
+    private final TreeMap<String, Histogram> _commands = new TreeMap<>();
+    private final Histogram _replays = new Histogram();
+    private int _restartCount;
+    private int _replayedMoves;
+    private Timer _dumpTimer;
+
+
+    @Override
+    public synchronized void onCommand(String commandName, long latencyNanos, int bytesSent, int bytesReceived, boolean success) {
+        Histogram histogram = _commands.get(commandName);
+        if (histogram == null) {
+            histogram = new Histogram();
+            _commands.put(commandName, histogram);
+        }
+        histogram.add(latencyNanos / 1000);
+        histogram.bytesSent += bytesSent;
+        histogram.bytesReceived += bytesReceived;
+        if (!success)
+            histogram.failures++;
+    }
+
+    @Override
+    public synchronized void onRestart() {
+        _restartCount++;
+    }
+
+    @Override
+    public synchronized void onReplay(long durationNanos, int moveCount) {
+        _replays.add(durationNanos / 1000);
+        _replayedMoves += moveCount;
+    }
+
+
+    /**
+     * Returns the current values of all measurements.
+     */
+    public synchronized GtpMetricsSnapshot getSnapshot() {
+        ArrayList<GtpMetricsSnapshot.CommandStats> commands = new ArrayList<>(_commands.size());
+        for (String name : _commands.keySet()) {
+            Histogram h = _commands.get(name);
+            commands.add(new GtpMetricsSnapshot.CommandStats(name, h.count, h.failures, h.total, h.min, h.max,
+                    h.getPercentile(0.5), h.getPercentile(0.9), h.getPercentile(0.99), h.bytesSent, h.bytesReceived));
+        }
+        return new GtpMetricsSnapshot(System.currentTimeMillis(), commands, _restartCount,
+                (int) _replays.count, _replays.total, _replays.max, _replayedMoves);
+    }
+
+    /**
+     * Clears all measurements.
+     */
+    public synchronized void reset() {
+        _commands.clear();
+        _replays.clear();
+        _restartCount = 0;
+        _replayedMoves = 0;
+    }
+
+    /**
+     * Writes a snapshot in the log at the specified interval, until {@link #stopPeriodicDump()} is called.
+     */
+    public synchronized void startPeriodicDump(long periodMillis) {
+        stopPeriodicDump();
+        _dumpTimer = new Timer(TAG, true);
+        _dumpTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                Log.i(TAG, getSnapshot().toString());
+            }
+        }, periodMillis, periodMillis);
+    }
+
+    public synchronized void stopPeriodicDump() {
+        if (_dumpTimer != null) {
+            _dumpTimer.cancel();
+            _dumpTimer = null;
+        }
+    }
+
+
+    /**
+     * A histogram whose bucket i contains the values between 2^i (included) and 2^(i+1).
+     */
+    private static final class Histogram {
+        final long[] buckets = new long[40];
+        long count;
+        long failures;
+        long total;
+        long min;
+        long max;
+        long bytesSent;
+        long bytesReceived;
+
+        void add(long value) {
+            if (value < 0)
+                value = 0;
+            buckets[Math.min(buckets.length - 1, 63 - Long.numberOfLeadingZeros(value | 1))]++;
+            if (count == 0 || value < min)
+                min = value;
+            if (value > max)
+                max = value;
+            count++;
+            total += value;
+        }
+
+        /**
+         * Returns the upper bound of the bucket containing the specified percentile
+         * (never higher than the maximum value).
+         */
+        long getPercentile(double percentile) {
+            if (count == 0)
+                return 0;
+            long rank = (long) Math.ceil(percentile * count);
+            long sum = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                sum += buckets[i];
+                if (sum >= rank)
+                    return Math.min(max, (2L << i) - 1);
+            }
+            return max;
+        }
+
+        void clear() {
+            Arrays.fill(buckets, 0);
+            count = failures = total = min = max = bytesSent = bytesReceived = 0;
+        }
+    }
+}
@@ -20,86 +20,228 @@ package lrstudios.games.ego.lib;
 
 import android.content.Context;
 import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Message;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import lrstudios.games.ego.lib.ui.GtpBoardActivity;
 
 
 /**
- * GTP commands will be sent to the specified {@link GtpEngine} from this thread.
+ * GTP commands will be sent to the specified {@link GtpEngine} from this thread, by order of
+ * priority (see {@link GtpScheduler}). The activity is notified of the results with its handler.
  */
-public class GtpThread extends HandlerThread implements Handler.Callback {
+public class GtpThread extends GtpScheduler {
     private static final String TAG = "GtpThread";
-    private static final int
-            _MSG_PLAY = 1,
-            _MSG_FINAL_SCORE = 2;
+    private static final String
+            _KEY_MOVE = "move",
+            _KEY_PONDERING = "pondering",
+            _KEY_ANALYSIS = "analysis",
+            _KEY_RESUME = "resume";
 
     private Context _appContext;
-    private Handler _handler;
     private Handler _notifyHandler;
-    private GtpEngine _engine;
+    private volatile Future<Coords> _move;
 
 
     public GtpThread(GtpEngine engine, Handler notifyHandler, Context applicationContext) {
-        super("GtpThread");
-        _engine = engine;
+        super(engine);
         _notifyHandler = notifyHandler;
         _appContext = applicationContext;
     }
 
-    @Override
-    protected void onLooperPrepared() {
-        super.onLooperPrepared();
-        synchronized (this) {
-            _handler = new Handler(getLooper(), this);
-            notifyAll();
-        }
+    /**
+     * Asks the engine to play its move. The activity receives {@link GtpBoardActivity#MSG_GTP_MOVE}
+     * once the move has been played (but not if it was cancelled with {@link #cancelMove()}), or
+     * {@link GtpBoardActivity#MSG_GTP_ERROR} if the engine failed to play.
+     */
+    public Future<Coords> playMove() {
+        _move = submit(PRIORITY_NORMAL, _KEY_MOVE, new Callable<Coords>() {
+            @Override
+            public Coords call() {
+                Coords coords = _engine.genMove();
+                if (coords == null) {
+                    if (!isCurrentJobCancelled() && _notifyHandler != null)
+                        _notifyHandler.sendMessage(_notifyHandler.obtainMessage(GtpBoardActivity.MSG_GTP_ERROR));
+                    return null;
+                }
+
+                // Saves an SGF file after each bot move to be able to restore the game
+                _saveGame();
+                if (_notifyHandler != null)
+                    _notifyHandler.sendMessage(_notifyHandler.obtainMessage(GtpBoardActivity.MSG_GTP_MOVE));
+                return coords;
+            }
+        });
+        return _move;
     }
 
-    public void playMove() {
-        synchronized (this) {
-            while (_handler == null) {
-                try {
-                    wait();
-                }
-                catch (InterruptedException ignored) {
-                }
+    /**
+     * Cancels the move requested with {@link #playMove()}, even if the engine is already searching.
+     */
+    public void cancelMove() {
+        Future<Coords> move = _move;
+        if (move != null)
+            move.cancel(true);
+    }
+
+    /**
+     * Plays the move of the player. The activity receives {@link GtpBoardActivity#MSG_PLAYER_MOVE}
+     * with the coordinates, and arg1 set to 1 if the move was legal. It has the priority of
+     * {@link #undo()}, so both are executed in the order of the player's actions.
+     */
+    public Future<Boolean> playPlayerMove(final Coords coords) {
+        return submit(PRIORITY_INTERRUPT, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                boolean legal = _engine.playMove(coords);
+                if (_notifyHandler != null)
+                    _notifyHandler.sendMessage(_notifyHandler.obtainMessage(GtpBoardActivity.MSG_PLAYER_MOVE, legal ? 1 : 0, 0, coords));
+                return legal;
             }
-        }
-        _handler.sendMessage(_handler.obtainMessage(_MSG_PLAY));
+        });
     }
 
-    public void getFinalScore() {
-        _handler.sendMessage(_handler.obtainMessage(_MSG_FINAL_SCORE));
+    /**
+     * Undoes the last move of the player, and the answer of the engine if there is one. The move
+     * requested with {@link #playMove()} is cancelled first, so the player doesn't have to wait
+     * for the end of the search. The activity receives {@link GtpBoardActivity#MSG_UNDO}, with
+     * arg1 set to 1 if a move was undone.
+     */
+    public Future<Boolean> undo() {
+        cancelMove();
+        return submit(PRIORITY_INTERRUPT, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                boolean undone = _engine.undo(true);
+                if (undone)
+                    _saveGame();
+                if (_notifyHandler != null)
+                    _notifyHandler.sendMessage(_notifyHandler.obtainMessage(GtpBoardActivity.MSG_UNDO, undone ? 1 : 0, 0));
+                return undone;
+            }
+        });
     }
 
-    @Override
-    public boolean handleMessage(Message msg) {
-        if (msg.what == _MSG_PLAY) {
-            _engine.genMove();
+    /**
+     * Asks the engine for the dead stones and computes the score. The activity receives
+     * {@link GtpBoardActivity#MSG_FINAL_SCORE} with the result.
+     */
+    public Future<GoGameResult> getFinalScore() {
+        return submit(PRIORITY_HIGH, new Callable<GoGameResult>() {
+            @Override
+            public GoGameResult call() {
+                _engine.askFinalStatus();
+                GoGameResult result = _engine.computeFinalScore();
+                if (_notifyHandler != null)
+                    _notifyHandler.sendMessage(_notifyHandler.obtainMessage(GtpBoardActivity.MSG_FINAL_SCORE, result));
+                return result;
+            }
+        });
+    }
 
-            if (!_engine.getGame().isFinished()) {
-                // Saves an SGF file after each bot move to be able to restore the game
-                try {
-                    _engine.getGame().saveSgf(_appContext.openFileOutput("gtp_save.sgf", Context.MODE_PRIVATE));
-                }
-                catch (Exception e) {
-                    e.printStackTrace();
-                }
+    /**
+     * Stops the search the engine may be doing during the player's turn.
+     */
+    public void stopPondering() {
+        if (!_engine.isPondering())
+            return;
+        submit(PRIORITY_INTERRUPT, _KEY_PONDERING, new Callable<Void>() {
+            @Override
+            public Void call() {
+                _engine.stopPondering();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Starts streaming the analysis of the engine (see {@link GtpEngine#startAnalysis(AnalysisListener)}).
+     * A pending analysis request is replaced by the new one.
+     */
+    public Future<Boolean> startAnalysis(final AnalysisListener listener) {
+        return submit(PRIORITY_LOW, _KEY_ANALYSIS, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return _engine.startAnalysis(listener);
+            }
+        });
+    }
+
+    /**
+     * Stops the analysis, and cancels the analysis requests which have not been executed yet.
+     */
+    public void stopAnalysis() {
+        submit(PRIORITY_INTERRUPT, _KEY_ANALYSIS, new Callable<Void>() {
+            @Override
+            public Void call() {
+                _engine.stopAnalysis();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Lets the engine free memory when the system asks for it (see
+     * {@link GtpEngine#onTrimMemory(int)}).
+     */
+    public void trimMemory(final int level) {
+        submit(PRIORITY_HIGH, new Callable<Void>() {
+            @Override
+            public Void call() {
+                // The engine may be stopped, or the whole application may be killed soon
+                _saveGame();
+                _engine.onTrimMemory(level);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Starts the engine again if it was stopped to free memory (see
+     * {@link ExternalGtpEngine#suspend()}), so the game is replayed on this thread before the
+     * player's next command instead of when it is sent.
+     */
+    public void resumeEngine() {
+        if (!(_engine instanceof ExternalGtpEngine) || !((ExternalGtpEngine) _engine).isSuspended())
+            return;
+        submit(PRIORITY_HIGH, _KEY_RESUME, new Callable<Void>() {
+            @Override
+            public Void call() {
+                ((ExternalGtpEngine) _engine).resume();
+                return null;
             }
+        });
+    }
 
-            if (_notifyHandler != null)
-                _notifyHandler.sendMessage(_notifyHandler.obtainMessage(GtpBoardActivity.MSG_GTP_MOVE));
-            return true;
+    /**
+     * Releases the engine once all pending commands have been executed, then stops this thread.
+     */
+    public void release() {
+        if (!isAlive()) {
+            _engine.release();
+            return;
         }
-        else if (msg.what == _MSG_FINAL_SCORE) {
-            _engine.askFinalStatus();
-            GoGameResult result = _engine.computeFinalScore();
-            if (_notifyHandler != null)
-                _notifyHandler.sendMessage(_notifyHandler.obtainMessage(GtpBoardActivity.MSG_FINAL_SCORE, result));
-            return true;
+        submit(PRIORITY_LOW, new Callable<Void>() {
+            @Override
+            public Void call() {
+                _engine.release();
+                return null;
+            }
+        });
+        shutdown();
+    }
+
+
+    private void _saveGame() {
+        GoGame game = _engine.getGame();
+        if (game != null && !game.isFinished()) {
+            try {
+                game.saveSgf(_appContext.openFileOutput("gtp_save.sgf", Context.MODE_PRIVATE));
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
         }
-        return false;
     }
-}
\ No newline at end of file
+}
@@ -22,12 +22,14 @@ import android.app.Activity;
 import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 import android.os.ParcelFileDescriptor;
+import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -64,13 +66,19 @@ public class GtpBoardActivity extends BaseBoardActivity implements BoardView.Boa
 
     public static final int
             MSG_GTP_MOVE = 2,
-            MSG_FINAL_SCORE = 3;
+            MSG_FINAL_SCORE = 3,
+            MSG_GTP_ERROR = 4,
+            MSG_PLAYER_MOVE = 5,
+            MSG_UNDO = 6;
 
     public static final String
             INTENT_PLAY_RESTORE = "lrstudios.games.ego.PLAY_RESTORE",
             INTENT_GTP_BOT_CLASS = "lrstudios.games.ego.BOT_CLASS";
 
-    private static GtpThread _gtpThread;
+    /** The thread of the last created instance, which may still be releasing its engine. */
+    private static GtpThread _lastGtpThread;
+
+    private GtpThread _gtpThread;
 
     private ScoreView _scoreView;
     private ActivityHandler _handler = new ActivityHandler();
@@ -96,10 +104,13 @@ public class GtpBoardActivity extends BaseBoardActivity implements BoardView.Boa
 
         // Wait if a previous instance of the bot is still running (this may happen if the user closed
         // this activity during the bot's turn, and reopened it quickly)
-        if (_gtpThread != null && _gtpThread.isAlive()) {
-            _gtpThread.quit();
+        final GtpThread previousThread = _lastGtpThread;
+        if (previousThread != null && previousThread.isAlive()) {
+            // Don't wait for the end of its search, the engine is released just after
+            previousThread.cancelMove();
+            previousThread.shutdown();
             try {
-                _gtpThread.join(); // TODO show a ProgressDialog
+                previousThread.join(); // TODO show a ProgressDialog
             }
             catch (InterruptedException e) {
                 e.printStackTrace();
@@ -140,6 +151,10 @@ public class GtpBoardActivity extends BaseBoardActivity implements BoardView.Boa
         Properties props = new Properties();
         props.setProperty("level", Integer.toString(gameInfo.botLevel));
         props.setProperty("boardsize", Integer.toString(boardSize));
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        props.setProperty("pondering", Boolean.toString(prefs.getBoolean("enginePondering", true)));
+        props.setProperty("performance", prefs.getString("enginePerformance", "balanced"));
+        props.setProperty("opening_book", Boolean.toString(prefs.getBoolean("engineOpeningBook", true)));
         if (!_engine.init(props)) {
             showToast(getString(R.string.err_cannot_start_engine, _engine.getName()));
             finish();
@@ -148,6 +163,7 @@ public class GtpBoardActivity extends BaseBoardActivity implements BoardView.Boa
         _engine.setLevel(gameInfo.botLevel);
         _gtpThread = new GtpThread(_engine, _handler, getApplicationContext());
         _gtpThread.start();
+        _lastGtpThread = _gtpThread;
 
         if (restoredGame != null) {
             _engine.newGame(restoredGame);
@@ -211,9 +227,9 @@ public class GtpBoardActivity extends BaseBoardActivity implements BoardView.Boa
         super.onOptionsItemSelected(item);
         int id = item.getItemId();
         if (id == R.id.menu_undo) {
-            _engine.undo(true);
-            _updatePrisoners();
-            _updateGameLogic();
+            // The engine may be searching its move, which is cancelled by the undo
+            _lockPlaying();
+            _gtpThread.undo();
         }
         else if (id == R.id.menu_save) {
             // Give a default name to the game : "BotName_YearMonthDay_HoursMinutes"
@@ -239,17 +255,47 @@ public class GtpBoardActivity extends BaseBoardActivity implements BoardView.Boa
 
 
     @Override
-    public void onPress(int x, int y) {
-        if (_engine.playMove(new Coords(x, y))) {
-            playStoneSound(x, y);
-            _updatePrisoners();
-            _updateGameLogic();
-        }
-        else {
-            Log.w(TAG, "The move is illegal : " + x + ", " + y);
+    protected void onResume() {
+        super.onResume();
+        // The engine may have been stopped to free memory while the game was hidden
+        if (_gtpThread != null)
+            _gtpThread.resumeEngine();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Don't let the engine use the CPU while the game is not visible
+        if (_gtpThread != null)
+            _gtpThread.stopPondering();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (_gtpThread != null)
+            _gtpThread.trimMemory(level);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Gives the engine process back to the pool (it will be reused by the next game). A move being
+        // searched is cancelled first, otherwise the engine would only be released after the search.
+        if (_gtpThread != null) {
+            _gtpThread.cancelMove();
+            _gtpThread.release();
         }
     }
 
+
+    @Override
+    public void onPress(int x, int y) {
+        // The move is sent from the GTP thread, the board is unlocked when it has been played
+        _lockPlaying();
+        _gtpThread.playPlayerMove(new Coords(x, y));
+    }
+
     @Override
     public void onCursorMoved(int x, int y) {
     }
@@ -309,6 +355,8 @@ public class GtpBoardActivity extends BaseBoardActivity implements BoardView.Boa
         else if (!game.isFinished()) {
             if (_engine.isBotTurn()) {
                 _lockPlaying();
+                // The player can undo during the search (this cancels it)
+                setOptionItemEnabled(R.id.menu_undo, game.getCurrentNode().x >= -1);
                 setProgressIndicatorVisibility(true);
                 _gtpThread.playMove();
             }
@@ -386,6 +434,28 @@ public class GtpBoardActivity extends BaseBoardActivity implements BoardView.Boa
                 disableOptionItem(R.id.menu_undo);
                 disableOptionItem(R.id.menu_pass);
             }
+            else if (msg.what == MSG_PLAYER_MOVE) {
+                Coords coords = (Coords) msg.obj;
+                if (msg.arg1 != 0) {
+                    playStoneSound(coords.x, coords.y);
+                    _updatePrisoners();
+                }
+                else {
+                    Log.w(TAG, "The move is illegal : " + coords.x + ", " + coords.y);
+                }
+                _updateGameLogic();
+            }
+            else if (msg.what == MSG_UNDO) {
+                setProgressIndicatorVisibility(false);
+                if (msg.arg1 != 0)
+                    _updatePrisoners();
+                _updateGameLogic();
+            }
+            else if (msg.what == MSG_GTP_ERROR) {
+                // The move will be asked again after an undo
+                setProgressIndicatorVisibility(false);
+                showInfoDialog(getString(R.string.err_engine_move, _engine.getName()));
+            }
         }
     }
 }
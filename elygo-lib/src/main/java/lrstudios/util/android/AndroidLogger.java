@@ -0,0 +1,34 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.util.android;
+
+import lrstudios.util.Log;
+
+
+/**
+ * Sends the messages of {@link lrstudios.util.Log} to logcat. The priorities of both classes
+ * are the same.
+ */
+public final class AndroidLogger implements Log.Logger {
+    @Override
+    public void println(int priority, String tag, String message) {
+        android.util.Log.println(priority, tag, message);
+    }
+}
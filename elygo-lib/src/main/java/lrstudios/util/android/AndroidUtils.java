@@ -202,6 +202,20 @@ public class AndroidUtils {
     }
 
 
+    /**
+     * Returns true if the device has little RAM (as reported by Android, or less than 1 GB),
+     * so the application should not keep background processes.
+     */
+    public static boolean isLowRamDevice(Context context) {
+        if (android.os.Build.VERSION.SDK_INT >= 19) {
+            ActivityManager actManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            if (actManager.isLowRamDevice())
+                return true;
+        }
+        long totalRam = getTotalRam(context);
+        return totalRam > 0 && totalRam < 1024L * 1024 * 1024;
+    }
+
     /**
      * Returns the total RAM available on the device (or -1 if an error occurred).
      */
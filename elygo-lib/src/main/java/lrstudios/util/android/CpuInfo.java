@@ -0,0 +1,143 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.util.android;
+
+import lrstudios.games.ego.lib.Utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+
+/**
+ * Reads the topology of the CPU from /sys. On big.LITTLE devices, the cores don't have the same
+ * speed : the slow ("LITTLE") cores are those with the lowest maximum frequency, and all other
+ * cores are counted as big (devices with three clusters have one or two "prime" cores faster
+ * than the other big cores).
+ */
+public final class CpuInfo {
+    private static final String CPU_DIR = "/sys/devices/system/cpu";
+
+    private static CpuInfo _instance;
+
+    private final int[] _maxFrequencies;
+    private final int _bigCoreCount;
+
+
+    private CpuInfo(int[] maxFrequencies) {
+        _maxFrequencies = maxFrequencies;
+        int min = Integer.MAX_VALUE;
+        for (int freq : maxFrequencies) {
+            if (freq > 0)
+                min = Math.min(min, freq);
+        }
+
+        // The frequency of offline cores may be unknown, they are assumed to be big cores
+        int count = 0;
+        for (int freq : maxFrequencies) {
+            if (freq > min || freq == 0)
+                count++;
+        }
+        // All cores have the same speed, or the frequencies are unknown
+        _bigCoreCount = (count == 0) ? maxFrequencies.length : count;
+    }
+
+    /**
+     * Returns the CPU topology of this device (it is read only once).
+     */
+    public static synchronized CpuInfo getInstance() {
+        if (_instance == null)
+            _instance = _read();
+        return _instance;
+    }
+
+
+    /**
+     * Returns the number of cores, online or not (the system can turn cores off when idle).
+     */
+    public int getCoreCount() {
+        return _maxFrequencies.length;
+    }
+
+    /**
+     * Returns the number of cores which are faster than the slowest ones. This is the number of
+     * cores if they all have the same speed or if the frequencies are unknown.
+     */
+    public int getBigCoreCount() {
+        return _bigCoreCount;
+    }
+
+    /**
+     * Returns true if the cores don't all have the same maximum frequency (big.LITTLE).
+     */
+    public boolean isHeterogeneous() {
+        return _bigCoreCount < _maxFrequencies.length;
+    }
+
+    /**
+     * Returns the maximum frequency of the specified core (in kHz), or 0 if it is unknown.
+     */
+    public int getMaxFrequency(int core) {
+        return _maxFrequencies[core];
+    }
+
+
+    private static CpuInfo _read() {
+        // "present" contains the possible cores as a range list, such as "0-7" or "0-3,6"
+        int coreCount = 0;
+        String present = _readLine(new File(CPU_DIR, "present"));
+        if (present != null) {
+            for (String range : present.split(",")) {
+                int dash = range.indexOf('-');
+                int last = Utils.tryParseInt(dash < 0 ? range : range.substring(dash + 1), -1);
+                coreCount = Math.max(coreCount, last + 1);
+            }
+        }
+        if (coreCount <= 0)
+            coreCount = Runtime.getRuntime().availableProcessors();
+
+        int[] frequencies = new int[coreCount];
+        for (int i = 0; i < coreCount; i++) {
+            File dir = new File(CPU_DIR, "cpu" + i);
+            String freq = _readLine(new File(dir, "cpufreq/cpuinfo_max_freq"));
+            // Some kernels only expose the relative capacity of the cores
+            if (freq == null)
+                freq = _readLine(new File(dir, "cpu_capacity"));
+            frequencies[i] = Utils.tryParseInt(freq, 0);
+        }
+        return new CpuInfo(frequencies);
+    }
+
+    private static String _readLine(File file) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line = reader.readLine();
+            return (line == null) ? null : line.trim();
+        }
+        catch (IOException e) {
+            return null;
+        }
+        finally {
+            Utils.closeObject(reader);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.games.ego.lib;
+
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A snapshot of the search of an engine : the moves it considers and their estimated win rates.
+ */
+public final class AnalysisInfo {
+    /**
+     * The color of the player to move in the analyzed position (GoBoard.BLACK or GoBoard.WHITE).
+     * All win rates are given for this player.
+     */
+    public final byte color;
+    /**
+     * True if the engine analyzes the position during the turn of its opponent.
+     */
+    public final boolean pondering;
+    /**
+     * The number of playouts (or visits) done so far.
+     */
+    public final int playouts;
+    /**
+     * The estimated win rate of the best move (between 0 and 1).
+     */
+    public final double winRate;
+    /**
+     * The best candidate moves, best first.
+     */
+    public final List<Candidate> candidates;
+    /**
+     * The expected continuation, starting with the best move.
+     */
+    public final List<Coords> bestSequence;
+
+
+    public AnalysisInfo(byte color, boolean pondering, int playouts, double winRate,
+                        List<Candidate> candidates, List<Coords> bestSequence) {
+        this.color = color;
+        this.pondering = pondering;
+        this.playouts = playouts;
+        this.winRate = winRate;
+        this.candidates = Collections.unmodifiableList(candidates);
+        this.bestSequence = Collections.unmodifiableList(bestSequence);
+    }
+
+
+    /**
+     * A move considered by the engine.
+     */
+    public static final class Candidate {
+        public final Coords coords;
+        public final double winRate;
+        /**
+         * The number of visits of this move, or -1 if the engine doesn't give it.
+         */
+        public final int visits;
+
+        public Candidate(Coords coords, double winRate, int visits) {
+            this.coords = coords;
+            this.winRate = winRate;
+            this.visits = visits;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.games.ego.lib;
+
+import lrstudios.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A running GTP engine process, with its {@link GtpClient}. The standard error of the process is
+ * always read (otherwise the engine would block when the pipe is full) and forwarded to the
+ * current {@link ErrorListener}, if there is one.
+ */
+public final class EngineProcess {
+    private static final String TAG = "EngineProcess";
+
+    private static volatile Launcher _launcher = new Launcher() {
+        @Override
+        public Process start(String[] command) throws IOException {
+            return new ProcessBuilder(command).start();
+        }
+    };
+
+    private final Process _process;
+    private final GtpClient _client;
+    private volatile ErrorListener _errorListener;
+    long idleSince;
+
+
+    /**
+     * Receives the lines written by the engine on its standard error.
+     */
+    public interface ErrorListener {
+        void onErrorLine(String line);
+    }
+
+    /**
+     * Starts the engine processes. The default launcher uses a ProcessBuilder, which works on
+     * Android and on a standard JVM.
+     */
+    public interface Launcher {
+        Process start(String[] command) throws IOException;
+    }
+
+
+    private EngineProcess(Process process) {
+        _process = process;
+        _client = new GtpClient(process.getInputStream(), process.getOutputStream());
+
+        Thread stdErrThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(_process.getErrorStream()), 8192);
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        ErrorListener listener = _errorListener;
+                        if (listener != null)
+                            listener.onErrorLine(line);
+                    }
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, TAG);
+        stdErrThread.start();
+    }
+
+    /**
+     * Starts a new engine process.
+     *
+     * @param command The engine executable followed by its arguments.
+     * @throws IOException The process could not be started.
+     */
+    public static EngineProcess start(String[] command) throws IOException {
+        return new EngineProcess(_launcher.start(command));
+    }
+
+    /**
+     * Sets the object used to start the next processes (for example to run the engines in a
+     * sandbox, or on another machine).
+     */
+    public static void setLauncher(Launcher launcher) {
+        _launcher = launcher;
+    }
+
+
+    public Process getProcess() {
+        return _process;
+    }
+
+    public GtpClient getClient() {
+        return _client;
+    }
+
+    /**
+     * Sets the listener which receives the standard error of the engine (null to ignore it).
+     */
+    public void setErrorListener(ErrorListener listener) {
+        _errorListener = listener;
+    }
+
+    /**
+     * Returns true if the process has not exited.
+     */
+    public boolean isAlive() {
+        try {
+            _process.exitValue();
+            return false;
+        }
+        catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Returns true if the engine answers to the "protocol_version" command within the specified time.
+     * This also waits for all the commands which were sent before.
+     */
+    public boolean checkHealth(long timeoutMillis) {
+        if (!isAlive())
+            return false;
+        try {
+            return _client.send("protocol_version").get(timeoutMillis, TimeUnit.MILLISECONDS).isSuccess();
+        }
+        catch (Exception e) {
+            Log.w(TAG, "The engine process does not respond : " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Kills the process.
+     */
+    public void destroy() {
+        _errorListener = null;
+        _client.close();
+        _process.destroy();
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.lib;
+
+import lrstudios.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Stores the answers of an engine to the commands which only depend on the position (genmove,
+ * final_status_list, final_score), so they don't have to be computed again when the same
+ * position comes back (after an undo, when a game or a problem is played again...).
+ * <p/>
+ * Each answer is stored under a 64-bit key made of the position hash (see {@link SymmetryHash}),
+ * the engine settings and the command (see {@link #getKey(long, String, String)}). When the
+ * cache is full, the least recently used answers are removed. The cache can be saved in a
+ * compact file to be kept between sessions. This class is thread-safe.
+ */
+public class EngineResultCache {
+    private static final String TAG = "EngineResultCache";
+
+    private static final int _FILE_MAGIC = 0x45524331; // "ERC1"
+
+    private final LinkedHashMap<Long, String> _entries;
+    private final TreeMap<String, int[]> _stats = new TreeMap<>();
+    private final int _maxEntries;
+    private boolean _modified;
+
+
+    /**
+     * @param maxEntries The maximum number of answers kept by the cache.
+     */
+    public EngineResultCache(final int maxEntries) {
+        _maxEntries = maxEntries;
+        _entries = new LinkedHashMap<Long, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the key of the answer to a command.
+     *
+     * @param positionHash The hash of the position, with the player to move.
+     * @param settings     The engine settings which change its answers (name, level, komi...).
+     * @param command      The whole command, like "genmove b".
+     */
+    public static long getKey(long positionHash, String settings, String command) {
+        // FNV-1a hash of the strings, then mixed with the position (MurmurHash3 finalizer)
+        long hash = 0xcbf29ce484222325L;
+        String text = settings + '\0' + command;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        long key = positionHash ^ Long.rotateLeft(hash, 29);
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Returns the answer stored under the specified key, or null if there is none.
+     *
+     * @param commandName The name of the command (like "genmove"), used to count hits and misses.
+     */
+    public synchronized String get(long key, String commandName) {
+        String value = _entries.get(key);
+        int[] stats = _stats.get(commandName);
+        if (stats == null) {
+            stats = new int[2];
+            _stats.put(commandName, stats);
+        }
+        stats[(value != null) ? 0 : 1]++;
+        return value;
+    }
+
+    /**
+     * Stores an answer, replacing the previous one stored under the same key.
+     */
+    public synchronized void put(long key, String value) {
+        if (!value.equals(_entries.put(key, value)))
+            _modified = true;
+    }
+
+    /**
+     * Removes all answers (the hit counts are kept).
+     */
+    public synchronized void clear() {
+        if (_entries.size() > 0)
+            _modified = true;
+        _entries.clear();
+    }
+
+    /**
+     * Returns the number of stored answers.
+     */
+    public synchronized int size() {
+        return _entries.size();
+    }
+
+    /**
+     * Returns the maximum number of stored answers.
+     */
+    public int getMaxSize() {
+        return _maxEntries;
+    }
+
+    /**
+     * Returns true if answers have been added or removed since the cache was last loaded or saved.
+     */
+    public synchronized boolean isModified() {
+        return _modified;
+    }
+
+    /**
+     * Returns the number of answers found in the cache for the specified command.
+     */
+    public synchronized int getHitCount(String commandName) {
+        int[] stats = _stats.get(commandName);
+        return (stats == null) ? 0 : stats[0];
+    }
+
+    /**
+     * Returns the number of answers which were not in the cache for the specified command.
+     */
+    public synchronized int getMissCount(String commandName) {
+        int[] stats = _stats.get(commandName);
+        return (stats == null) ? 0 : stats[1];
+    }
+
+    /**
+     * Returns the ratio of answers found in the cache (between 0 and 1), for all commands.
+     */
+    public synchronized double getHitRate() {
+        int hits = 0;
+        int total = 0;
+        for (int[] stats : _stats.values()) {
+            hits += stats[0];
+            total += stats[0] + stats[1];
+        }
+        return (total == 0) ? 0 : hits / (double) total;
+    }
+
+    /**
+     * Returns a summary of the cache : its size, and the hits and misses of each command.
+     */
+    public synchronized String formatStats() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%d/%d entries, hit rate %.1f%%", _entries.size(), _maxEntries, getHitRate() * 100.0));
+        for (Map.Entry<String, int[]> entry : _stats.entrySet()) {
+            int[] stats = entry.getValue();
+            text.append(String.format(", %s %d/%d", entry.getKey(), stats[0], stats[0] + stats[1]));
+        }
+        return text.toString();
+    }
+
+
+    /**
+     * Loads the answers saved by {@link #save(OutputStream)}, which are added to the current ones.
+     *
+     * @throws IOException The stream could not be read, or is not a cache file.
+     */
+    public void load(InputStream stream) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(stream));
+        if (input.readInt() != _FILE_MAGIC)
+            throw new IOException("This is not a cache file");
+
+        int count = input.readInt();
+        synchronized (this) {
+            // The entries are saved from the least recently used one, so the order is kept. The
+            // answers added before the loading are not in the file, so they must still be saved.
+            boolean modified = _modified;
+            for (int i = 0; i < count; i++) {
+                long key = input.readLong();
+                _entries.put(key, input.readUTF());
+            }
+            _modified = modified;
+        }
+    }
+
+    /**
+     * Saves all answers in a compact binary format.
+     */
+    public synchronized void save(OutputStream stream) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+        output.writeInt(_FILE_MAGIC);
+        output.writeInt(_entries.size());
+        for (Map.Entry<Long, String> entry : _entries.entrySet()) {
+            output.writeLong(entry.getKey());
+            output.writeUTF(entry.getValue());
+        }
+        output.flush();
+        _modified = false;
+    }
+
+    /**
+     * Loads the answers saved in the specified file. Returns false if the file could not be read
+     * (a missing file is not an error).
+     */
+    public boolean load(File file) {
+        InputStream stream = null;
+        try {
+            stream = new FileInputStream(file);
+            load(stream);
+            return true;
+        }
+        catch (FileNotFoundException e) {
+            return true;
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Cannot load the cache file " + file + " : " + e);
+            return false;
+        }
+        finally {
+            Utils.closeObject(stream);
+        }
+    }
+
+    /**
+     * Saves the answers in the specified file, if they have been modified. The file is written
+     * next to the previous one and then renamed, so it is never left half-written.
+     * Returns false if the file could not be written.
+     */
+    public boolean save(File file) {
+        if (!isModified())
+            return true;
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        OutputStream stream = null;
+        try {
+            stream = new FileOutputStream(tempFile);
+            save(stream);
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Cannot save the cache file " + file + " : " + e);
+            return false;
+        }
+        finally {
+            Utils.closeObject(stream);
+        }
+        if (!tempFile.renameTo(file)) {
+            Log.w(TAG, "Cannot rename the cache file " + tempFile);
+            return false;
+        }
+        return true;
+    }
+}
@@ -18,13 +18,12 @@
 
 package lrstudios.games.ego.lib;
 
-import android.graphics.Rect;
-
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import lrstudios.util.Rect;
 import lrstudios.util.io.BitReader;
 import lrstudios.util.io.BitWriter;
 
@@ -59,6 +58,7 @@ public final class GoBoard implements Cloneable {
     private ArrayList<Coords> _loop_stoneList;
 
     private Coords _ko_prisoner;
+    private SymmetryHash _symmetryHash;
 
 
     /**
@@ -85,6 +85,8 @@ public final class GoBoard implements Cloneable {
         clone._marks.addAll(_marks);
         if (_ko_prisoner != null)
             clone._ko_prisoner = new Coords(_ko_prisoner.x, _ko_prisoner.y);
+        if (_symmetryHash != null)
+            clone._symmetryHash = new SymmetryHash(_symmetryHash);
         return clone;
     }
 
@@ -92,7 +94,12 @@ public final class GoBoard implements Cloneable {
      * Sets the color of an intersection. The first intersection is (0; 0)
      */
     public void set(int x, int y, byte color) {
-        _board[y * _size + x] = color;
+        int index = y * _size + x;
+        if (_symmetryHash != null) {
+            _symmetryHash.toggleStone(x, y, _board[index]);
+            _symmetryHash.toggleStone(x, y, color);
+        }
+        _board[index] = color;
     }
 
     /**
@@ -176,6 +183,8 @@ public final class GoBoard implements Cloneable {
             else if (_board[i] == WHITE)
                 _board[i] = BLACK;
         }
+        if (_symmetryHash != null)
+            _symmetryHash.reset(this);
     }
 
 
@@ -347,15 +356,23 @@ public final class GoBoard implements Cloneable {
 
 
     /**
-     * Rotates the board by 90° CCW.
+     * Rotates the board by 90° CCW : the stone of (x, y) goes to (y, size - 1 - x).
+     * The stones are moved in place by cycles of 4 intersections.
      */
     public void rotateCCW() {
-        byte[] tempBoard = new byte[_board.length];
-        System.arraycopy(_board, 0, tempBoard, 0, _board.length);
-
-        for (int x = 0; x < _size; x++)
-            for (int y = 0; y < _size; y++)
-                set(y, _size - x - 1, tempBoard[y * _size + x]);
+        int last = _size - 1;
+        for (int y = 0; y < _size / 2; y++) {
+            for (int x = y; x < last - y; x++) {
+                // (x, y) -> (y, last - x) -> (last - x, last - y) -> (last - y, x) -> (x, y)
+                byte color = _board[x * _size + last - y];
+                _board[x * _size + last - y] = _board[(last - y) * _size + last - x];
+                _board[(last - y) * _size + last - x] = _board[(last - x) * _size + y];
+                _board[(last - x) * _size + y] = _board[y * _size + x];
+                _board[y * _size + x] = color;
+            }
+        }
+        if (_symmetryHash != null)
+            _symmetryHash.transform(SymmetryHash.ROTATE_CCW);
     }
 
 
@@ -388,10 +405,35 @@ public final class GoBoard implements Cloneable {
         _marks.clear();
         _ko_prisoner = null;
         Arrays.fill(_board, (byte) 0);
+        if (_symmetryHash != null)
+            _symmetryHash.clear();
     }
 
     public void fill(byte color) {
         Arrays.fill(_board, color);
+        if (_symmetryHash != null)
+            _symmetryHash.reset(this);
+    }
+
+
+    /**
+     * Returns the hashes of the position under the 8 symmetries of the board. They are computed
+     * at the first call, then updated with each change of the board. The ko point and the
+     * player to move are given when a hash is read.
+     * <p/>
+     * Changes made directly in the array returned by {@link #getBoardArray()} are not seen.
+     */
+    public SymmetryHash getSymmetryHash() {
+        if (_symmetryHash == null)
+            _symmetryHash = new SymmetryHash(this);
+        return _symmetryHash;
+    }
+
+    /**
+     * Returns the canonical hash of the position (see {@link SymmetryHash}).
+     */
+    public long getCanonicalHash(byte nextPlayer) {
+        return getSymmetryHash().getCanonicalHash(_ko_prisoner, nextPlayer);
     }
 
 
@@ -203,14 +203,13 @@ public class GoGame {
         if (x >= 0 && y >= 0) {
             prisoners = board.placeMove(x, y, color);
             if (prisoners.size() == 1) {
-                // Check if the move produces a ko
-                byte[] colors = board.getBoardArray();
-                byte[] savedColors = new byte[colors.length];
-                System.arraycopy(colors, 0, savedColors, 0, colors.length);
-
+                // Check if the move produces a ko (the recapture is undone with set(), so the
+                // symmetry hashes of the board are kept up to date)
                 Coords prisoner = prisoners.get(0);
                 List<Coords> newPrisoners = board.placeMove(prisoner.x, prisoner.y, GoBoard.getOppositeColor(color));
-                System.arraycopy(savedColors, 0, colors, 0, colors.length);
+                board.set(prisoner.x, prisoner.y, GoBoard.EMPTY);
+                for (Coords coords : newPrisoners)
+                    board.set(coords.x, coords.y, color);
 
                 if (newPrisoners.size() == 1)
                     board.setKoCoords(prisoner.x, prisoner.y);
@@ -472,14 +471,14 @@ public class GoGame {
 
                 if (_loop_markStoneType == GoBoard.BLACK)
                     result.blackTerritory += _loop_count;
-                else
+                else if (_loop_markStoneType == GoBoard.WHITE)
                     result.whiteTerritory += _loop_count;
 
                 if (_loop_markStoneType == GoBoard.BLACK || _loop_markStoneType == GoBoard.WHITE) {
                     for (int iX = 0; iX < _size; iX++) {
                         for (int iY = 0; iY < _size; iY++) {
                             byte inColor = finalStatus.getColor(iX, iY);
-                            if (inColor == GoBoard.EMPTY && tempBoard.getColor(iX, iY) == GoBoard.EMPTY) {
+                            if (_loop_localPassed[iX][iY] && inColor == GoBoard.EMPTY) {
                                 finalStatus.set(iX, iY, _loop_markStoneType == GoBoard.BLACK
                                         ? GoBoard.BLACK_TERRITORY : GoBoard.WHITE_TERRITORY);
                             }
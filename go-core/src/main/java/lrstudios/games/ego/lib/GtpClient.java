@@ -0,0 +1,364 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.games.ego.lib;
+
+import lrstudios.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * Asynchronous GTP client. Each command is tagged with a GTP id and written immediately, without
+ * waiting for the previous responses (pipelining). A dedicated thread reads the responses and
+ * matches them with the pending commands by their id.
+ * <p/>
+ * Each response is read until its terminating empty line, so multi-line responses
+ * (showboard, final_status_list, ...) can't be mixed with the next ones.
+ */
+public class GtpClient {
+    private static final String TAG = "GtpClient";
+
+    private final Writer _writer;
+    private final InputStream _input;
+    private final BufferedReader _reader;
+    private final ArrayDeque<Response> _pending = new ArrayDeque<>();
+    private final Thread _readerThread;
+    private int _nextId = 1;
+    private IOException _closedException;
+    private volatile GtpMetrics _metrics;
+
+
+    public GtpClient(InputStream input, OutputStream output) {
+        _input = input;
+        _reader = new BufferedReader(new InputStreamReader(input), 8192);
+        _writer = new OutputStreamWriter(output);
+        _readerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                _readLoop();
+            }
+        }, TAG);
+        // The thread must not keep the application alive if the client is not closed
+        _readerThread.setDaemon(true);
+        _readerThread.start();
+    }
+
+
+    /**
+     * Sets the object which will receive the latency of each command (null to disable measurements).
+     */
+    public void setMetrics(GtpMetrics metrics) {
+        _metrics = metrics;
+    }
+
+    /**
+     * Sends a command to the engine without waiting for its response.
+     *
+     * @throws IOException The engine process is not running.
+     */
+    public Future<GtpResponse> send(String command) throws IOException {
+        return sendAll(command)[0];
+    }
+
+    /**
+     * Sends several commands to the engine at once, without waiting for their responses.
+     * The engine executes them in order.
+     *
+     * @throws IOException The engine process is not running.
+     */
+    public Future<GtpResponse>[] sendAll(String... commands) throws IOException {
+        // Generic arrays can't be created : the raw array only contains Responses
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Future<GtpResponse>[] results = new Future[commands.length];
+        synchronized (_writer) {
+            StringBuilder sb = new StringBuilder(commands.length * 16);
+            synchronized (_pending) {
+                if (_closedException != null)
+                    throw _closedException;
+                for (int i = 0; i < commands.length; i++) {
+                    Response response = new Response(_nextId++, commands[i]);
+                    _pending.addLast(response);
+                    results[i] = response;
+                    sb.append(response.id).append(' ').append(commands[i]).append('\n');
+                    Log.v(TAG, "Send: " + response.id + " " + commands[i]);
+                }
+            }
+
+            try {
+                long now = System.nanoTime();
+                for (Future<GtpResponse> result : results)
+                    ((Response) result).sentTime = now;
+                _writer.write(sb.toString());
+                _writer.flush();
+            }
+            catch (IOException e) {
+                _close(e);
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Sends a command to the engine and waits for its response.
+     *
+     * @throws IOException The engine process is not running, or has been killed before responding.
+     */
+    public GtpResponse sendAndWait(String command) throws IOException {
+        return getResult(send(command));
+    }
+
+    /**
+     * Sends several commands at once and waits for all responses.
+     *
+     * @throws IOException The engine process is not running, or has been killed before responding.
+     */
+    public GtpResponse[] sendAllAndWait(String... commands) throws IOException {
+        Future<GtpResponse>[] futures = sendAll(commands);
+        GtpResponse[] results = new GtpResponse[futures.length];
+        for (int i = 0; i < futures.length; i++)
+            results[i] = getResult(futures[i]);
+        return results;
+    }
+
+    /**
+     * Waits for the specified response and returns it.
+     *
+     * @throws IOException The engine process has been killed before responding.
+     */
+    public static GtpResponse getResult(Future<GtpResponse> response) throws IOException {
+        try {
+            return response.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a GTP response");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Closes the streams, which stops the reader thread. All pending commands will fail.
+     */
+    public void close() {
+        _readerThread.interrupt();
+        _close(new IOException("The GTP client has been closed"));
+        // The reader is locked while the thread waits for a line, the stream is closed instead
+        Utils.closeObject(_input);
+        Utils.closeObject(_writer);
+    }
+
+
+    private void _readLoop() {
+        try {
+            String line;
+            while ((line = _reader.readLine()) != null) {
+                if (Thread.currentThread().isInterrupted())
+                    return;
+
+                // Ignore everything which is not part of a response
+                char ch = line.length() > 0 ? line.charAt(0) : 0;
+                if (ch != '=' && ch != '?')
+                    continue;
+                Log.v(TAG, " >> " + line);
+
+                // Read the id, if there is one
+                int pos = 1;
+                int len = line.length();
+                while (pos < len && Character.isDigit(line.charAt(pos)))
+                    pos++;
+                int id = Utils.tryParseInt(line.substring(1, pos), -1);
+                if (pos < len && line.charAt(pos) == ' ')
+                    pos++;
+
+                // Read the other lines until the empty line which ends the response
+                ArrayList<String> lines = new ArrayList<>(1);
+                lines.add(line.substring(pos));
+                int bytesReceived = len + 2;
+                while ((line = _reader.readLine()) != null && line.length() > 0) {
+                    lines.add(line);
+                    bytesReceived += line.length() + 1;
+                }
+
+                Response response = _pollPending(id);
+                if (response == null) {
+                    Log.w(TAG, "Unexpected GTP response (id " + id + ")");
+                    if (line == null)
+                        break;
+                    continue;
+                }
+                if (line == null) {
+                    // The engine stopped in the middle of the response (it probably crashed)
+                    response.complete(null, new IOException("Incomplete GTP response (the process is not running)"));
+                    break;
+                }
+
+                GtpMetrics metrics = _metrics;
+                if (metrics != null) {
+                    metrics.onCommand(response.getCommandName(), System.nanoTime() - response.sentTime,
+                            response.command.length() + 2 + (int) Math.log10(response.id) + 1, bytesReceived, ch == '=');
+                }
+                response.complete(new GtpResponse(ch == '=', id, lines), null);
+            }
+            _close(new IOException("The process is not running"));
+        }
+        catch (IOException e) {
+            _close(e);
+        }
+    }
+
+    /**
+     * Removes the pending command which has the specified id (or the oldest one if the id is
+     * negative) and returns it, or returns null if there is no such command. The engine answers
+     * the commands in order, so the older commands will never get a response : they fail.
+     */
+    private Response _pollPending(int id) {
+        ArrayList<Response> skipped = new ArrayList<>();
+        Response response = null;
+        synchronized (_pending) {
+            if (id < 0)
+                return _pending.pollFirst();
+
+            boolean found = false;
+            for (Response pending : _pending) {
+                if (pending.id == id) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found)
+                return null;
+            while (response == null) {
+                Response pending = _pending.pollFirst();
+                if (pending.id == id)
+                    response = pending;
+                else
+                    skipped.add(pending);
+            }
+        }
+        for (Response pending : skipped) {
+            Log.w(TAG, "No GTP response for " + pending.id + " " + pending.command);
+            pending.complete(null, new IOException("The engine did not answer the command " + pending.command));
+        }
+        return response;
+    }
+
+    private void _close(IOException exception) {
+        synchronized (_pending) {
+            if (_closedException == null)
+                _closedException = exception;
+            Response response;
+            while ((response = _pending.pollFirst()) != null)
+                response.complete(null, exception);
+        }
+    }
+
+
+    /**
+     * The pending response of a command.
+     */
+    private static final class Response implements Future<GtpResponse> {
+        final int id;
+        final String command;
+        long sentTime;
+        private GtpResponse _result;
+        private IOException _exception;
+        private boolean _done;
+
+
+        Response(int id, String command) {
+            this.id = id;
+            this.command = command;
+        }
+
+        String getCommandName() {
+            int pos = command.indexOf(' ');
+            return (pos < 0) ? command : command.substring(0, pos);
+        }
+
+        synchronized void complete(GtpResponse result, IOException exception) {
+            _result = result;
+            _exception = exception;
+            _done = true;
+            notifyAll();
+        }
+
+
+        /**
+         * A command which has already been sent can't be cancelled, so this always returns false.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return _done;
+        }
+
+        @Override
+        public synchronized GtpResponse get() throws InterruptedException, ExecutionException {
+            while (!_done)
+                wait();
+            return _getResult();
+        }
+
+        @Override
+        public synchronized GtpResponse get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long end = System.nanoTime() + unit.toNanos(timeout);
+            while (!_done) {
+                long remaining = end - System.nanoTime();
+                if (remaining <= 0)
+                    throw new TimeoutException("No response for the GTP command : " + command);
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return _getResult();
+        }
+
+        private GtpResponse _getResult() throws ExecutionException {
+            if (_exception != null)
+                throw new ExecutionException(_exception);
+            return _result;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.lib;
+
+import java.io.IOException;
+import java.util.Properties;
+
+
+/**
+ * A {@link GtpEngine} which sends its commands through a {@link GtpClient}. It is used to run
+ * games outside of the application, for example with {@link MatchRunner}.
+ */
+public class GtpClientEngine extends GtpEngine {
+    private final GtpClient _client;
+    private final EngineProcess _process;
+    private String _name;
+    private String _version;
+
+
+    /**
+     * Uses an existing client. The engine behind it is not stopped by {@link #release()}.
+     */
+    public GtpClientEngine(GtpClient client) {
+        this(client, null);
+    }
+
+    private GtpClientEngine(GtpClient client, EngineProcess process) {
+        _client = client;
+        _process = process;
+    }
+
+    /**
+     * Starts a new engine process, which is killed by {@link #release()}.
+     *
+     * @param command The engine executable followed by its arguments.
+     * @throws IOException The process could not be started.
+     */
+    public static GtpClientEngine start(String[] command) throws IOException {
+        EngineProcess process = EngineProcess.start(command);
+        return new GtpClientEngine(process.getClient(), process);
+    }
+
+
+    /**
+     * The properties are ignored : the engine is configured by its command line.
+     */
+    @Override
+    public boolean init(Properties properties) {
+        GtpResponse[] responses = sendCommands("name", "version");
+        if (responses == null)
+            return false;
+        _name = responses[0].getText().trim();
+        _version = responses[1].getText().trim();
+        return true;
+    }
+
+    @Override
+    public void release() {
+        if (_process != null)
+            _process.destroy();
+    }
+
+    @Override
+    public String sendGtpCommand(String command) {
+        GtpResponse response = sendCommand(command);
+        return (response == null) ? null : response.toString();
+    }
+
+    @Override
+    public GtpResponse[] sendCommands(String... commands) {
+        try {
+            return _client.sendAllAndWait(commands);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return _name;
+    }
+
+    @Override
+    public String getVersion() {
+        return _version;
+    }
+
+    /**
+     * Returns the engine process, or null if this engine uses an existing client.
+     */
+    public EngineProcess getProcess() {
+        return _process;
+    }
+}
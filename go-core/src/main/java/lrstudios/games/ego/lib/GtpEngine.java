@@ -0,0 +1,715 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.games.ego.lib;
+
+import lrstudios.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+
+/**
+ * Represents a Go engine which uses the standard GTP protocol to communicate.
+ */
+public abstract class GtpEngine {
+    private static final String TAG = "GtpEngine";
+
+    private static final String _BOARD_LETTERS = "ABCDEFGHJKLMNOPQRSTUVWXYZ"; // no 'I'
+    private static final String _BLACK_NAME = "black";
+    private static final String _WHITE_NAME = "white";
+
+    private byte _playerColor;
+    private int _boardSize;
+    private GoGame _game;
+    private EngineResultCache _resultCache;
+    private boolean _moveCacheEnabled;
+    private OpeningBook _openingBook;
+
+
+    /**
+     * Initializes the engine with the specified set of properties. Returns false if there was an error.
+     */
+    public abstract boolean init(Properties properties);
+
+    /**
+     * Sends a GTP command to the engine.
+     *
+     * @param command The GTP command to send.
+     * @return The response of the engine.
+     */
+    public abstract String sendGtpCommand(String command);
+
+    /**
+     * Sends several GTP commands to the engine, in order. Engines which support it may send all
+     * commands at once instead of waiting for each response.
+     *
+     * @return The responses of the engine, or null if one of the commands could not be sent.
+     */
+    public String[] sendGtpCommands(String... commands) {
+        GtpResponse[] responses = sendCommands(commands);
+        if (responses == null)
+            return null;
+
+        String[] results = new String[responses.length];
+        for (int i = 0; i < responses.length; i++)
+            results[i] = responses[i].toString();
+        return results;
+    }
+
+    /**
+     * Sends a GTP command to the engine and returns its whole response (multi-line responses
+     * are supported).
+     *
+     * @return The response of the engine, or null if the command could not be sent.
+     */
+    public GtpResponse sendCommand(String command) {
+        GtpResponse[] responses = sendCommands(command);
+        return (responses == null) ? null : responses[0];
+    }
+
+    /**
+     * Sends several GTP commands to the engine, in order, and returns their whole responses.
+     * By default, the commands are sent one by one with {@link #sendGtpCommand(String)}.
+     *
+     * @return The responses of the engine, or null if one of the commands could not be sent.
+     */
+    public GtpResponse[] sendCommands(String... commands) {
+        GtpResponse[] results = new GtpResponse[commands.length];
+        for (int i = 0; i < commands.length; i++) {
+            results[i] = GtpResponse.parse(sendGtpCommand(commands[i]));
+            if (results[i] == null)
+                return null;
+        }
+        return results;
+    }
+
+    /**
+     * Returns the name of the engine, which can be displayed as the player name (try to keep it short).
+     */
+    public abstract String getName();
+
+    /**
+     * Returns the version of the engine.
+     */
+    public abstract String getVersion();
+
+
+    /**
+     * Returns true if the engine keeps searching during the opponent's turn.
+     */
+    public boolean isPondering() {
+        return false;
+    }
+
+    /**
+     * Stops the search done during the opponent's turn, if there is one (for example when
+     * the game is paused). The engine may start pondering again after its next move.
+     */
+    public void stopPondering() {
+    }
+
+    /**
+     * Starts streaming the analysis of the engine to the specified listener, until
+     * {@link #stopAnalysis()} is called. Updates are delivered on the main thread, at most
+     * once per frame. Only one listener can be registered at a time.
+     *
+     * @return false if the engine doesn't support analysis (this is the default).
+     */
+    public boolean startAnalysis(AnalysisListener listener) {
+        return false;
+    }
+
+    /**
+     * Stops the analysis started with {@link #startAnalysis(AnalysisListener)}. No update will be
+     * delivered after this call.
+     */
+    public void stopAnalysis() {
+    }
+
+    /**
+     * Interrupts the command being executed by another thread (such as a long genmove). The
+     * interrupted command fails, and the engine must accept the next commands as if it had
+     * never been sent.
+     *
+     * @return false if the engine can't be interrupted (this is the default).
+     */
+    public boolean abort() {
+        return false;
+    }
+
+    /**
+     * Called when the system is low on memory, with a level of ComponentCallbacks2.onTrimMemory()
+     * on Android. The engine should free what it can (by default, nothing is done).
+     */
+    public void onTrimMemory(int level) {
+    }
+
+    /**
+     * Releases the resources used by the engine (such as its process), when it is no longer needed.
+     */
+    public void release() {
+    }
+
+    /**
+     * Starts a new game.
+     *
+     * @param boardSize   The board size, between 4 and 19.
+     * @param playerColor The player's color, either GoBoard.BLACK or GoBoard.WHITE.
+     * @param komi        The komi for this game. The komi can be a negative value.
+     * @param handicap    The handicap for this game (either 0 or a value between 2 and 9),
+     *                    which will be placed automatically.
+     * @throws IllegalArgumentException
+     */
+    public void newGame(int boardSize, byte playerColor, double komi, int handicap) {
+        _newGame(boardSize, playerColor, komi, handicap, true);
+    }
+
+
+    /**
+     * Starts a new game at the end of the main variation of the specified game.
+     */
+    public void newGame(GoGame game) {
+        _game = game;
+        _newGame(_game.board.getSize(), _game.getNextPlayer(), _game.getKomi(), _game.getHandicap(), false);
+
+        ArrayList<String> commands = new ArrayList<>();
+        GameNode move = _game.getBaseNode();
+        while (move.nextNodes.size() > 0) {
+            move = move.nextNodes.get(0);
+            commands.add(_getPlayCommand(new Coords(move.x, move.y), move.color));
+        }
+        if (commands.size() > 0)
+            sendGtpCommands(commands.toArray(new String[commands.size()]));
+
+        _game.gotoLastMove();
+
+        if (_game.getCurrentMoveNumber() > 0) {
+            byte color = _game.getCurrentNode().color;
+            if (color == GoBoard.WHITE || color == GoBoard.BLACK)
+                _playerColor = GoBoard.getOppositeColor(color);
+        }
+    }
+
+
+    protected void _newGame(int boardSize, byte playerColor, double komi, int handicap, boolean createGame) {
+        if (playerColor != GoBoard.BLACK && playerColor != GoBoard.WHITE)
+            throw new IllegalArgumentException("The player color is invalid (" + playerColor + ").");
+
+        sendGtpCommands(
+                "boardsize " + boardSize,
+                "komi " + ((int) (komi * 10.0) / 10.0),
+                "clear_board");
+
+        _playerColor = playerColor;
+        _boardSize = boardSize;
+
+        // Lower the handicap until the engine agrees with it
+        String cmdStatus = "";
+        while (handicap > 0 && !cmdSuccess((cmdStatus = sendGtpCommand("fixed_handicap " + handicap))))
+            handicap--;
+
+        if (createGame)
+            _game = new GoGame(boardSize, komi, 0); // TODO find a better way to handle handicap
+
+        // Place it on the board (the handicap stone coordinates were returned by the "fixed_handicap" command)
+        if (cmdStatus.length() > 1) {
+            String[] handicapCoords = cmdStatus.replace("\n", "").split(" ");
+
+            for (String handiCoord : handicapCoords) {
+                try {
+                    Coords coords = _str2point(handiCoord);
+                    if (coords != null)
+                        _game.addStone(coords.x, coords.y, GoBoard.BLACK);
+                }
+                catch (Exception ignored) { // Ignore whitespaces and other useless characters
+                }
+            }
+        }
+        _game.info.handicap = handicap;
+        if (handicap > 1)
+            _game.switchCurrentPlayer();
+    }
+
+
+    /**
+     * Plays a move on the specified coordinates (gtp command "play").
+     *
+     * @param coords The coordinates, zero-based ( (0, 0) is the top left intersection).
+     *               Set them to (-1, -1) to pass.
+     * @return true if the move was legal, false otherwise.
+     * @throws IllegalArgumentException
+     */
+    public boolean playMove(Coords coords) {
+        return _playMove(coords, _playerColor, true);
+    }
+
+
+    /**
+     * Plays a move on the specified coordinates (gtp command "play").
+     *
+     * @param coords The coordinates, zero-based (The point (0, 0) is the top left intersection).
+     *               Set to (-1, -1) to pass.
+     * @param color  The stone color.
+     * @return true if the move was legal, false otherwise.
+     * @throws IllegalArgumentException
+     */
+    public boolean playMove(Coords coords, byte color) {
+        return _playMove(coords, color, true);
+    }
+
+
+    protected boolean _playMove(Coords coords, byte color, boolean playMove) {
+        if ((coords.x != -1 || coords.y != -1) && (coords.x < 0 || coords.x >= _boardSize || coords.y < 0 || coords.y >= _boardSize))
+            throw new IllegalArgumentException("The coordinates are out of bounds.");
+
+        boolean success = cmdSuccess(sendGtpCommand(_getPlayCommand(coords, color)));
+        if (success && playMove)
+            _game.playMove(coords);
+        return success;
+    }
+
+
+    /**
+     * Tells the engine to play the next move.
+     *
+     * @return The move played by the engine ( (0, 0) is the top left intersection).
+     *         Returns (-1, -1) if the engine passes, or null if the command was aborted or failed.
+     */
+    public Coords genMove() {
+        if (_openingBook != null && _game.getCurrentMoveNumber() < _openingBook.getMaxDepth()) {
+            Coords coords = _openingBook.chooseMove(_game.board, getBotColor());
+            if (coords != null && _playKnownMove(coords))
+                return coords;
+        }
+
+        String command = "genmove " + _getBotColorString();
+        long cacheKey = 0;
+        int transform = SymmetryHash.IDENTITY;
+        final boolean useCache = _resultCache != null && _moveCacheEnabled;
+        if (useCache) {
+            transform = _game.board.getSymmetryHash().getCanonicalTransform(_game.board.getKoCoords(), getBotColor());
+            cacheKey = _getCacheKey(transform, getBotColor(), command);
+            String move = _resultCache.get(cacheKey, "genmove");
+            Coords coords = (move == null) ? null : _str2point(_transformAnswer(move, transform, false));
+            if (coords != null && _playKnownMove(coords))
+                return coords;
+        }
+
+        String move = sendGtpCommand(command);
+        if (move == null)
+            return null;
+        String moveText = move.substring(move.indexOf(' ') + 1).trim();
+        Coords coords = cmdSuccess(move) ? _str2point(moveText) : null;
+        //Log.v(TAG, "Bot played " + move + ", coords are " + coords);
+        if (coords == null) {
+            Log.w(TAG, "Invalid answer to " + command + " : " + move);
+            return null;
+        }
+
+        // Resignations are not stored, the engine may change its mind after an undo
+        if (useCache && coords.x != -3)
+            _resultCache.put(cacheKey, _transformAnswer(moveText, transform, true));
+
+        if (coords.x == -1)
+            _game.pass();
+        else if (coords.x == -3)
+            _game.resign(getBotColor());
+        else
+            _game.playMove(coords);
+        return coords;
+    }
+
+    /**
+     * Plays a move of the engine which is already known (from the opening book or the result
+     * cache). The move is sent to the engine with "play", so it stays in sync with the game.
+     *
+     * @return false if the move is not legal.
+     */
+    private boolean _playKnownMove(Coords coords) {
+        byte color = getBotColor();
+        if (coords.x != -1 && !_game.board.isLegal(coords.x, coords.y, color))
+            return false;
+        if (!_playMove(coords, color, false))
+            return false;
+
+        if (coords.x == -1)
+            _game.pass();
+        else
+            _game.playMove(coords);
+        return true;
+    }
+
+
+    /**
+     * Undo the last move from the player.
+     *
+     * @param allowDoubleUndo Also undo the answer move from the engine (if there is one).
+     * @return false if there was no move to undo.
+     */
+    public boolean undo(boolean allowDoubleUndo) {
+        boolean doubleUndo = allowDoubleUndo &&
+                (_game.getNextPlayer() == _playerColor && _game.getCurrentNode().x >= -1);
+
+        String result = sendGtpCommand("undo");
+        if (cmdSuccess(result)) {
+            _game.undo(true);
+            if (doubleUndo && cmdSuccess(sendGtpCommand("undo")))
+                _game.undo(true);
+            return true;
+        }
+        else if (result.contains("cannot undo")) {
+            Log.v(TAG, "Faking undo...");
+            // Being able to undo moves on android is necessary (because mistakes happen very
+            // often on small screens), so we fake an undo by starting a new game and replaying
+            // the whole game tree except the last move.
+            if (_game.undo(true) != null) {
+                if (doubleUndo)
+                    _game.undo(true);
+                newGame(_game);
+                return true;
+            }
+        }
+        return false;
+        //return cmdSuccess(sendGtpCommand("gg-undo " + (doubleUndo ? 2 : 1)));
+    }
+
+    public boolean setLevel(int level) {
+        return cmdSuccess(sendGtpCommand("level " + level));
+    }
+
+    /**
+     * The engine will set the status of every stone on the board (dead, white territory,
+     * or black territory). The result can be obtained with getGame().getFinalStatus().
+     * Note that this can take a long time to execute.
+     */
+    public void askFinalStatus() {
+        String[] commands = {
+                "final_status_list white_territory",
+                "final_status_list black_territory",
+                "final_status_list dead"};
+        String[] answers = _sendCachedCommands(commands, "final_status_list");
+        if (answers == null)
+            return;
+
+        for (String coords : _splitWords(answers[0])) {
+            Coords pt = _str2point(coords);
+            if (pt != null)
+                _game.setFinalStatus(pt.x, pt.y, GoBoard.WHITE_TERRITORY);
+        }
+
+        for (String coords : _splitWords(answers[1])) {
+            Coords pt = _str2point(coords);
+            if (pt != null)
+                _game.setFinalStatus(pt.x, pt.y, GoBoard.BLACK_TERRITORY);
+        }
+
+        // Dead stones are grouped by chain, one chain per line
+        for (String coords : _splitWords(answers[2])) {
+            Coords pt = _str2point(coords);
+            if (pt != null) {
+                _game.setFinalStatus(pt.x, pt.y,
+                        (_game.board.getColor(pt.x, pt.y) == GoBoard.WHITE) ?
+                                GoBoard.DEAD_WHITE_STONE : GoBoard.DEAD_BLACK_STONE);
+            }
+        }
+    }
+
+
+    /**
+     * The engine will compute the final result of the game (or null if something failed) and
+     * set it as the result of the underlying game.
+     */
+    public GoGameResult computeFinalScore() {
+        String[] answers = _sendCachedCommands(new String[]{"final_score"}, "final_score");
+        if (answers == null)
+            return null;
+        GoGameResult result = GoGameResult.tryParse(answers[0].trim());
+        if (result != null)
+            _game.info.result = result;
+        return result;
+    }
+
+
+    /**
+     * Sends commands which don't change the game, and returns the text of their responses.
+     * If all answers are in the result cache, nothing is sent to the engine.
+     *
+     * @return The answers, or null if a command failed.
+     */
+    private String[] _sendCachedCommands(String[] commands, String commandName) {
+        String[] answers = new String[commands.length];
+        long[] keys = new long[commands.length];
+        int transform = SymmetryHash.IDENTITY;
+        if (_resultCache != null) {
+            byte color = _game.getNextPlayer();
+            transform = _game.board.getSymmetryHash().getCanonicalTransform(_game.board.getKoCoords(), color);
+            boolean found = true;
+            for (int i = 0; i < commands.length; i++) {
+                keys[i] = _getCacheKey(transform, color, commands[i]);
+                String answer = _resultCache.get(keys[i], commandName);
+                answers[i] = (answer == null) ? null : _transformAnswer(answer, transform, false);
+                found &= answer != null;
+            }
+            if (found)
+                return answers;
+        }
+
+        GtpResponse[] responses = sendCommands(commands);
+        if (responses == null)
+            return null;
+        for (int i = 0; i < commands.length; i++) {
+            if (!responses[i].isSuccess())
+                return null;
+            answers[i] = responses[i].getText();
+            if (_resultCache != null)
+                _resultCache.put(keys[i], _transformAnswer(answers[i], transform, true));
+        }
+        return answers;
+    }
+
+    private static List<String> _splitWords(String text) {
+        ArrayList<String> words = new ArrayList<>();
+        for (String word : text.split("\\s+")) {
+            if (word.length() > 0)
+                words.add(word);
+        }
+        return words;
+    }
+
+    /**
+     * Returns the key of the answer to a command in the current position. The answers are stored
+     * for the canonical position (see {@link SymmetryHash}), so they are found again in the
+     * rotated and mirrored positions.
+     */
+    private long _getCacheKey(int transform, byte nextPlayer, String command) {
+        long position = _game.board.getSymmetryHash().getHash(transform, _game.board.getKoCoords(), nextPlayer);
+        return EngineResultCache.getKey(position, getCacheSettings() + " komi=" + _game.getKomi(), command);
+    }
+
+    /**
+     * Converts the coordinates of an answer between the real board and the canonical board
+     * (the other words are kept).
+     */
+    private String _transformAnswer(String answer, int transform, boolean toCanonical) {
+        if (transform == SymmetryHash.IDENTITY)
+            return answer;
+
+        SymmetryHash hash = _game.board.getSymmetryHash();
+        StringBuilder result = new StringBuilder(answer.length());
+        for (String word : _splitWords(answer)) {
+            if (result.length() > 0)
+                result.append(' ');
+            if (word.matches("[A-HJ-Za-hj-z][0-9]{1,2}")) {
+                Coords coords = _str2point(word.toUpperCase());
+                word = _point2str(toCanonical ? hash.toCanonical(transform, coords) : hash.toReal(transform, coords));
+            }
+            result.append(word);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Sets the cache which stores the answers of the engine for each position (null to disable it).
+     * The same cache can be shared by several engines, see {@link #getCacheSettings()}. Generated
+     * moves are only cached if {@link #setMoveCacheEnabled(boolean)} is called.
+     */
+    public void setResultCache(EngineResultCache cache) {
+        _resultCache = cache;
+    }
+
+    /**
+     * Returns the cache which stores the answers of the engine, or null if there is none.
+     */
+    public EngineResultCache getResultCache() {
+        return _resultCache;
+    }
+
+    /**
+     * Enables or disables the caching of the moves generated by the engine (disabled by default,
+     * only the final status and score are cached). This should only be enabled for deterministic
+     * engines : otherwise, a position seen again always gets the first move the engine chose.
+     */
+    public void setMoveCacheEnabled(boolean enabled) {
+        _moveCacheEnabled = enabled;
+    }
+
+    public boolean isMoveCacheEnabled() {
+        return _moveCacheEnabled;
+    }
+
+    /**
+     * Sets the book of opening moves which are played instead of asking the engine (null to
+     * disable it).
+     */
+    public void setOpeningBook(OpeningBook book) {
+        _openingBook = book;
+    }
+
+    /**
+     * Returns the book of opening moves used by the engine, or null if there is none.
+     */
+    public OpeningBook getOpeningBook() {
+        return _openingBook;
+    }
+
+    /**
+     * Returns a description of the settings which change the answers of the engine, so answers
+     * computed with other settings are not taken from the result cache. By default, this is
+     * the name and the version of the engine.
+     */
+    protected String getCacheSettings() {
+        return getName() + " " + getVersion();
+    }
+
+
+    /**
+     * Returns true if the next player to play is the engine, false otherwise.
+     */
+    public boolean isBotTurn() {
+        return _playerColor != _game.getNextPlayer();
+    }
+
+
+    /**
+     * The two players switch colors. If the engine played black it now plays white and vice-versa.
+     */
+    public void switchColors() {
+        _playerColor = GoBoard.getOppositeColor(_playerColor);
+    }
+
+
+    /**
+     * Returns a pretty ASCII board which shows the current position (gtp command "showboard").
+     */
+    public String getAsciiBoard() {
+        GtpResponse response = sendCommand("showboard");
+        return (response == null) ? null : response.getText();
+    }
+
+
+    /**
+     * Gets the player color.
+     */
+    public byte getPlayerColor() {
+        return _playerColor;
+    }
+
+    /**
+     * Gets the engine color.
+     */
+    public byte getBotColor() {
+        return GoBoard.getOppositeColor(_playerColor);
+    }
+
+    /**
+     * Gets the board size used for this game.
+     *
+     * @return The board size.
+     */
+    public int getBoardSize() {
+        return _boardSize;
+    }
+
+
+    /**
+     * Gets the underlying game used by the engine.
+     */
+    public GoGame getGame() {
+        return _game;
+    }
+
+    /**
+     * Returns true if the specified response to a GTP command indicates a success.
+     */
+    public boolean cmdSuccess(String response) {
+        return response != null && response.length() > 0 && response.charAt(0) == '=';
+    }
+
+    /**
+     * Converts standard coordinates into their representation in the GTP protocol.
+     * Special cases are : (-1, -1) = pass, (-3, -3) = resignation.
+     *
+     * @param coords The coordinates to convert.
+     * @return The string representation.
+     */
+    protected String _point2str(Coords coords) {
+        return _point2str(coords.x, coords.y);
+    }
+
+    /**
+     * Converts standard coordinates into their representation in the GTP protocol.
+     * Special cases are : (-1, -1) = pass, (-3, -3) = resignation.
+     *
+     * @return The string representation.
+     */
+    protected String _point2str(int x, int y) {
+        if (x == -1 && y == -1)
+            return "pass";
+        else if (x == -3 && y == -3)
+            return "resign";
+        else
+            return String.valueOf(_BOARD_LETTERS.charAt(x)) + (_boardSize - y);
+    }
+
+    /**
+     * Converts GTP coordinates (i.e. "C5", "J12", ...) into their standard representation.
+     * A pass will be returned as (-1, -1), a resignation as (-3, -3).
+     *
+     * @param coords
+     * @return The converted coordinates, or null if they were invalid.
+     */
+    protected Coords _str2point(String coords) {
+        if (coords.equalsIgnoreCase("pass"))
+            return new Coords(-1, -1);
+        else if (coords.equalsIgnoreCase("resign"))
+            return new Coords(-3, -3);
+        else {
+            try {
+                return new Coords(
+                        _BOARD_LETTERS.indexOf(coords.charAt(0)),
+                        _boardSize - Integer.parseInt(coords.substring(1).trim()));
+            }
+            catch (NumberFormatException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+    }
+
+    protected String _getPlayCommand(Coords coords, byte color) {
+        return String.format("play %1$s %2$s", _getColorString(color), _point2str(coords));
+    }
+
+    protected void _gtpSendKomi(float komi) {
+
+    }
+
+    protected String _getColorString(byte color) {
+        return (color == GoBoard.WHITE ? _WHITE_NAME : _BLACK_NAME);
+    }
+
+    protected String _getPlayerColorString() {
+        return (_playerColor == GoBoard.WHITE ? _WHITE_NAME : _BLACK_NAME);
+    }
+
+    protected String _getBotColorString() {
+        return (_playerColor == GoBoard.WHITE ? _BLACK_NAME : _WHITE_NAME);
+    }
+}
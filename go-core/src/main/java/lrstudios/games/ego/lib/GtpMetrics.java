@@ -0,0 +1,52 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.games.ego.lib;
+
+
+/**
+ * Receives measurements about the communication with a GTP engine.
+ * See GtpMetricsRecorder (in elygo-lib) for the default implementation.
+ */
+public interface GtpMetrics {
+    /**
+     * Called when the response of a command has been received.
+     *
+     * @param commandName   The name of the command (its first word, like "genmove").
+     * @param latencyNanos  The time between the moment the command was written and the moment its
+     *                      response was received (this includes the time spent waiting for the
+     *                      commands sent before).
+     * @param bytesSent     The size of the command.
+     * @param bytesReceived The size of the response.
+     * @param success       False if the engine returned an error.
+     */
+    void onCommand(String commandName, long latencyNanos, int bytesSent, int bytesReceived, boolean success);
+
+    /**
+     * Called when the engine process has been restarted (because it was killed, usually).
+     */
+    void onRestart();
+
+    /**
+     * Called when a game has been sent again to a restarted engine.
+     *
+     * @param durationNanos The time needed to send the game.
+     * @param moveCount     The number of moves of the game.
+     */
+    void onReplay(long durationNanos, int moveCount);
+}
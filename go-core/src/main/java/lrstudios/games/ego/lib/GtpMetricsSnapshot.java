@@ -0,0 +1,119 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.games.ego.lib;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * The state of a GtpMetricsRecorder (in elygo-lib) at a given time. All durations are in microseconds.
+ */
+public final class GtpMetricsSnapshot {
+    public final long timestamp;
+    public final List<CommandStats> commands;
+    public final int restartCount;
+    public final int replayCount;
+    public final long replayTotalMicros;
+    public final long replayMaxMicros;
+    public final int replayedMoves;
+
+
+    GtpMetricsSnapshot(long timestamp, List<CommandStats> commands, int restartCount,
+                       int replayCount, long replayTotalMicros, long replayMaxMicros, int replayedMoves) {
+        this.timestamp = timestamp;
+        this.commands = Collections.unmodifiableList(commands);
+        this.restartCount = restartCount;
+        this.replayCount = replayCount;
+        this.replayTotalMicros = replayTotalMicros;
+        this.replayMaxMicros = replayMaxMicros;
+        this.replayedMoves = replayedMoves;
+    }
+
+    /**
+     * Returns the statistics of the specified command, or null if it was never sent.
+     */
+    public CommandStats getCommand(String name) {
+        for (CommandStats stats : commands) {
+            if (stats.name.equals(name))
+                return stats;
+        }
+        return null;
+    }
+
+    /**
+     * Returns all statistics as a human-readable table.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(128 + commands.size() * 96);
+        sb.append(String.format(Locale.US, "%-20s %7s %5s %9s %9s %9s %9s %9s %9s %9s%n",
+                "command", "count", "fail", "avg(us)", "min", "p50", "p90", "p99", "max", "bytes"));
+        for (CommandStats stats : commands) {
+            sb.append(String.format(Locale.US, "%-20s %7d %5d %9d %9d %9d %9d %9d %9d %9d%n",
+                    stats.name, stats.count, stats.failures, stats.getAverageMicros(), stats.minMicros,
+                    stats.p50Micros, stats.p90Micros, stats.p99Micros, stats.maxMicros,
+                    stats.bytesSent + stats.bytesReceived));
+        }
+        sb.append(String.format(Locale.US, "restarts=%d replays=%d replayed_moves=%d replay_avg(us)=%d replay_max(us)=%d",
+                restartCount, replayCount, replayedMoves,
+                (replayCount > 0) ? replayTotalMicros / replayCount : 0, replayMaxMicros));
+        return sb.toString();
+    }
+
+
+    /**
+     * The statistics of one type of command. Percentiles are estimated from a histogram whose
+     * buckets are powers of 2 : they are accurate within a factor of 2.
+     */
+    public static final class CommandStats {
+        public final String name;
+        public final long count;
+        public final long failures;
+        public final long totalMicros;
+        public final long minMicros;
+        public final long maxMicros;
+        public final long p50Micros;
+        public final long p90Micros;
+        public final long p99Micros;
+        public final long bytesSent;
+        public final long bytesReceived;
+
+
+        CommandStats(String name, long count, long failures, long totalMicros, long minMicros, long maxMicros,
+                     long p50Micros, long p90Micros, long p99Micros, long bytesSent, long bytesReceived) {
+            this.name = name;
+            this.count = count;
+            this.failures = failures;
+            this.totalMicros = totalMicros;
+            this.minMicros = minMicros;
+            this.maxMicros = maxMicros;
+            this.p50Micros = p50Micros;
+            this.p90Micros = p90Micros;
+            this.p99Micros = p99Micros;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+        }
+
+        public long getAverageMicros() {
+            return (count > 0) ? totalMicros / count : 0;
+        }
+    }
+}
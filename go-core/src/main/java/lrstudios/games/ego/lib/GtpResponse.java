@@ -0,0 +1,139 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.games.ego.lib;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * The response of a GTP engine to a command. A response starts with "=" (success) or "?" (failure),
+ * optionally followed by the id of the command, and ends with an empty line.
+ */
+public final class GtpResponse {
+    private final boolean _success;
+    private final int _id;
+    private final List<String> _lines;
+
+
+    /**
+     * @param success True if the command succeeded.
+     * @param id      The id of the command, or -1 if it had none.
+     * @param lines   The lines of the response, without the status prefix and the final empty line.
+     */
+    public GtpResponse(boolean success, int id, List<String> lines) {
+        _success = success;
+        _id = id;
+        _lines = Collections.unmodifiableList(lines);
+    }
+
+    /**
+     * Parses a response as returned by {@link GtpEngine#sendGtpCommand(String)} ("= C4", "? illegal move", ...).
+     * Returns null if the text isn't a GTP response.
+     */
+    public static GtpResponse parse(String text) {
+        if (text == null || text.length() == 0 || (text.charAt(0) != '=' && text.charAt(0) != '?'))
+            return null;
+
+        ArrayList<String> lines = new ArrayList<>();
+        int start = 0;
+        int len = text.length();
+        while (start <= len) {
+            int end = text.indexOf('\n', start);
+            if (end < 0)
+                end = len;
+            lines.add(text.substring(start, end));
+            start = end + 1;
+        }
+        // Remove the terminating empty line(s)
+        while (lines.size() > 1 && lines.get(lines.size() - 1).length() == 0)
+            lines.remove(lines.size() - 1);
+
+        String first = lines.get(0);
+        int pos = 1;
+        while (pos < first.length() && Character.isDigit(first.charAt(pos)))
+            pos++;
+        int id = Utils.tryParseInt(first.substring(1, pos), -1);
+        lines.set(0, first.substring((pos < first.length() && first.charAt(pos) == ' ') ? pos + 1 : pos));
+        return new GtpResponse(text.charAt(0) == '=', id, lines);
+    }
+
+
+    /**
+     * Returns true if the command succeeded.
+     */
+    public boolean isSuccess() {
+        return _success;
+    }
+
+    /**
+     * Returns the id of the command, or -1 if it had none.
+     */
+    public int getId() {
+        return _id;
+    }
+
+    /**
+     * Returns the lines of the response (the status prefix is not included). A single-line response
+     * such as "= C4" contains one line ("C4").
+     */
+    public List<String> getLines() {
+        return _lines;
+    }
+
+    /**
+     * Returns the whole response text, without the status prefix.
+     */
+    public String getText() {
+        if (_lines.size() == 1)
+            return _lines.get(0);
+
+        StringBuilder sb = new StringBuilder(_lines.size() * 40);
+        for (int i = 0; i < _lines.size(); i++) {
+            if (i > 0)
+                sb.append('\n');
+            sb.append(_lines.get(i));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns all whitespace-separated words of the response (on all lines).
+     */
+    public List<String> getWords() {
+        ArrayList<String> words = new ArrayList<>();
+        for (String line : _lines) {
+            for (String word : line.split("\\s+")) {
+                if (word.length() > 0)
+                    words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Returns the response with the same format as {@link GtpEngine#sendGtpCommand(String)},
+     * without the id ("= C4", "? illegal move", ...).
+     */
+    @Override
+    public String toString() {
+        return (_success ? "= " : "? ") + getText();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.lib;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import lrstudios.util.Log;
+
+
+/**
+ * Executes jobs using a {@link GtpEngine} on a dedicated thread, by order of priority (and by
+ * order of submission for the same priority).
+ * <p/>
+ * Each job returns a Future, which can be used to wait for its result or to cancel it. Cancelling
+ * the job being executed aborts the current engine command (see {@link GtpEngine#abort()}), so
+ * a long genmove doesn't have to be waited for. If the engine can't be aborted, the job runs
+ * until the end but its result is ignored. A job submitted with a key replaces the pending
+ * jobs which have the same key (for example, successive analysis requests).
+ */
+public class GtpScheduler extends Thread {
+    /**
+     * Commands which stop the current activity of the engine (pondering, analysis), and the
+     * player's moves and undos.
+     */
+    public static final int PRIORITY_INTERRUPT = 0;
+    /**
+     * Commands the user is waiting for (score).
+     */
+    public static final int PRIORITY_HIGH = 1;
+    public static final int PRIORITY_NORMAL = 2;
+    /**
+     * Background commands (analysis, release).
+     */
+    public static final int PRIORITY_LOW = 3;
+
+    private static final String TAG = "GtpScheduler";
+
+    protected final GtpEngine _engine;
+    private final PriorityQueue<Job<?>> _queue = new PriorityQueue<>();
+    private Job<?> _running;
+    private long _nextSequence;
+    private boolean _shutdown;
+
+
+    public GtpScheduler(GtpEngine engine) {
+        super(TAG);
+        _engine = engine;
+    }
+
+
+    /**
+     * Adds a job to the queue.
+     *
+     * @param priority One of the PRIORITY_ constants.
+     */
+    public <T> Future<T> submit(int priority, Callable<T> job) {
+        return submit(priority, null, job);
+    }
+
+    /**
+     * Adds a job to the queue, and cancels the pending jobs which have the same key (the job being
+     * executed is not cancelled).
+     *
+     * @param priority One of the PRIORITY_ constants.
+     * @param key      The key of the job, or null.
+     */
+    public <T> Future<T> submit(int priority, String key, Callable<T> job) {
+        Job<T> task = new Job<>(job, priority, key);
+        ArrayList<Job<?>> superseded = new ArrayList<>();
+        synchronized (_queue) {
+            if (_shutdown) {
+                task.cancel(false);
+                return task;
+            }
+            if (key != null) {
+                Iterator<Job<?>> it = _queue.iterator();
+                while (it.hasNext()) {
+                    Job<?> pending = it.next();
+                    if (key.equals(pending.key)) {
+                        it.remove();
+                        superseded.add(pending);
+                    }
+                }
+            }
+            task.sequence = _nextSequence++;
+            _queue.add(task);
+            _queue.notifyAll();
+        }
+        for (Job<?> pending : superseded)
+            pending.cancel(false);
+        return task;
+    }
+
+    /**
+     * Cancels all pending jobs, and the job being executed.
+     */
+    public void cancelAll() {
+        ArrayList<Job<?>> jobs;
+        synchronized (_queue) {
+            jobs = new ArrayList<>(_queue);
+            _queue.clear();
+            if (_running != null)
+                jobs.add(_running);
+        }
+        for (Job<?> job : jobs)
+            job.cancel(true);
+    }
+
+    /**
+     * Stops the thread once the pending jobs have been executed. The jobs submitted after this
+     * call are cancelled.
+     */
+    public void shutdown() {
+        synchronized (_queue) {
+            _shutdown = true;
+            _queue.notifyAll();
+        }
+    }
+
+    /**
+     * Returns true if the job being executed has been cancelled. Jobs can call this to know whether
+     * a command failed because it was aborted.
+     */
+    protected boolean isCurrentJobCancelled() {
+        synchronized (_queue) {
+            return _running != null && _running.isCancelled();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Job<?> job;
+            synchronized (_queue) {
+                while (_queue.isEmpty() && !_shutdown) {
+                    try {
+                        _queue.wait();
+                    }
+                    catch (InterruptedException ignored) {
+                    }
+                }
+                job = _queue.poll();
+                if (job == null)
+                    return;
+                _running = job;
+            }
+
+            job.run();
+            synchronized (_queue) {
+                _running = null;
+            }
+        }
+    }
+
+
+    private final class Job<T> extends FutureTask<T> implements Comparable<Job<?>> {
+        final int priority;
+        final String key;
+        long sequence;
+
+
+        Job(Callable<T> callable, int priority, String key) {
+            super(callable);
+            this.priority = priority;
+            this.key = key;
+        }
+
+        /**
+         * The thread is never interrupted : the engine is aborted instead, because an interrupted
+         * command could be seen as a crash and sent again.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean running;
+            synchronized (_queue) {
+                running = (_running == this);
+            }
+            if (!super.cancel(false))
+                return false;
+            if (running && mayInterruptIfRunning)
+                _engine.abort();
+            return true;
+        }
+
+        /**
+         * Logs the exception thrown by the job, which would be lost if nobody waits for its result.
+         */
+        @Override
+        protected void done() {
+            if (isCancelled())
+                return;
+            try {
+                get();
+            }
+            catch (ExecutionException e) {
+                Log.e(TAG, "GTP job failed", e.getCause());
+            }
+            catch (InterruptedException ignored) {
+            }
+        }
+
+        @Override
+        public int compareTo(Job<?> other) {
+            if (priority != other.priority)
+                return (priority < other.priority) ? -1 : 1;
+            return (sequence < other.sequence) ? -1 : ((sequence == other.sequence) ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.games.ego.lib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+
+/**
+ * Reads a LRF container (version 2), which stores many LRF records (usually problems) in a single
+ * file. An index placed after the header allows to access any record directly, and to filter
+ * records by level without decoding them.
+ * <p/>
+ * Structure (all integers are big-endian) :
+ * <pre>
+ * Header   magic "LRF2" (4 bytes), version (1), flags (1), reserved (2), record count (4)
+ * Index    one entry per record : offset (4), length (4), level (2, -1 if none),
+ *          CRC32 of the record (4, only if FLAG_CRC is set)
+ * Records  the LRF data of each record, as written by {@link LrfParser#save(GoGame, OutputStream)}
+ * </pre>
+ */
+public final class LrfContainer {
+    public static final int VERSION = 1;
+
+    /**
+     * Set if the index contains the CRC32 of each record.
+     */
+    public static final int FLAG_CRC = 0x1;
+
+    /**
+     * The level of records which don't have any {@link LrfParser#GAMEINFO_TAG_LEVEL} tag.
+     */
+    public static final int NO_LEVEL = -1;
+
+    private static final int _MAGIC = 0x4C524632; // "LRF2"
+    private static final int _HEADER_SIZE = 12;
+    private static final int _ENTRY_SIZE = 10;
+    private static final int _ENTRY_SIZE_CRC = 14;
+
+    private final ByteBuffer _buffer;
+    private final int _count;
+    private final int _flags;
+    private final int _entrySize;
+    private boolean _verifyCrc = true;
+
+
+    /**
+     * Opens a container from the specified buffer. The buffer is not copied, and its position
+     * and limit are not modified.
+     *
+     * @throws IOException The buffer does not contain a valid container.
+     */
+    public LrfContainer(ByteBuffer buffer) throws IOException {
+        _buffer = buffer.duplicate();
+        _buffer.position(0);
+        if (_buffer.remaining() < _HEADER_SIZE || _buffer.getInt(0) != _MAGIC)
+            throw new IOException("Not a LRF container");
+        if (_buffer.get(4) > VERSION)
+            throw new IOException("Unsupported LRF container version : " + _buffer.get(4));
+
+        _flags = _buffer.get(5) & 0xFF;
+        _count = _buffer.getInt(8);
+        _entrySize = ((_flags & FLAG_CRC) != 0) ? _ENTRY_SIZE_CRC : _ENTRY_SIZE;
+        if (_count < 0 || _HEADER_SIZE + (long) _count * _entrySize > _buffer.limit())
+            throw new IOException("The LRF container index is truncated");
+    }
+
+    /**
+     * Opens the specified container file. The file is memory-mapped, so only the records
+     * which are read will be loaded.
+     *
+     * @throws IOException An error occured during reading, or the file is not a valid container.
+     */
+    public static LrfContainer open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new LrfContainer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        finally {
+            Utils.closeObject(raf);
+        }
+    }
+
+
+    /**
+     * Sets to false to skip the CRC verification of records (if the container has any CRC).
+     */
+    public void setVerifyCrc(boolean verify) {
+        _verifyCrc = verify;
+    }
+
+    /**
+     * Returns the number of records in this container.
+     */
+    public int getCount() {
+        return _count;
+    }
+
+    /**
+     * Returns true if the index contains a CRC for each record.
+     */
+    public boolean hasCrc() {
+        return (_flags & FLAG_CRC) != 0;
+    }
+
+    /**
+     * Returns the level of the specified record, or {@link #NO_LEVEL}.
+     */
+    public int getLevel(int index) {
+        return _buffer.getShort(_getEntryPos(index) + 8);
+    }
+
+    /**
+     * Returns the size of the specified record, in bytes.
+     */
+    public int getRecordLength(int index) {
+        return _buffer.getInt(_getEntryPos(index) + 4);
+    }
+
+    /**
+     * Returns the indexes of all records whose level is between minLevel and maxLevel (included).
+     * Only the index is read.
+     */
+    public int[] findByLevel(int minLevel, int maxLevel) {
+        int[] result = new int[_count];
+        int found = 0;
+        for (int i = 0; i < _count; i++) {
+            int level = getLevel(i);
+            if (level >= minLevel && level <= maxLevel)
+                result[found++] = i;
+        }
+
+        int[] trimmed = new int[found];
+        System.arraycopy(result, 0, trimmed, 0, found);
+        return trimmed;
+    }
+
+    /**
+     * Returns a read-only buffer containing the LRF data of the specified record.
+     *
+     * @throws IOException The record is truncated or its CRC doesn't match.
+     */
+    public ByteBuffer getRecord(int index) throws IOException {
+        int entryPos = _getEntryPos(index);
+        int offset = _buffer.getInt(entryPos);
+        int length = _buffer.getInt(entryPos + 4);
+        if (offset < 0 || length < 0 || (long) offset + length > _buffer.limit())
+            throw new IOException("The LRF record " + index + " is truncated");
+
+        ByteBuffer record = _buffer.duplicate();
+        record.position(offset);
+        record.limit(offset + length);
+        record = record.slice().asReadOnlyBuffer();
+
+        if (_verifyCrc && hasCrc()) {
+            byte[] data = new byte[length];
+            record.get(data);
+            record.rewind();
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+            if ((int) crc.getValue() != _buffer.getInt(entryPos + 10))
+                throw new IOException("The LRF record " + index + " is corrupted");
+        }
+        return record;
+    }
+
+    /**
+     * Loads the game contained in the specified record.
+     *
+     * @throws IOException The record is corrupted.
+     */
+    public GoGame getGame(int index) throws IOException {
+        return new LrfParser().parse(getRecord(index));
+    }
+
+    /**
+     * Loads the base position of the specified record (the move tree is ignored).
+     *
+     * @throws IOException The record is corrupted.
+     */
+    public GoBoard getBoard(int index) throws IOException {
+        return new LrfParser().parseBoard(getRecord(index));
+    }
+
+
+    private int _getEntryPos(int index) {
+        if (index < 0 || index >= _count)
+            throw new IndexOutOfBoundsException("Invalid record index : " + index);
+        return _HEADER_SIZE + index * _entrySize;
+    }
+
+
+    /**
+     * Creates a new LRF container.
+     */
+    public static final class Builder {
+        private final ArrayList<byte[]> _records = new ArrayList<byte[]>();
+        private final ArrayList<Integer> _levels = new ArrayList<Integer>();
+        private boolean _writeCrc = true;
+        private int _encoding = LrfParser.ENCODING_FIXED;
+
+
+        /**
+         * Sets to false to not store the CRC of each record (true by default).
+         */
+        public Builder writeCrc(boolean write) {
+            _writeCrc = write;
+            return this;
+        }
+
+        /**
+         * Sets the encoding used for the move tree of the games added after this call
+         * (see {@link LrfParser#setEncoding(int)}).
+         */
+        public Builder encoding(int encoding) {
+            LrfParser.checkEncoding(encoding);
+            _encoding = encoding;
+            return this;
+        }
+
+        /**
+         * Encodes the specified game and adds it at the end of the container. Its level is read
+         * from the {@link LrfParser#GAMEINFO_TAG_LEVEL} tag.
+         *
+         * @throws IOException An error occured while encoding the game.
+         */
+        public Builder add(GoGame game) throws IOException {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream(256);
+            LrfParser parser = new LrfParser();
+            parser.setEncoding(_encoding);
+            parser.save(game, stream);
+            int level = game.info.hasTag(LrfParser.GAMEINFO_TAG_LEVEL)
+                    ? Utils.tryParseInt(game.info.getTag(LrfParser.GAMEINFO_TAG_LEVEL), NO_LEVEL) : NO_LEVEL;
+            return add(stream.toByteArray(), level);
+        }
+
+        /**
+         * Adds an already encoded LRF record at the end of the container.
+         */
+        public Builder add(byte[] lrfData, int level) {
+            _records.add(lrfData);
+            _levels.add(level);
+            return this;
+        }
+
+        /**
+         * Returns the number of records added to this builder.
+         */
+        public int getCount() {
+            return _records.size();
+        }
+
+        /**
+         * Writes the container in the specified stream.
+         *
+         * @throws IOException An error occured during writing.
+         */
+        public void write(OutputStream stream) throws IOException {
+            final int count = _records.size();
+            final int entrySize = _writeCrc ? _ENTRY_SIZE_CRC : _ENTRY_SIZE;
+            DataOutputStream out = new DataOutputStream(stream);
+
+            out.writeInt(_MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(_writeCrc ? FLAG_CRC : 0);
+            out.writeShort(0);
+            out.writeInt(count);
+
+            long offset = _HEADER_SIZE + (long) count * entrySize;
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < count; i++) {
+                byte[] record = _records.get(i);
+                if (offset + record.length > Integer.MAX_VALUE)
+                    throw new IOException("The LRF container is too large");
+
+                out.writeInt((int) offset);
+                out.writeInt(record.length);
+                out.writeShort(_levels.get(i));
+                if (_writeCrc) {
+                    crc.reset();
+                    crc.update(record, 0, record.length);
+                    out.writeInt((int) crc.getValue());
+                }
+                offset += record.length;
+            }
+
+            for (byte[] record : _records)
+                out.write(record);
+            out.flush();
+        }
+    }
+}
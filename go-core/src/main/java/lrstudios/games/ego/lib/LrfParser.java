@@ -0,0 +1,620 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.games.ego.lib;
+
+import lrstudios.util.Rect;
+import lrstudios.util.io.BitReader;
+import lrstudios.util.io.BitWriter;
+import lrstudios.util.io.RangeDecoder;
+import lrstudios.util.io.RangeEncoder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Stack;
+
+/**
+ * Provides methods to parse and save LRF files from/to an instance of GoGame.
+ * See the LRF_SPEC file for more informations about this format.
+ */
+public final class LrfParser {
+    public static final String GAMEINFO_TAG_LEVEL = "lrf_level";
+
+    /**
+     * Each move of the tree is written with a fixed number of bits (default).
+     */
+    public static final int ENCODING_FIXED = 0;
+    /**
+     * The move tree is compressed with an adaptive range coder. Moves are coded relatively to
+     * the last move of each player when they are close to it, which is usually the case in problems.
+     * Files written with this encoding can't be read by older versions of this parser.
+     */
+    public static final int ENCODING_ARITHMETIC = 1;
+
+    private static final int
+            COMMAND_PLAY_MOVE = 0,
+            COMMAND_SET_RESULT = 1,
+            COMMAND_NEW_NODE = 2,
+            COMMAND_END_NODE = 3;
+
+    /**
+     * Written instead of the top-left tree bound to announce an encoding other than ENCODING_FIXED
+     * (this is not a valid intersection for the supported board sizes).
+     */
+    private static final int _BOUNDS_ESCAPE = 511;
+    private static final int _NEAR_DISTANCE = 4;
+    private static final int _DISTANCE_BITS = 2;
+    private static final int _ANCHOR_COUNT = 2;
+    private static final int _DISTANCE_CONTEXTS = 6;
+    private static final int _RING_STRIDE = 32;
+
+    private GoGame _game;
+    private int _lrf_bits;
+    private Rect _lrf_bounds;
+    private int _encoding = ENCODING_FIXED;
+
+    private BitWriter _loop_writer;
+    private GoGame _loop_game;
+    private IOException _loop_exception;
+
+    private BitReader _reader;
+    private RangeEncoder _encoder;
+    private RangeDecoder _decoder;
+    private int _lastCommand;
+    private int[][] _probsCommand;
+    private int[] _probsPass;
+    private int[][] _probsNear;
+    private int[][][] _probsDistance;
+    private int[][][] _probsRing;
+    private int[] _probsFarPos;
+    private int[] _ring;
+    private int[] _probsValue;
+
+
+    public LrfParser() {
+    }
+
+    /**
+     * Sets the encoding used to write the move tree (ENCODING_FIXED or ENCODING_ARITHMETIC).
+     * The encoding is detected automatically when a file is parsed.
+     */
+    public void setEncoding(int encoding) {
+        checkEncoding(encoding);
+        _encoding = encoding;
+    }
+
+    /**
+     * Throws an IllegalArgumentException if the specified value is not ENCODING_FIXED or ENCODING_ARITHMETIC.
+     */
+    public static void checkEncoding(int encoding) {
+        if (encoding != ENCODING_FIXED && encoding != ENCODING_ARITHMETIC)
+            throw new IllegalArgumentException("Unknown LRF encoding : " + encoding);
+    }
+
+    public GoBoard parseBoard(InputStream stream) throws IOException {
+        return GoBoard.importLrf(new BitReader(stream));
+    }
+
+    public GoBoard parseBoard(ByteBuffer buffer) throws IOException {
+        return GoBoard.importLrf(new BitReader(buffer));
+    }
+
+    public GoGame parse(InputStream stream) throws IOException {
+        return parse(new BitReader(stream));
+    }
+
+    /**
+     * Parses a game from the remaining bytes of the specified buffer (which can be memory-mapped).
+     */
+    public GoGame parse(ByteBuffer buffer) throws IOException {
+        return parse(new BitReader(buffer));
+    }
+
+    private GoGame parse(BitReader reader) throws IOException {
+        // Load the base position
+        final GoBoard board = GoBoard.importLrf(reader);
+        final GoGame game = new GoGame(board, 6.5);
+        final int size = board.getSize();
+
+        // Load the move tree if it exists
+        if (reader.read()) {
+            int encoding = ENCODING_FIXED;
+            int topLeftIntersection = (int) reader.read(9);
+            if (topLeftIntersection == _BOUNDS_ESCAPE) {
+                encoding = (int) reader.read(4);
+                if (encoding != ENCODING_ARITHMETIC)
+                    throw new IOException("Unknown LRF encoding : " + encoding);
+                topLeftIntersection = (int) reader.read(9);
+            }
+
+            Coords topLeft = GoBoard.decodeCoords(topLeftIntersection, size);
+            Coords bottomRight = GoBoard.decodeCoords((int) reader.read(9), size);
+            Rect bounds = new Rect(topLeft.x, topLeft.y, bottomRight.x, bottomRight.y);
+            final int shiftY = bounds.right - bounds.left + 1;
+            _lrf_bounds = bounds;
+            _lrf_bits = _getRequiredBits(bounds);
+            _reader = reader;
+            _lastCommand = COMMAND_END_NODE;
+            if (encoding == ENCODING_ARITHMETIC) {
+                _initModels();
+                _decoder = new RangeDecoder(reader);
+            }
+
+            // The tree is built directly from the decoded nodes : the board state will only be
+            // computed when the game is navigated
+            final Stack<GameNode> parentStack = new Stack<GameNode>();
+            GameNode node = game.getBaseNode();
+
+            parentStack.push(node);
+            while (!parentStack.empty()) {
+                switch (_readCommand()) {
+                    case COMMAND_PLAY_MOVE:
+                        final int intersection = _readMove(node);
+                        final GameNode parent = node;
+                        if (intersection < 0)
+                            node = parent.addNode(-1, -1, GoBoard.getOppositeColor(parent.color));
+                        else
+                            node = parent.addNode(intersection % shiftY + bounds.left, intersection / shiftY + bounds.top,
+                                    GoBoard.getOppositeColor(parent.color));
+                        parent.lastVariation = (byte) Math.max(0, parent.nextNodes.indexOf(node));
+                        break;
+                    case COMMAND_SET_RESULT:
+                        node.setMoveValue((byte) _readValue());
+                        break;
+                    case COMMAND_NEW_NODE:
+                        parentStack.push(node);
+                        break;
+                    case COMMAND_END_NODE:
+                        node = parentStack.pop();
+                        break;
+                    default:
+                        throw new IOException("Invalid LRF command : " + _lastCommand);
+                }
+            }
+            _decoder = null;
+            _reader = null;
+        }
+
+        try {
+            int type = (int) reader.read(4);
+            switch (type) {
+                case 1: // String TODO
+                    break;
+                case 2: // Mark TODO
+                    break;
+
+                case 3: // Level
+                    game.info.putTag(GAMEINFO_TAG_LEVEL, Long.toString(reader.read(8)));
+                    break;
+            }
+        }
+        catch (EOFException ignored) {
+        }
+
+        return game;
+    }
+
+    private Runnable save_loop = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                _save_loop(_loop_game.getBaseNode());
+            }
+            catch (IOException e) {
+                _loop_exception = e;
+            }
+        }
+    };
+
+    public void save(GoGame game, OutputStream stream) throws IOException {
+        BitWriter writer = new BitWriter(stream);
+        GoBoard board = game.board;
+        _game = game;
+        String firstPlayer = game.info.firstPlayer;
+        boolean reverseColors;
+
+        if (firstPlayer != null && firstPlayer.length() > 0) {
+            reverseColors = Character.toUpperCase(firstPlayer.charAt(0)) == 'W';
+        }
+        else {
+            // If the first player to play isn't specified,
+            // check the color of the first move in the variations
+            ArrayList<GameNode> nextNodes = _game.getBaseNode().nextNodes;
+            reverseColors = nextNodes != null && !nextNodes.isEmpty() && nextNodes.get(0).color == GoBoard.WHITE;
+        }
+
+        if (reverseColors) {
+            GoBoard newBoard = new GoBoard(board.getSize());
+            byte[] colors = board.getBoardArray();
+            byte[] newColors = newBoard.getBoardArray();
+            int len = colors.length;
+            for (int i = 0; i < len; i++) {
+                byte color = colors[i];
+                if (color == GoBoard.WHITE)
+                    newColors[i] = GoBoard.BLACK;
+                else if (color == GoBoard.BLACK)
+                    newColors[i] = GoBoard.WHITE;
+            }
+            board = newBoard;
+        }
+        board.exportLrf(writer);
+
+        // Nodes
+        if (game.getBaseNode().nextNodes.size() > 0) {
+            writer.write(true);
+
+            // Write tree bounds
+            _lrf_bounds = _getTreeBounds();
+            _lrf_bits = _getRequiredBits(_lrf_bounds);
+            if (_encoding != ENCODING_FIXED) {
+                writer.write(_BOUNDS_ESCAPE, 9);
+                writer.write(_encoding, 4);
+            }
+            writer.write(GoBoard.encodeCoords(_lrf_bounds.left, _lrf_bounds.top, game.board.getSize()), 9);
+            writer.write(GoBoard.encodeCoords(_lrf_bounds.right, _lrf_bounds.bottom, game.board.getSize()), 9);
+            _loop_writer = writer;
+            _loop_game = game;
+            _lastCommand = COMMAND_END_NODE;
+            if (_encoding == ENCODING_ARITHMETIC) {
+                _initModels();
+                _encoder = new RangeEncoder(writer);
+            }
+
+            // Call the recursive function from another thread to have a larger stack size
+            // (Android stack size is limited to 8KB, which throws a StackOverflowError on large trees).
+            Thread thread = new Thread(new ThreadGroup("ANDROIDSUCKS"), save_loop, "LrfParser", 256 * 1024);
+            thread.start();
+            try {
+                thread.join();
+            }
+            catch (InterruptedException ignored) {
+            }
+            if (_loop_exception != null)
+                throw _loop_exception;
+            if (_encoder != null) {
+                _encoder.finish();
+                _encoder = null;
+            }
+        }
+        else {
+            writer.write(false);
+        }
+
+        // Extra data
+        if (_game.info.hasTag(GAMEINFO_TAG_LEVEL)) {
+            writer.write(3, 4);
+            writer.write(Integer.parseInt(_game.info.getTag(GAMEINFO_TAG_LEVEL)), 8);
+        }
+
+        writer.flush();
+    }
+
+
+    /**
+     * Recursive function to convert the current game tree in LRF format.
+     */
+    private void _save_loop(GameNode move) throws IOException {
+        int moveCount = move.nextNodes.size();
+
+        // In LRF format, we assume that black plays first
+        if (move.color != GoBoard.EMPTY) {
+            _writeCommand(COMMAND_PLAY_MOVE);
+            _writeMove(move);
+
+            if (moveCount == 0) {
+                _writeCommand(COMMAND_SET_RESULT);
+                _writeValue((move.value < 0) ? 0 : move.value);
+                _writeCommand(COMMAND_END_NODE);
+            }
+        }
+
+        int count = 0;
+        for (GameNode nextMove : move.nextNodes) {
+            // Create new branches for all nodes except the last one
+            if (count < moveCount - 1)
+                _writeCommand(COMMAND_NEW_NODE);
+
+            _save_loop(nextMove);
+            count++;
+        }
+    }
+
+
+    /**
+     * Writes a command : bit 1 for COMMAND_PLAY_MOVE, or bit 0 followed by the 2 bits of the command.
+     */
+    private void _writeCommand(int command) throws IOException {
+        if (_encoder != null) {
+            _encoder.encodeBit(_probsCommand[_lastCommand], 0, (command == COMMAND_PLAY_MOVE) ? 1 : 0);
+            if (command != COMMAND_PLAY_MOVE)
+                _encoder.encodeBitTree(_probsCommand[_lastCommand], 2, command);
+        }
+        else if (command == COMMAND_PLAY_MOVE) {
+            _loop_writer.write(true);
+        }
+        else {
+            _loop_writer.write(false);
+            _loop_writer.write(command, 2);
+        }
+        _lastCommand = command;
+    }
+
+    private int _readCommand() throws IOException {
+        int command;
+        if (_decoder != null) {
+            if (_decoder.decodeBit(_probsCommand[_lastCommand], 0) == 1)
+                command = COMMAND_PLAY_MOVE;
+            else
+                command = _decoder.decodeBitTree(_probsCommand[_lastCommand], 2);
+        }
+        else {
+            command = _reader.read() ? COMMAND_PLAY_MOVE : (int) _reader.read(2);
+        }
+        _lastCommand = command;
+        return command;
+    }
+
+    /**
+     * Writes the coordinates of a move, relatively to the tree bounds. A pass is written as the
+     * intersection following the last one of the bounds in ENCODING_FIXED.
+     */
+    private void _writeMove(GameNode move) throws IOException {
+        final boolean pass = move.x < 0;
+        final int width = _lrf_bounds.right - _lrf_bounds.left + 1;
+        if (_encoder == null) {
+            _loop_writer.write(pass ? _getBoundsArea(_lrf_bounds)
+                    : GoBoard.encodeCoords(move.x - _lrf_bounds.left, move.y - _lrf_bounds.top, width), _lrf_bits);
+            return;
+        }
+
+        final GameNode parent = move.parentNode;
+        _encoder.encodeBit(_probsPass, (parent.x < 0) ? 1 : 0, pass ? 1 : 0);
+        if (pass)
+            return;
+
+        final int context = _getDistanceContext(parent);
+        for (int i = 0; i < _ANCHOR_COUNT; i++) {
+            final GameNode anchor = _getAnchor(parent, i);
+            if (anchor == null)
+                continue;
+            final int distance = _getDistance(move, anchor);
+            final boolean near = distance >= 1 && distance <= _NEAR_DISTANCE;
+            _encoder.encodeBit(_probsNear[i], context, near ? 1 : 0);
+            if (near) {
+                _encoder.encodeBitTree(_probsDistance[i][context], _DISTANCE_BITS, distance - 1);
+                final int ringSize = _getRing(anchor, distance, _ring);
+                final int target = GoBoard.encodeCoords(move.x, move.y, _RING_STRIDE);
+                int index = 0;
+                while (index < ringSize && _ring[index] != target)
+                    index++;
+                _encoder.encodeBitTree(_probsRing[i][distance], _getRingBits(distance), index);
+                return;
+            }
+        }
+        _encoder.encodeBitTree(_probsFarPos, _lrf_bits,
+                GoBoard.encodeCoords(move.x - _lrf_bounds.left, move.y - _lrf_bounds.top, width));
+    }
+
+    /**
+     * Reads the coordinates of a move played after the specified node, relatively to the tree bounds.
+     * Returns -1 if the move is a pass.
+     */
+    private int _readMove(GameNode parent) throws IOException {
+        final int width = _lrf_bounds.right - _lrf_bounds.left + 1;
+        if (_decoder == null) {
+            final int intersection = (int) _reader.read(_lrf_bits);
+            if (intersection == _getBoundsArea(_lrf_bounds))
+                return -1;
+            else if (intersection > _getBoundsArea(_lrf_bounds))
+                throw new IOException("Invalid LRF move : " + intersection);
+            return intersection;
+        }
+
+        if (_decoder.decodeBit(_probsPass, (parent.x < 0) ? 1 : 0) == 1)
+            return -1;
+
+        final int context = _getDistanceContext(parent);
+        for (int i = 0; i < _ANCHOR_COUNT; i++) {
+            final GameNode anchor = _getAnchor(parent, i);
+            if (anchor == null || _decoder.decodeBit(_probsNear[i], context) == 0)
+                continue;
+            final int distance = _decoder.decodeBitTree(_probsDistance[i][context], _DISTANCE_BITS) + 1;
+            final int index = _decoder.decodeBitTree(_probsRing[i][distance], _getRingBits(distance));
+            if (index >= _getRing(anchor, distance, _ring))
+                throw new IOException("Invalid LRF move : " + distance + "/" + index);
+            return GoBoard.encodeCoords(_ring[index] % _RING_STRIDE - _lrf_bounds.left,
+                    _ring[index] / _RING_STRIDE - _lrf_bounds.top, width);
+        }
+
+        final int intersection = _decoder.decodeBitTree(_probsFarPos, _lrf_bits);
+        if (intersection >= _getBoundsArea(_lrf_bounds))
+            throw new IOException("Invalid LRF move : " + intersection);
+        return intersection;
+    }
+
+    private void _writeValue(int value) throws IOException {
+        if (_encoder != null)
+            _encoder.encodeBitTree(_probsValue, 7, value);
+        else
+            _loop_writer.write(value, 7);
+    }
+
+    private int _readValue() throws IOException {
+        return (_decoder != null) ? _decoder.decodeBitTree(_probsValue, 7) : (int) _reader.read(7);
+    }
+
+    /**
+     * Returns a previous move from which the position of a move played after the specified node can
+     * be coded, or null if there is no such move. Anchor 0 is the last move (or the one before it if
+     * the last move is a pass), anchor 1 is the last move of the same player.
+     */
+    private static GameNode _getAnchor(GameNode parent, int anchor) {
+        if (parent.color == GoBoard.EMPTY)
+            return null;
+        final GameNode grandParent = parent.parentNode;
+        if (anchor == 0 && parent.x >= 0)
+            return parent;
+        if (anchor == 0 || parent.x >= 0)
+            return (grandParent.x >= 0) ? grandParent : null;
+        return null;
+    }
+
+    /**
+     * Returns the context of the distance model for a move played after the specified node :
+     * 0 if the previous move was a pass, 1 if it had no anchor, or 2 and more according to the
+     * distance at which the previous move was played from its own anchor.
+     */
+    private static int _getDistanceContext(GameNode parent) {
+        if (parent.x < 0)
+            return 0;
+        final GameNode anchor = _getAnchor(parent.parentNode, 0);
+        if (anchor == null)
+            return 1;
+        return 2 + Math.min(Math.max(_getDistance(parent, anchor) - 1, 0), _DISTANCE_CONTEXTS - 3);
+    }
+
+    private static int _getDistance(GameNode move, GameNode anchor) {
+        return Math.max(Math.abs(move.x - anchor.x), Math.abs(move.y - anchor.y));
+    }
+
+    /**
+     * Fills the specified array with the intersections of the tree bounds which are at the specified
+     * distance from the anchor, and returns their count.
+     */
+    private int _getRing(GameNode anchor, int distance, int[] ring) {
+        int count = 0;
+        for (int y = anchor.y - distance; y <= anchor.y + distance; y++) {
+            if (y < _lrf_bounds.top || y > _lrf_bounds.bottom)
+                continue;
+            final boolean edge = (y == anchor.y - distance || y == anchor.y + distance);
+            for (int x = anchor.x - distance; x <= anchor.x + distance; x += edge ? 1 : 2 * distance) {
+                if (x >= _lrf_bounds.left && x <= _lrf_bounds.right)
+                    ring[count++] = GoBoard.encodeCoords(x, y, _RING_STRIDE);
+            }
+        }
+        return count;
+    }
+
+    private static int _getRingBits(int distance) {
+        int bits = 0;
+        for (int size = 8 * distance - 1; size > 0; size >>= 1)
+            bits++;
+        return bits;
+    }
+
+    private static int _getBoundsArea(Rect bounds) {
+        return (bounds.bottom - bounds.top + 1) * (bounds.right - bounds.left + 1);
+    }
+
+    private void _initModels() {
+        _probsCommand = new int[4][4];
+        for (int[] probs : _probsCommand)
+            RangeEncoder.initModel(probs);
+        _probsNear = new int[_ANCHOR_COUNT][_DISTANCE_CONTEXTS];
+        _probsDistance = new int[_ANCHOR_COUNT][_DISTANCE_CONTEXTS][1 << _DISTANCE_BITS];
+        _probsRing = new int[_ANCHOR_COUNT][_NEAR_DISTANCE + 1][];
+        for (int i = 0; i < _ANCHOR_COUNT; i++) {
+            RangeEncoder.initModel(_probsNear[i]);
+            for (int[] probs : _probsDistance[i])
+                RangeEncoder.initModel(probs);
+            for (int distance = 0; distance <= _NEAR_DISTANCE; distance++) {
+                _probsRing[i][distance] = new int[1 << _getRingBits(distance)];
+                RangeEncoder.initModel(_probsRing[i][distance]);
+            }
+        }
+        _probsPass = new int[2];
+        _probsFarPos = new int[1 << _lrf_bits];
+        _probsValue = new int[1 << 7];
+        _ring = new int[8 * _NEAR_DISTANCE];
+        RangeEncoder.initModel(_probsPass);
+        RangeEncoder.initModel(_probsFarPos);
+        RangeEncoder.initModel(_probsValue);
+    }
+
+
+    /**
+     * Obtient le nombre maximum de bits qu'il faut pour stocker les coordonnées des intersections sous forme
+     * de nombre allant de 0 à n, où n est le nombre d'intersections comprises dans le rectangle.
+     */
+    private int _getRequiredBits(Rect bounds) {
+        int area = (bounds.bottom - bounds.top + 1) * (bounds.right - bounds.left + 1) - 1;
+        int bits = 0;
+        while (area > 0) {
+            area >>= 1;
+            bits++;
+        }
+        return bits;
+    }
+
+
+    /**
+     * Returns the smallest rectangle containing all the moves of the tree. With ENCODING_FIXED, passes
+     * are written as the intersection following the rectangle, so it is grown if needed to make this
+     * value fit in the bits used for the other intersections.
+     */
+    private Rect _getTreeBounds() throws IOException {
+        final int size = _game.board.getSize();
+        final Rect bounds = new Rect(size, size, -1, -1);
+        boolean hasPass = false;
+
+        GameNode move;
+        Stack<GameNode> stack = new Stack<GameNode>();
+        stack.push(_game.getBaseNode());
+
+        while (!stack.empty()) {
+            move = stack.pop();
+            if (move.x >= 0 && move.y >= 0) {
+                if (bounds.left > move.x) bounds.left = move.x;
+                if (bounds.top > move.y) bounds.top = move.y;
+                if (bounds.right < move.x) bounds.right = move.x;
+                if (bounds.bottom < move.y) bounds.bottom = move.y;
+            }
+            else if (move.color != GoBoard.EMPTY) {
+                hasPass = true;
+            }
+
+            for (GameNode nextMove : move.nextNodes)
+                stack.push(nextMove);
+        }
+
+        if (bounds.right < 0) {
+            bounds.left = bounds.top = 0;
+            bounds.right = bounds.bottom = 0;
+        }
+        if (hasPass && _encoding == ENCODING_FIXED) {
+            int area;
+            while (((area = _getBoundsArea(bounds)) & (area - 1)) == 0) {
+                if (bounds.right < size - 1)
+                    bounds.right++;
+                else if (bounds.bottom < size - 1)
+                    bounds.bottom++;
+                else if (bounds.left > 0)
+                    bounds.left--;
+                else if (bounds.top > 0)
+                    bounds.top--;
+                else
+                    throw new IOException("Passes can't be saved on a board of size " + size);
+            }
+        }
+        return bounds;
+    }
+}
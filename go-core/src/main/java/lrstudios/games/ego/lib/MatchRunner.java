@@ -0,0 +1,644 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.lib;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Plays a match between two engine configurations without any user interface, to measure
+ * whether a change of settings (time, tree size, threads, ...) makes an engine stronger.
+ * <p/>
+ * The engines alternate colors : the first configuration plays black in the even games.
+ * Several games can be played at once (each game uses its own engine instances). A game ends
+ * with a resignation, two passes, a loss on time or an engine failure. After two passes, the
+ * game is scored with final_score if both engines agree, otherwise with the dead stones
+ * given by the black engine and {@link GoGame#computeTerritories()}.
+ * <p/>
+ * It can be started from the command line, see {@link #main(String[])}.
+ */
+public class MatchRunner {
+    private final EngineFactory[] _factories = new EngineFactory[2];
+    private final String[] _names = new String[2];
+    private int _gameCount = 10;
+    private int _parallelGames = 1;
+    private int _boardSize = 19;
+    private double _komi = 7.5;
+    private int _handicap;
+    private int _maxMoves;
+    private TimeControl _timeControl;
+    private File _sgfDirectory;
+    private volatile MatchListener _listener;
+
+
+    /**
+     * Creates the engines used by the match. A new engine is created for each game.
+     */
+    public interface EngineFactory {
+        GtpEngine createEngine() throws IOException;
+    }
+
+    /**
+     * Receives the result of each game (from the thread which played it).
+     */
+    public interface MatchListener {
+        void onGameFinished(GameRecord game);
+    }
+
+
+    /**
+     * @param nameA Name of the first configuration, used as the player name in the SGF files.
+     * @param nameB Name of the second configuration.
+     */
+    public MatchRunner(String nameA, EngineFactory engineA, String nameB, EngineFactory engineB) {
+        _names[0] = nameA;
+        _names[1] = nameB;
+        _factories[0] = engineA;
+        _factories[1] = engineB;
+    }
+
+    /**
+     * Runs a match between two GTP engines started as processes. Options :
+     * <pre>
+     * --a "COMMAND"       Command line of the first engine (required). Arguments containing
+     *                     spaces can be quoted with ' or ".
+     * --b "COMMAND"       Command line of the second engine (required).
+     * --games=N           Number of games (10 by default).
+     * --parallel=N        Number of games played at once (1 by default).
+     * --size=N            Board size (19 by default).
+     * --komi=K            Komi (7.5 by default).
+     * --handicap=N        Handicap of black (none by default).
+     * --time=MAIN[:BYO:STONES]  Time settings in seconds, with canadian byo-yomi.
+     * --max-moves=N       Games are scored after this number of moves.
+     * --sgf=DIRECTORY     Saves the games in this directory.
+     * </pre>
+     */
+    public static void main(String[] args) throws Exception {
+        String[] commands = new String[2];
+        ArrayList<String> options = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--a") && i + 1 < args.length)
+                commands[0] = args[++i];
+            else if (args[i].equals("--b") && i + 1 < args.length)
+                commands[1] = args[++i];
+            else
+                options.add(args[i]);
+        }
+        if (commands[0] == null || commands[1] == null) {
+            System.err.println("Usage : MatchRunner --a \"ENGINE A\" --b \"ENGINE B\" [options]");
+            System.exit(2);
+        }
+
+        MatchRunner runner = new MatchRunner(
+                "A", new ProcessFactory(splitCommand(commands[0])),
+                "B", new ProcessFactory(splitCommand(commands[1])));
+        for (String option : options) {
+            int pos = option.indexOf('=');
+            String name = (pos < 0) ? option : option.substring(0, pos);
+            String value = (pos < 0) ? "" : option.substring(pos + 1);
+            if (name.equals("--games"))
+                runner.setGameCount(Integer.parseInt(value));
+            else if (name.equals("--parallel"))
+                runner.setParallelGames(Integer.parseInt(value));
+            else if (name.equals("--size"))
+                runner.setBoardSize(Integer.parseInt(value));
+            else if (name.equals("--komi"))
+                runner.setKomi(Double.parseDouble(value));
+            else if (name.equals("--handicap"))
+                runner.setHandicap(Integer.parseInt(value));
+            else if (name.equals("--time"))
+                runner.setTimeControl(TimeControl.parse(value));
+            else if (name.equals("--max-moves"))
+                runner.setMaxMoves(Integer.parseInt(value));
+            else if (name.equals("--sgf"))
+                runner.setSgfDirectory(new File(value));
+            else {
+                System.err.println("Unknown option : " + option);
+                System.exit(2);
+            }
+        }
+
+        runner.setListener(new MatchListener() {
+            @Override
+            public void onGameFinished(GameRecord game) {
+                System.out.println(game);
+            }
+        });
+        System.out.println();
+        System.out.print(runner.formatResults(runner.run()));
+        System.exit(0);
+    }
+
+
+    /**
+     * Splits a command line into arguments, separated by whitespace. Parts of an argument can be
+     * quoted with ' or " to keep their whitespace.
+     */
+    public static String[] splitCommand(String command) {
+        ArrayList<String> args = new ArrayList<>();
+        StringBuilder arg = new StringBuilder();
+        boolean hasArg = false;
+        char quote = 0;
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (quote != 0) {
+                if (c == quote)
+                    quote = 0;
+                else
+                    arg.append(c);
+            }
+            else if (c == '"' || c == '\'') {
+                quote = c;
+                hasArg = true;
+            }
+            else if (Character.isWhitespace(c)) {
+                if (hasArg) {
+                    args.add(arg.toString());
+                    arg.setLength(0);
+                    hasArg = false;
+                }
+            }
+            else {
+                arg.append(c);
+                hasArg = true;
+            }
+        }
+        if (quote != 0)
+            throw new IllegalArgumentException("Unterminated quote in the command : " + command);
+        if (hasArg)
+            args.add(arg.toString());
+        return args.toArray(new String[args.size()]);
+    }
+
+
+    public void setGameCount(int count) {
+        _gameCount = count;
+    }
+
+    /**
+     * Sets the number of games played at once. Each running game uses two engines, so this
+     * should take into account the number of cores (and threads) used by each engine.
+     */
+    public void setParallelGames(int count) {
+        _parallelGames = Math.max(1, count);
+    }
+
+    public void setBoardSize(int size) {
+        _boardSize = size;
+    }
+
+    public void setKomi(double komi) {
+        _komi = komi;
+    }
+
+    public void setHandicap(int handicap) {
+        _handicap = handicap;
+    }
+
+    /**
+     * Sets the number of moves after which a game is stopped and scored. By default (0), this is
+     * three times the number of intersections, so engines which never pass can't block the match.
+     */
+    public void setMaxMoves(int maxMoves) {
+        _maxMoves = maxMoves;
+    }
+
+    /**
+     * Sets the clock of both players (null to play without time limit).
+     */
+    public void setTimeControl(TimeControl timeControl) {
+        _timeControl = timeControl;
+    }
+
+    /**
+     * Sets the directory where the games are saved as SGF files (null to not save them).
+     */
+    public void setSgfDirectory(File directory) {
+        _sgfDirectory = directory;
+    }
+
+    public void setListener(MatchListener listener) {
+        _listener = listener;
+    }
+
+
+    /**
+     * Plays all games and returns their records, in the order of the games.
+     */
+    public List<GameRecord> run() throws InterruptedException {
+        if (_sgfDirectory != null && !_sgfDirectory.isDirectory() && !_sgfDirectory.mkdirs())
+            System.err.println("Cannot create the directory " + _sgfDirectory);
+
+        ExecutorService executor = Executors.newFixedThreadPool(_parallelGames);
+        try {
+            ArrayList<Future<GameRecord>> futures = new ArrayList<>(_gameCount);
+            for (int i = 0; i < _gameCount; i++) {
+                final int index = i;
+                futures.add(executor.submit(new Callable<GameRecord>() {
+                    @Override
+                    public GameRecord call() {
+                        GameRecord record = playGame(index);
+                        MatchListener listener = _listener;
+                        if (listener != null)
+                            listener.onGameFinished(record);
+                        return record;
+                    }
+                }));
+            }
+
+            ArrayList<GameRecord> records = new ArrayList<>(_gameCount);
+            for (Future<GameRecord> future : futures) {
+                try {
+                    records.add(future.get());
+                }
+                catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+            return records;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays a single game. The first configuration plays black if the index is even.
+     */
+    public GameRecord playGame(int index) {
+        int blackIndex = index % 2;
+        GameRecord record = new GameRecord(index, _names[blackIndex], _names[1 - blackIndex]);
+        GtpEngine[] engines = new GtpEngine[2]; // black, white
+        GoGame game = null;
+        try {
+            for (int i = 0; i < 2; i++) {
+                engines[i] = _factories[i == 0 ? blackIndex : 1 - blackIndex].createEngine();
+                if (!engines[i].init(new Properties()))
+                    throw new IOException("Cannot initialize the engine " + (i == 0 ? record.blackName : record.whiteName));
+            }
+            game = _playGame(engines, record);
+        }
+        catch (Exception e) {
+            // Engines which don't respond as expected can make GtpEngine fail with any exception
+            record.error = e.toString();
+            record.result = new GoGameResult(GoGameResult.VOID, 0);
+        }
+        finally {
+            for (GtpEngine engine : engines) {
+                if (engine != null)
+                    engine.release();
+            }
+        }
+
+        // Saved once the result is recorded, so an I/O error doesn't void a finished game
+        if (game != null && _sgfDirectory != null) {
+            try {
+                record.sgfFile = _saveSgf(game, record.index);
+            }
+            catch (IOException e) {
+                record.sgfError = e.toString();
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Formats the results of the match as a text table, from the point of view of each
+     * configuration.
+     */
+    public String formatResults(List<GameRecord> records) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%-12s %6s %6s %7s %16s %8s %8s %10s %10s%n",
+                "Engine", "Games", "Wins", "Win %", "95% interval", "B wins", "W wins", "s/move", "Lost/time"));
+        for (int i = 0; i < 2; i++) {
+            String name = _names[i];
+            int games = 0;
+            double wins = 0;
+            int blackWins = 0;
+            int whiteWins = 0;
+            int timeLosses = 0;
+            long thinkTime = 0;
+            int moves = 0;
+            for (GameRecord record : records) {
+                if (record.result == null || record.result.getWinner() == GoGameResult.VOID)
+                    continue;
+                boolean isBlack = record.blackName.equals(name);
+                char winner = record.result.getWinner();
+                games++;
+                if (winner == GoGameResult.JIGO) {
+                    wins += 0.5;
+                }
+                else if ((winner == GoGameResult.BLACK) == isBlack) {
+                    wins++;
+                    if (isBlack)
+                        blackWins++;
+                    else
+                        whiteWins++;
+                }
+                else if (record.result.getScore() == GoGameResult.TIME) {
+                    timeLosses++;
+                }
+                thinkTime += isBlack ? record.blackThinkTime : record.whiteThinkTime;
+                moves += isBlack ? (record.moveCount + 1) / 2 : record.moveCount / 2;
+            }
+
+            // Normal approximation of the binomial distribution
+            double rate = (games == 0) ? 0 : wins / games;
+            double margin = (games == 0) ? 0 : 1.96 * Math.sqrt(rate * (1 - rate) / games);
+            sb.append(String.format(Locale.US, "%-12s %6d %6s %6.1f%% %16s %8d %8d %10.2f %10d%n",
+                    name, games, _formatWins(wins), rate * 100,
+                    String.format(Locale.US, "%.1f%% - %.1f%%", Math.max(0, rate - margin) * 100, Math.min(1, rate + margin) * 100),
+                    blackWins, whiteWins, (moves == 0) ? 0 : thinkTime / 1e9 / moves, timeLosses));
+        }
+
+        int errors = 0;
+        int disputed = 0;
+        int sgfErrors = 0;
+        for (GameRecord record : records) {
+            if (record.error != null)
+                errors++;
+            if (record.disputed)
+                disputed++;
+            if (record.sgfError != null)
+                sgfErrors++;
+        }
+        sb.append(String.format(Locale.US, "%d games, %d failed, %d scored by the board (engines disagreed)%n",
+                records.size(), errors, disputed));
+        if (sgfErrors > 0)
+            sb.append(String.format(Locale.US, "%d SGF files could not be saved%n", sgfErrors));
+        return sb.toString();
+    }
+
+
+    /**
+     * Plays the game until it has a result, and returns it.
+     */
+    private GoGame _playGame(GtpEngine[] engines, GameRecord record) throws IOException {
+        // Each engine plays against the other, so the "player" of the black engine is white
+        engines[0].newGame(_boardSize, GoBoard.WHITE, _komi, _handicap);
+        engines[1].newGame(_boardSize, GoBoard.BLACK, _komi, _handicap);
+        GoGame game = engines[0].getGame();
+        int maxMoves = (_maxMoves > 0) ? _maxMoves : _boardSize * _boardSize * 3;
+        game.info.blackName = record.blackName;
+        game.info.whiteName = record.whiteName;
+
+        Clock[] clocks = new Clock[2];
+        if (_timeControl != null) {
+            for (int i = 0; i < 2; i++) {
+                clocks[i] = new Clock(_timeControl);
+                engines[i].sendCommand(_timeControl.getGtpCommand());
+            }
+        }
+
+        while (record.result == null) {
+            byte color = game.getNextPlayer();
+            int player = (color == GoBoard.BLACK) ? 0 : 1;
+            GtpEngine engine = engines[player];
+            if (clocks[player] != null)
+                engine.sendCommand(clocks[player].getTimeLeftCommand(color));
+
+            long startTime = System.nanoTime();
+            Coords move = engine.genMove();
+            long thinkTime = System.nanoTime() - startTime;
+            if (player == 0)
+                record.blackThinkTime += thinkTime;
+            else
+                record.whiteThinkTime += thinkTime;
+
+            char opponent = (color == GoBoard.BLACK) ? GoGameResult.WHITE : GoGameResult.BLACK;
+            if (move == null) {
+                record.error = "genmove failed (" + (player == 0 ? record.blackName : record.whiteName) + ")";
+                record.result = new GoGameResult(opponent, GoGameResult.FORFEIT);
+            }
+            else if (clocks[player] != null && !clocks[player].consume(thinkTime / 1000000)) {
+                record.result = new GoGameResult(opponent, GoGameResult.TIME);
+            }
+            else if (move.x == -3) {
+                record.result = new GoGameResult(opponent, GoGameResult.RESIGN);
+            }
+            else {
+                record.moveCount++;
+                if (!engines[1 - player].playMove(move, color)) {
+                    // Either the move is illegal, or the opponent is not responding anymore
+                    if (engines[1 - player].sendCommand("protocol_version") == null) {
+                        record.error = "play failed (" + (player == 0 ? record.whiteName : record.blackName) + ")";
+                        record.result = new GoGameResult(color == GoBoard.BLACK ? GoGameResult.BLACK : GoGameResult.WHITE, GoGameResult.FORFEIT);
+                    }
+                    else {
+                        record.error = "illegal move (" + (player == 0 ? record.blackName : record.whiteName) + ")";
+                        record.result = new GoGameResult(opponent, GoGameResult.FORFEIT);
+                    }
+                }
+                else if (game.hasTwoPasses() || record.moveCount >= maxMoves) {
+                    record.result = _score(engines, record);
+                }
+            }
+        }
+
+        game.info.result = record.result;
+        return game;
+    }
+
+    /**
+     * Returns the score given by the engines if they agree, otherwise computes it on the board.
+     */
+    private GoGameResult _score(GtpEngine[] engines, GameRecord record) {
+        GoGameResult blackScore = engines[0].computeFinalScore();
+        GoGameResult whiteScore = engines[1].computeFinalScore();
+        if (blackScore != null && whiteScore != null && blackScore.getWinner() == whiteScore.getWinner()
+                && blackScore.getWinner() != GoGameResult.UNKNOWN_WINNER)
+            return blackScore;
+
+        record.disputed = true;
+        GoGame game = engines[0].getGame();
+        engines[0].askFinalStatus();
+        GoGame.Result territories = game.computeTerritories();
+        double score = territories.blackTerritory + territories.blackPrisoners
+                - territories.whiteTerritory - territories.whitePrisoners - territories.komi;
+        if (score == 0)
+            return new GoGameResult(GoGameResult.JIGO, 0);
+        return new GoGameResult(score > 0 ? GoGameResult.BLACK : GoGameResult.WHITE, Math.abs(score));
+    }
+
+    private File _saveSgf(GoGame game, int index) throws IOException {
+        File file = new File(_sgfDirectory, String.format(Locale.US, "game_%04d.sgf", index + 1));
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            new SgfParser().save(game, stream);
+        }
+        finally {
+            Utils.closeObject(stream);
+        }
+        return file;
+    }
+
+    private static String _formatWins(double wins) {
+        return (wins == (int) wins) ? String.valueOf((int) wins) : String.valueOf(wins);
+    }
+
+
+    /**
+     * The result of a game of the match.
+     */
+    public static final class GameRecord {
+        public final int index;
+        public final String blackName;
+        public final String whiteName;
+        public GoGameResult result;
+        public int moveCount;
+        /**
+         * Total time spent in genmove by each player, in nanoseconds.
+         */
+        public long blackThinkTime;
+        public long whiteThinkTime;
+        /**
+         * True if the engines did not agree on the score, which was then computed on the board.
+         */
+        public boolean disputed;
+        /**
+         * The reason of a failure (engine crash, illegal move, ...), or null.
+         */
+        public String error;
+        public File sgfFile;
+        /**
+         * The reason why the SGF file could not be saved, or null. The result is still valid.
+         */
+        public String sgfError;
+
+
+        GameRecord(int index, String blackName, String whiteName) {
+            this.index = index;
+            this.blackName = blackName;
+            this.whiteName = whiteName;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Game %d : %s (B) - %s (W) : %s, %d moves%s%s%s",
+                    index + 1, blackName, whiteName, result, moveCount,
+                    disputed ? ", disputed score" : "", (error != null) ? ", " + error : "",
+                    (sgfError != null) ? ", SGF not saved (" + sgfError + ")" : "");
+        }
+    }
+
+    /**
+     * Time settings with canadian byo-yomi (a number of stones must be played in each period),
+     * as defined by the GTP command "time_settings". Times are in milliseconds.
+     */
+    public static final class TimeControl {
+        public final long mainTime;
+        public final long byoYomiTime;
+        public final int byoYomiStones;
+
+
+        public TimeControl(long mainTime, long byoYomiTime, int byoYomiStones) {
+            this.mainTime = mainTime;
+            this.byoYomiTime = byoYomiTime;
+            this.byoYomiStones = byoYomiStones;
+        }
+
+        /**
+         * Parses time settings in seconds, such as "600" (sudden death) or "300:30:5".
+         */
+        public static TimeControl parse(String value) {
+            String[] parts = value.split(":");
+            long main = Math.round(Double.parseDouble(parts[0]) * 1000);
+            if (parts.length < 3)
+                return new TimeControl(main, 0, 0);
+            return new TimeControl(main, Math.round(Double.parseDouble(parts[1]) * 1000), Integer.parseInt(parts[2]));
+        }
+
+        String getGtpCommand() {
+            return "time_settings " + mainTime / 1000 + " " + byoYomiTime / 1000 + " " + byoYomiStones;
+        }
+    }
+
+    /**
+     * The clock of a player.
+     */
+    private static final class Clock {
+        private final TimeControl _settings;
+        private long _remaining;
+        private int _stones;
+        private boolean _byoYomi;
+
+
+        Clock(TimeControl settings) {
+            _settings = settings;
+            _remaining = settings.mainTime;
+        }
+
+        String getTimeLeftCommand(byte color) {
+            return "time_left " + (color == GoBoard.BLACK ? "black " : "white ")
+                    + Math.max(0, _remaining / 1000) + " " + (_byoYomi ? _stones : 0);
+        }
+
+        /**
+         * Removes the time spent on a move. Returns false if the player has lost on time.
+         */
+        boolean consume(long millis) {
+            _remaining -= millis;
+            if (!_byoYomi && _remaining < 0) {
+                if (_settings.byoYomiStones <= 0)
+                    return false;
+                _byoYomi = true;
+                _remaining += _settings.byoYomiTime;
+                _stones = _settings.byoYomiStones;
+            }
+            if (_remaining < 0)
+                return false;
+
+            if (_byoYomi && --_stones == 0) {
+                _remaining = _settings.byoYomiTime;
+                _stones = _settings.byoYomiStones;
+            }
+            return true;
+        }
+    }
+
+
+    /**
+     * Starts each engine as a new process.
+     */
+    private static final class ProcessFactory implements EngineFactory {
+        private final String[] _command;
+
+        ProcessFactory(String[] command) {
+            _command = command;
+        }
+
+        @Override
+        public GtpEngine createEngine() throws IOException {
+            return GtpClientEngine.start(_command);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.lib;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * A read-only book of opening moves, mapped in memory from a file built by {@link Builder}
+ * (from SGF collections, such as the games saved by {@link MatchRunner} with an engine playing
+ * against itself).
+ * <p/>
+ * The positions are stored under their canonical hash (see {@link SymmetryHash}), so a move
+ * played in any corner finds the moves played in the other ones. The moves are stored
+ * with the number of games they were played in, which is used as the weight of a random choice.
+ * <p/>
+ * File format (big-endian) : a header (magic, maximum depth, number of positions, number of moves),
+ * the positions sorted by hash (hash, index of the first move, number of moves), then the moves
+ * (x, y, weight) on the canonical board.
+ */
+public final class OpeningBook {
+    private static final int _FILE_MAGIC = 0x454f4231; // "EOB1"
+    private static final int _HEADER_SIZE = 16;
+    private static final int _POSITION_SIZE = 16;
+    private static final int _MOVE_SIZE = 6;
+
+    private final ByteBuffer _buffer;
+    private final int _maxDepth;
+    private final int _positionCount;
+    private final int _movesOffset;
+    private final Random _random = new Random();
+
+
+    private OpeningBook(ByteBuffer buffer) throws IOException {
+        _buffer = buffer;
+        if (buffer.capacity() < _HEADER_SIZE || buffer.getInt(0) != _FILE_MAGIC)
+            throw new IOException("This is not an opening book");
+
+        _maxDepth = buffer.getInt(4);
+        _positionCount = buffer.getInt(8);
+        int moveCount = buffer.getInt(12);
+        _movesOffset = _HEADER_SIZE + _positionCount * _POSITION_SIZE;
+        if (_positionCount < 0 || moveCount < 0 || buffer.capacity() < _movesOffset + (long) moveCount * _MOVE_SIZE)
+            throw new IOException("The opening book is truncated");
+    }
+
+    /**
+     * Maps the specified book file in memory. The file must not be modified while it is used.
+     *
+     * @throws IOException The file could not be read, or is not a valid book.
+     */
+    public static OpeningBook open(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            // The mapping stays valid after the file is closed
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        finally {
+            Utils.closeObject(input);
+        }
+    }
+
+    /**
+     * Returns the number of moves of the longest line of the book. There is no need to look for
+     * positions after this move number.
+     */
+    public int getMaxDepth() {
+        return _maxDepth;
+    }
+
+    /**
+     * Returns the number of positions stored in the book.
+     */
+    public int getPositionCount() {
+        return _positionCount;
+    }
+
+    /**
+     * Returns the moves stored for the specified position, on the real board, sorted from the
+     * most played one. An empty list is returned if the position is not in the book.
+     */
+    public List<Move> getMoves(GoBoard board, byte color) {
+        ArrayList<Move> moves = new ArrayList<>();
+        if (board.getSize() > ZobristHash.MAX_SIZE)
+            return moves;
+
+        SymmetryHash hash = board.getSymmetryHash();
+        int[] transforms = new int[SymmetryHash.TRANSFORM_COUNT];
+        int transformCount = hash.getCanonicalTransforms(board.getKoCoords(), color, transforms);
+        int index = _findPosition(hash.getHash(transforms[0], board.getKoCoords(), color));
+        if (index < 0)
+            return moves;
+
+        // All canonical transforms are equivalent, one is chosen at random so the symmetric
+        // moves are all played
+        int transform = transforms[_random.nextInt(transformCount)];
+        int position = _HEADER_SIZE + index * _POSITION_SIZE;
+        int first = _buffer.getInt(position + 8);
+        int count = _buffer.getInt(position + 12);
+        for (int i = first; i < first + count; i++) {
+            int offset = _movesOffset + i * _MOVE_SIZE;
+            Coords coords = new Coords(_buffer.get(offset), _buffer.get(offset + 1));
+            moves.add(new Move(hash.toReal(transform, coords), _buffer.getInt(offset + 2)));
+        }
+        return moves;
+    }
+
+    /**
+     * Chooses one of the moves stored for the specified position, with a probability proportional
+     * to the number of games it was played in.
+     *
+     * @return The move on the real board, or null if the position is not in the book.
+     */
+    public Coords chooseMove(GoBoard board, byte color) {
+        List<Move> moves = getMoves(board, color);
+        long total = 0;
+        for (Move move : moves)
+            total += move.weight;
+        if (total <= 0)
+            return null;
+
+        long value = (long) (_random.nextDouble() * total);
+        for (Move move : moves) {
+            value -= move.weight;
+            if (value < 0)
+                return move.coords;
+        }
+        return moves.get(moves.size() - 1).coords;
+    }
+
+    /**
+     * Sets the seed of the random choice of moves (the moves are different at each session by default).
+     */
+    public void setSeed(long seed) {
+        _random.setSeed(seed);
+    }
+
+
+    private int _findPosition(long hash) {
+        int low = 0;
+        int high = _positionCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long key = _buffer.getLong(_HEADER_SIZE + mid * _POSITION_SIZE);
+            if (key < hash)
+                low = mid + 1;
+            else if (key > hash)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+
+    /**
+     * A move stored in the book.
+     */
+    public static final class Move {
+        public final Coords coords;
+
+        /**
+         * The number of games the move was played in.
+         */
+        public final int weight;
+
+        public Move(Coords coords, int weight) {
+            this.coords = coords;
+            this.weight = weight;
+        }
+    }
+
+
+    /**
+     * Counts the moves played in each position of a set of games, and writes them in a book file.
+     */
+    public static final class Builder {
+        private final int _maxDepth;
+        private final HashMap<Long, HashMap<Integer, int[]>> _positions = new HashMap<>();
+        private int _gameCount;
+
+
+        /**
+         * @param maxDepth The number of moves stored from the beginning of each game.
+         */
+        public Builder(int maxDepth) {
+            _maxDepth = maxDepth;
+        }
+
+        /**
+         * Adds the first moves of the main variation of a game. Passes end the opening.
+         */
+        public void addGame(GoGame game) {
+            if (game.board.getSize() > ZobristHash.MAX_SIZE)
+                return;
+
+            game.gotoFirstMove();
+            SymmetryHash hash = game.board.getSymmetryHash();
+            int[] transforms = new int[SymmetryHash.TRANSFORM_COUNT];
+            for (int depth = 0; depth < _maxDepth; depth++) {
+                GameNode node = game.getCurrentNode();
+                if (node.nextNodes.size() == 0)
+                    break;
+                GameNode move = node.nextNodes.get(0);
+                if (move.x < 0 || move.y < 0 || (move.color != GoBoard.BLACK && move.color != GoBoard.WHITE))
+                    break;
+
+                // The move is stored in the symmetry which gives it the smallest index, so the
+                // symmetric moves of a symmetric position are counted together
+                Coords ko = game.board.getKoCoords();
+                int count = hash.getCanonicalTransforms(ko, move.color, transforms);
+                int bestMove = Integer.MAX_VALUE;
+                for (int i = 0; i < count; i++) {
+                    Coords coords = hash.toCanonical(transforms[i], new Coords(move.x, move.y));
+                    bestMove = Math.min(bestMove, coords.y * 256 + coords.x);
+                }
+                _addMove(hash.getHash(transforms[0], ko, move.color), bestMove);
+
+                game.placeMove(move.x, move.y, move.color);
+            }
+            _gameCount++;
+        }
+
+        private void _addMove(long hash, int move) {
+            HashMap<Integer, int[]> moves = _positions.get(hash);
+            if (moves == null) {
+                moves = new HashMap<>();
+                _positions.put(hash, moves);
+            }
+            int[] count = moves.get(move);
+            if (count == null)
+                moves.put(move, new int[]{1});
+            else
+                count[0]++;
+        }
+
+        /**
+         * Returns the number of games added to the book.
+         */
+        public int getGameCount() {
+            return _gameCount;
+        }
+
+        /**
+         * Writes the book file.
+         *
+         * @param minCount The moves played in less games are not written.
+         * @return The number of positions written.
+         */
+        public int write(File file, int minCount) throws IOException {
+            ArrayList<Long> hashes = new ArrayList<>();
+            ArrayList<List<Map.Entry<Integer, int[]>>> positions = new ArrayList<>();
+            int moveCount = 0;
+            Long[] keys = _positions.keySet().toArray(new Long[_positions.size()]);
+            Arrays.sort(keys);
+            for (Long hash : keys) {
+                ArrayList<Map.Entry<Integer, int[]>> moves = new ArrayList<>();
+                for (Map.Entry<Integer, int[]> entry : _positions.get(hash).entrySet()) {
+                    if (entry.getValue()[0] >= minCount)
+                        moves.add(entry);
+                }
+                if (moves.size() == 0)
+                    continue;
+                Collections.sort(moves, new Comparator<Map.Entry<Integer, int[]>>() {
+                    @Override
+                    public int compare(Map.Entry<Integer, int[]> a, Map.Entry<Integer, int[]> b) {
+                        return b.getValue()[0] - a.getValue()[0];
+                    }
+                });
+                hashes.add(hash);
+                positions.add(moves);
+                moveCount += moves.size();
+            }
+
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                output.writeInt(_FILE_MAGIC);
+                output.writeInt(_maxDepth);
+                output.writeInt(hashes.size());
+                output.writeInt(moveCount);
+                int first = 0;
+                for (int i = 0; i < hashes.size(); i++) {
+                    output.writeLong(hashes.get(i));
+                    output.writeInt(first);
+                    output.writeInt(positions.get(i).size());
+                    first += positions.get(i).size();
+                }
+                for (List<Map.Entry<Integer, int[]>> moves : positions) {
+                    for (Map.Entry<Integer, int[]> move : moves) {
+                        output.writeByte(move.getKey() % 256);
+                        output.writeByte(move.getKey() / 256);
+                        output.writeInt(move.getValue()[0]);
+                    }
+                }
+            }
+            finally {
+                Utils.closeObject(output);
+            }
+            return hashes.size();
+        }
+    }
+
+
+    /**
+     * Builds a book file from SGF files (directories are searched recursively).
+     * <pre>
+     * OpeningBook OUTPUT_FILE [--depth=N] [--min-count=N] SGF_FILES_OR_DIRECTORIES...
+     * </pre>
+     * To build a book from the games of an engine, play them with {@link MatchRunner} and its
+     * --sgf option.
+     */
+    public static void main(String[] args) throws IOException {
+        int depth = 20;
+        int minCount = 2;
+        ArrayList<File> files = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--depth="))
+                depth = Integer.parseInt(args[i].substring(8));
+            else if (args[i].startsWith("--min-count="))
+                minCount = Integer.parseInt(args[i].substring(12));
+            else
+                _listSgfFiles(new File(args[i]), files);
+        }
+        if (args.length < 2 || files.size() == 0) {
+            System.err.println("Usage : OpeningBook OUTPUT_FILE [--depth=N] [--min-count=N] SGF_FILES_OR_DIRECTORIES...");
+            System.exit(2);
+        }
+
+        Builder builder = new Builder(depth);
+        for (File file : files) {
+            try {
+                for (GoGame game : SgfParser.parse(file))
+                    builder.addGame(game);
+            }
+            catch (Exception e) {
+                System.err.println("Cannot read " + file + " : " + e);
+            }
+        }
+        int count = builder.write(new File(args[0]), minCount);
+        System.out.println(builder.getGameCount() + " games, " + count + " positions written in " + args[0]);
+    }
+
+    private static void _listSgfFiles(File file, List<File> files) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            Arrays.sort(children);
+            for (File child : children)
+                _listSgfFiles(child, files);
+        }
+        else if (file.getName().toLowerCase().endsWith(".sgf")) {
+            files.add(file);
+        }
+    }
+}
@@ -0,0 +1,851 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.lib;
+
+import lrstudios.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * An index of the positions of a collection of SGF files, stored in a directory, which answers
+ * "in which games did this position occur" in a few milliseconds.
+ * <p/>
+ * Each game is replayed (main variation), and each position is recorded with the game and the
+ * move number : the whole board under its canonical hash (see {@link SymmetryHash}, so rotated
+ * and mirrored positions are found), and the {@link #CORNER_SIZE} x {@link #CORNER_SIZE} region
+ * of each corner when it changes. The records are written in segment files sorted by hash,
+ * which are mapped in memory and searched by binary search.
+ * <p/>
+ * {@link #ingest(File)} reads the SGF files in parallel, and only the new and modified files :
+ * the games of modified and deleted files are removed from the catalog, and their records are
+ * ignored until the segments are merged by {@link #compact()}.
+ * <p/>
+ * Files : "catalog" lists the segments and the indexed files with their game ids, each
+ * "segment-N.idx" contains a header (magic, number of records) and the records (hash, then
+ * game id and move number), all big-endian. This class is thread-safe.
+ */
+public final class PositionIndex {
+    private static final String TAG = "PositionIndex";
+
+    /**
+     * The size of the corner regions which are indexed.
+     */
+    public static final int CORNER_SIZE = 7;
+
+    public static final int
+            TOP_LEFT = 0,
+            TOP_RIGHT = 1,
+            BOTTOM_LEFT = 2,
+            BOTTOM_RIGHT = 3;
+
+    private static final int _CATALOG_MAGIC = 0x45504931; // "EPI1"
+    private static final int _SEGMENT_MAGIC = 0x45505331; // "EPS1"
+    private static final String _CATALOG_FILE = "catalog";
+    private static final int _HEADER_SIZE = 8;
+    private static final int _RECORD_SIZE = 16;
+
+    // Corner hashes are mixed with this key, so they don't match whole board hashes
+    private static final long _CORNER_KEY = 0x636f726e65722121L;
+
+    // Records kept in memory during an ingestion before they are written in a segment (64 MB)
+    private static final int _BUFFER_RECORDS = 1 << 22;
+    // Segments can't be mapped in memory beyond 2 GB
+    private static final int _MAX_SEGMENT_RECORDS = 1 << 26;
+    private static final int _MAX_SEGMENTS = 16;
+
+    private final File _directory;
+    private final HashMap<String, FileEntry> _files = new HashMap<>();
+    private final TreeMap<Integer, FileEntry> _filesById = new TreeMap<>();
+    private final ArrayList<Segment> _segments = new ArrayList<>();
+    private final Object _bufferLock = new Object();
+    private Records _buffer;
+    private int _nextGameId;
+    private int _nextSegmentId;
+    private int _threadCount = Runtime.getRuntime().availableProcessors();
+
+
+    private PositionIndex(File directory) {
+        _directory = directory;
+    }
+
+    /**
+     * Opens the index stored in the specified directory, which is created if needed.
+     *
+     * @throws IOException The index could not be read.
+     */
+    public static PositionIndex open(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create the directory " + directory);
+
+        PositionIndex index = new PositionIndex(directory);
+        File catalog = new File(directory, _CATALOG_FILE);
+        if (catalog.exists())
+            index._readCatalog(catalog);
+        index._deleteUnusedSegments();
+        return index;
+    }
+
+    /**
+     * Sets the number of files read in parallel during an ingestion (the number of cores by default).
+     */
+    public void setThreadCount(int count) {
+        _threadCount = Math.max(1, count);
+    }
+
+
+    /**
+     * Adds the SGF files of a directory (and its subdirectories) to the index. The files which have
+     * not changed since they were indexed are skipped, and the files which no longer exist are
+     * removed from the index.
+     *
+     * @return The number of files which were read.
+     * @throws IOException The index could not be written.
+     */
+    public synchronized int ingest(File sgfDirectory) throws IOException {
+        String root = sgfDirectory.getCanonicalPath() + File.separator;
+        ArrayList<File> found = new ArrayList<>();
+        _listSgfFiles(sgfDirectory.getCanonicalFile(), found);
+
+        // Removes the deleted and modified files
+        HashSet<String> paths = new HashSet<>();
+        ArrayList<File> changed = new ArrayList<>();
+        for (File file : found) {
+            String path = file.getPath();
+            paths.add(path);
+            FileEntry entry = _files.get(path);
+            if (entry == null || entry.lastModified != file.lastModified() || entry.length != file.length()) {
+                if (entry != null)
+                    _removeFile(entry);
+                changed.add(file);
+            }
+        }
+        for (FileEntry entry : new ArrayList<>(_files.values())) {
+            if (entry.path.startsWith(root) && !paths.contains(entry.path))
+                _removeFile(entry);
+        }
+
+        // Reads the files in parallel, the records are gathered in a shared buffer
+        _buffer = new Records(1024);
+        ExecutorService executor = Executors.newFixedThreadPool(_threadCount);
+        try {
+            ArrayList<Future<FileEntry>> results = new ArrayList<>(changed.size());
+            for (final File file : changed) {
+                results.add(executor.submit(new Callable<FileEntry>() {
+                    @Override
+                    public FileEntry call() throws IOException {
+                        return _indexFile(file);
+                    }
+                }));
+            }
+            for (Future<FileEntry> result : results) {
+                FileEntry entry = result.get();
+                _files.put(entry.path, entry);
+                if (entry.gameCount > 0)
+                    _filesById.put(entry.firstGameId, entry);
+            }
+        }
+        catch (Exception e) {
+            throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e);
+        }
+        finally {
+            // The remaining tasks may still be reading a file : wait for them before the buffer is flushed
+            executor.shutdownNow();
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS))
+                    Log.w(TAG, "Waiting for the files being read...");
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (_bufferLock) {
+                if (_buffer.size > 0)
+                    _writeSegments(_buffer);
+                _buffer = null;
+            }
+            // The catalog is written even after a failure, so the files already indexed are kept
+            _writeCatalog();
+        }
+
+        if (_segments.size() > _MAX_SEGMENTS)
+            compact();
+        return changed.size();
+    }
+
+    /**
+     * Reads the games of a file and adds their records to the shared buffer.
+     */
+    private FileEntry _indexFile(File file) throws IOException {
+        FileEntry entry = new FileEntry(file.getPath(), file.lastModified(), file.length());
+        GoGame[] games;
+        try {
+            games = SgfParser.parse(file);
+        }
+        catch (Exception e) {
+            // The file is not read again until it is modified
+            Log.w(TAG, "Cannot read " + file + " : " + e);
+            return entry;
+        }
+
+        Records records = new Records(games.length * 400);
+        entry.gameCount = games.length;
+        entry.firstGameId = _allocateGameIds(games.length);
+        for (int i = 0; i < games.length; i++) {
+            if (games[i].board.getSize() <= ZobristHash.MAX_SIZE)
+                _addGame(games[i], entry.firstGameId + i, records);
+        }
+
+        synchronized (_bufferLock) {
+            if (_buffer == null)
+                throw new IOException("The ingestion has been stopped");
+            _buffer.addAll(records);
+            if (_buffer.size >= _BUFFER_RECORDS) {
+                _writeSegments(_buffer);
+                _buffer = new Records(1024);
+            }
+        }
+        return entry;
+    }
+
+    private int _allocateGameIds(int count) {
+        synchronized (_bufferLock) {
+            int first = _nextGameId;
+            _nextGameId += count;
+            return first;
+        }
+    }
+
+    /**
+     * Replays the main variation of a game and records its positions.
+     */
+    private static void _addGame(GoGame game, int gameId, Records records) {
+        game.gotoFirstMove();
+        GoBoard board = game.board;
+        SymmetryHash hash = board.getSymmetryHash();
+        long[] corners = new long[4];
+        int moveNumber = 0;
+        while (true) {
+            long value = ((long) gameId << 16) | moveNumber;
+            records.add(hash.getCanonicalHash(null, GoBoard.BLACK), value);
+            for (int corner = 0; corner < 4; corner++) {
+                long cornerHash = _getCornerHash(board, corner);
+                if (cornerHash != 0 && cornerHash != corners[corner])
+                    records.add(cornerHash, value);
+                corners[corner] = cornerHash;
+            }
+
+            GameNode node = game.getCurrentNode();
+            if (node.nextNodes.size() == 0 || moveNumber == 0xFFFF)
+                break;
+            GameNode move = node.nextNodes.get(0);
+            game.placeMove(move.x, move.y, move.color);
+            moveNumber++;
+        }
+    }
+
+    /**
+     * Returns the hash of the stones of a corner region, seen from the top left corner. A region
+     * and its mirror along the diagonal have the same hash. Returns 0 if the region is empty.
+     */
+    private static long _getCornerHash(GoBoard board, int corner) {
+        int size = board.getSize();
+        int regionSize = Math.min(CORNER_SIZE, size);
+        long hash = 0;
+        long mirrorHash = 0;
+        boolean empty = true;
+        for (int y = 0; y < regionSize; y++) {
+            for (int x = 0; x < regionSize; x++) {
+                int boardX = ((corner & 1) != 0) ? size - 1 - x : x;
+                int boardY = ((corner & 2) != 0) ? size - 1 - y : y;
+                byte color = board.getColor(boardX, boardY);
+                if (color == GoBoard.BLACK || color == GoBoard.WHITE) {
+                    hash ^= ZobristHash.getStoneKey(x, y, color);
+                    mirrorHash ^= ZobristHash.getStoneKey(y, x, color);
+                    empty = false;
+                }
+            }
+        }
+        return empty ? 0 : Math.min(hash, mirrorHash) ^ _CORNER_KEY;
+    }
+
+
+    /**
+     * Returns the games in which the stones of the specified board occurred (in any of the
+     * 8 symmetries). The ko and the player to move are not compared.
+     */
+    public synchronized List<Match> findPosition(GoBoard board) {
+        return _find(new SymmetryHash(board).getCanonicalHash(null, GoBoard.BLACK));
+    }
+
+    /**
+     * Returns the games in which a corner region contained exactly the stones of the specified
+     * corner of the board (the region is compared with the 4 corners of the games, and with its
+     * mirror along the diagonal). Only the first move of each occurrence is returned.
+     *
+     * @param corner One of TOP_LEFT, TOP_RIGHT, BOTTOM_LEFT or BOTTOM_RIGHT.
+     * @throws IllegalArgumentException The corner is empty.
+     */
+    public synchronized List<Match> findCornerPattern(GoBoard board, int corner) {
+        long hash = _getCornerHash(board, corner);
+        if (hash == 0)
+            throw new IllegalArgumentException("The corner is empty.");
+        return _find(hash);
+    }
+
+    private List<Match> _find(long hash) {
+        ArrayList<Match> matches = new ArrayList<>();
+        for (Segment segment : _segments) {
+            for (int i = segment.findFirst(hash); i < segment.count && segment.getHash(i) == hash; i++) {
+                long value = segment.getValue(i);
+                int gameId = (int) (value >>> 16);
+                Map.Entry<Integer, FileEntry> file = _filesById.floorEntry(gameId);
+                if (file != null && gameId < file.getKey() + file.getValue().gameCount) {
+                    matches.add(new Match(new File(file.getValue().path), gameId - file.getKey(),
+                            (int) (value & 0xFFFF), gameId));
+                }
+            }
+        }
+        Collections.sort(matches, new Comparator<Match>() {
+            @Override
+            public int compare(Match a, Match b) {
+                // Integer.compare() requires API 19
+                if (a.gameId != b.gameId)
+                    return (a.gameId < b.gameId) ? -1 : 1;
+                return (a.moveNumber < b.moveNumber) ? -1 : ((a.moveNumber == b.moveNumber) ? 0 : 1);
+            }
+        });
+        return matches;
+    }
+
+
+    /**
+     * Returns the number of indexed files.
+     */
+    public synchronized int getFileCount() {
+        return _files.size();
+    }
+
+    /**
+     * Returns the number of indexed games.
+     */
+    public synchronized int getGameCount() {
+        int count = 0;
+        for (FileEntry entry : _filesById.values())
+            count += entry.gameCount;
+        return count;
+    }
+
+    /**
+     * Returns the number of records of all segments, including the records of removed games.
+     */
+    public synchronized long getRecordCount() {
+        long count = 0;
+        for (Segment segment : _segments)
+            count += segment.count;
+        return count;
+    }
+
+    /**
+     * Merges all segments, without the records of the games which have been removed. This is done
+     * automatically when an ingestion leaves too many segments.
+     *
+     * @throws IOException The index could not be written.
+     */
+    public synchronized void compact() throws IOException {
+        ArrayList<Segment> oldSegments = new ArrayList<>(_segments);
+        if (oldSegments.size() == 0)
+            return;
+
+        // Merges the sorted segments, and starts a new one when the current one is full
+        ArrayList<Segment> newSegments = new ArrayList<>();
+        int[] positions = new int[oldSegments.size()];
+        DataOutputStream output = null;
+        File file = null;
+        int count = 0;
+        try {
+            while (true) {
+                int best = -1;
+                long bestHash = 0;
+                for (int i = 0; i < positions.length; i++) {
+                    Segment segment = oldSegments.get(i);
+                    if (positions[i] < segment.count && (best < 0 || segment.getHash(positions[i]) < bestHash)) {
+                        best = i;
+                        bestHash = segment.getHash(positions[i]);
+                    }
+                }
+                if (best < 0)
+                    break;
+
+                long value = oldSegments.get(best).getValue(positions[best]++);
+                if (!_isLive((int) (value >>> 16)))
+                    continue;
+                if (output == null || count == _MAX_SEGMENT_RECORDS) {
+                    if (output != null)
+                        newSegments.add(_closeSegment(output, file, count));
+                    file = _newSegmentFile();
+                    output = _createSegment(file);
+                    count = 0;
+                }
+                output.writeLong(bestHash);
+                output.writeLong(value);
+                count++;
+            }
+            if (output != null)
+                newSegments.add(_closeSegment(output, file, count));
+            output = null;
+        }
+        finally {
+            Utils.closeObject(output);
+        }
+
+        _segments.clear();
+        _segments.addAll(newSegments);
+        _writeCatalog();
+        for (Segment segment : oldSegments) {
+            if (!new File(_directory, segment.name).delete())
+                Log.w(TAG, "Cannot delete the segment " + segment.name);
+        }
+    }
+
+    private boolean _isLive(int gameId) {
+        Map.Entry<Integer, FileEntry> file = _filesById.floorEntry(gameId);
+        return file != null && gameId < file.getKey() + file.getValue().gameCount;
+    }
+
+    private void _removeFile(FileEntry entry) {
+        _files.remove(entry.path);
+        if (entry.gameCount > 0)
+            _filesById.remove(entry.firstGameId);
+    }
+
+
+    /**
+     * Sorts the records and writes them in new segments.
+     */
+    private void _writeSegments(Records records) throws IOException {
+        records.sort();
+        for (int start = 0; start < records.size; start += _MAX_SEGMENT_RECORDS) {
+            int end = Math.min(records.size, start + _MAX_SEGMENT_RECORDS);
+            File file = _newSegmentFile();
+            DataOutputStream output = _createSegment(file);
+            try {
+                for (int i = start; i < end; i++) {
+                    output.writeLong(records.keys[i]);
+                    output.writeLong(records.values[i]);
+                }
+                _segments.add(_closeSegment(output, file, end - start));
+                output = null;
+            }
+            finally {
+                Utils.closeObject(output);
+            }
+        }
+    }
+
+    private File _newSegmentFile() {
+        return new File(_directory, "segment-" + (_nextSegmentId++) + ".idx");
+    }
+
+    private static DataOutputStream _createSegment(File file) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+        output.writeInt(_SEGMENT_MAGIC);
+        output.writeInt(0); // The number of records is written when the segment is closed
+        return output;
+    }
+
+    private static Segment _closeSegment(DataOutputStream output, File file, int count) throws IOException {
+        output.close();
+        RandomAccessFile segmentFile = new RandomAccessFile(file, "rw");
+        try {
+            segmentFile.seek(4);
+            segmentFile.writeInt(count);
+        }
+        finally {
+            Utils.closeObject(segmentFile);
+        }
+        return Segment.open(file);
+    }
+
+    private void _writeCatalog() throws IOException {
+        File file = new File(_directory, _CATALOG_FILE);
+        File tempFile = new File(_directory, _CATALOG_FILE + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            output.writeInt(_CATALOG_MAGIC);
+            output.writeInt(_nextGameId);
+            output.writeInt(_nextSegmentId);
+            output.writeInt(_segments.size());
+            for (Segment segment : _segments)
+                output.writeUTF(segment.name);
+            output.writeInt(_files.size());
+            for (FileEntry entry : _files.values()) {
+                output.writeUTF(entry.path);
+                output.writeLong(entry.lastModified);
+                output.writeLong(entry.length);
+                output.writeInt(entry.firstGameId);
+                output.writeInt(entry.gameCount);
+            }
+        }
+        finally {
+            Utils.closeObject(output);
+        }
+        if (!tempFile.renameTo(file))
+            throw new IOException("Cannot write the catalog " + file);
+    }
+
+    private void _readCatalog(File file) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (input.readInt() != _CATALOG_MAGIC)
+                throw new IOException("This is not a position index");
+            _nextGameId = input.readInt();
+            _nextSegmentId = input.readInt();
+            int segmentCount = input.readInt();
+            for (int i = 0; i < segmentCount; i++)
+                _segments.add(Segment.open(new File(_directory, input.readUTF())));
+            int fileCount = input.readInt();
+            for (int i = 0; i < fileCount; i++) {
+                FileEntry entry = new FileEntry(input.readUTF(), input.readLong(), input.readLong());
+                entry.firstGameId = input.readInt();
+                entry.gameCount = input.readInt();
+                _files.put(entry.path, entry);
+                if (entry.gameCount > 0)
+                    _filesById.put(entry.firstGameId, entry);
+            }
+        }
+        finally {
+            Utils.closeObject(input);
+        }
+    }
+
+    /**
+     * Deletes the segments which are not in the catalog (left by an interrupted ingestion).
+     */
+    private void _deleteUnusedSegments() {
+        HashSet<String> names = new HashSet<>();
+        for (Segment segment : _segments)
+            names.add(segment.name);
+        File[] files = _directory.listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith("segment-") && name.endsWith(".idx") && !names.contains(name) && !file.delete())
+                Log.w(TAG, "Cannot delete the unused segment " + name);
+        }
+    }
+
+    private static void _listSgfFiles(File file, List<File> files) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            Arrays.sort(children);
+            for (File child : children)
+                _listSgfFiles(child, files);
+        }
+        else if (file.getName().toLowerCase().endsWith(".sgf")) {
+            files.add(file);
+        }
+    }
+
+
+    /**
+     * An occurrence of a position.
+     */
+    public static final class Match {
+        public final File file;
+
+        /**
+         * The index of the game in the file (see {@link SgfParser#parse(File)}).
+         */
+        public final int gameIndex;
+
+        /**
+         * The number of moves played before the position (0 for the initial position).
+         */
+        public final int moveNumber;
+
+        /**
+         * The id of the game in the index.
+         */
+        public final int gameId;
+
+        public Match(File file, int gameIndex, int moveNumber, int gameId) {
+            this.file = file;
+            this.gameIndex = gameIndex;
+            this.moveNumber = moveNumber;
+            this.gameId = gameId;
+        }
+
+        @Override
+        public String toString() {
+            return file + "#" + (gameIndex + 1) + " move " + moveNumber;
+        }
+    }
+
+
+    private static final class FileEntry {
+        final String path;
+        final long lastModified;
+        final long length;
+        int firstGameId;
+        int gameCount;
+
+        FileEntry(String path, long lastModified, long length) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+
+
+    /**
+     * A sorted segment file, mapped in memory.
+     */
+    private static final class Segment {
+        final String name;
+        final ByteBuffer buffer;
+        final int count;
+
+        private Segment(String name, ByteBuffer buffer, int count) {
+            this.name = name;
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        static Segment open(File file) throws IOException {
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = input.getChannel();
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (channel.size() < _HEADER_SIZE || buffer.getInt(0) != _SEGMENT_MAGIC)
+                    throw new IOException("Invalid segment " + file);
+                int count = buffer.getInt(4);
+                if (channel.size() < _HEADER_SIZE + (long) count * _RECORD_SIZE)
+                    throw new IOException("The segment " + file + " is truncated");
+                return new Segment(file.getName(), buffer, count);
+            }
+            finally {
+                Utils.closeObject(input);
+            }
+        }
+
+        long getHash(int index) {
+            return buffer.getLong(_HEADER_SIZE + index * _RECORD_SIZE);
+        }
+
+        long getValue(int index) {
+            return buffer.getLong(_HEADER_SIZE + index * _RECORD_SIZE + 8);
+        }
+
+        /**
+         * Returns the index of the first record with the specified hash (or a greater one).
+         */
+        int findFirst(long hash) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (getHash(mid) < hash)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+    }
+
+
+    /**
+     * A growable list of (hash, value) records.
+     */
+    private static final class Records {
+        long[] keys;
+        long[] values;
+        int size;
+
+        Records(int capacity) {
+            keys = new long[Math.max(16, capacity)];
+            values = new long[keys.length];
+        }
+
+        void add(long key, long value) {
+            if (size == keys.length)
+                _grow(size + 1);
+            keys[size] = key;
+            values[size] = value;
+            size++;
+        }
+
+        void addAll(Records records) {
+            if (size + records.size > keys.length)
+                _grow(size + records.size);
+            System.arraycopy(records.keys, 0, keys, size, records.size);
+            System.arraycopy(records.values, 0, values, size, records.size);
+            size += records.size;
+        }
+
+        private void _grow(int minCapacity) {
+            int capacity = Math.max(minCapacity, keys.length * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        /**
+         * Sorts the records by key (quicksort with 3-way partitioning, since the positions of
+         * the first moves are shared by many games).
+         */
+        void sort() {
+            _sort(0, size - 1);
+        }
+
+        private void _sort(int low, int high) {
+            while (high - low > 16) {
+                long pivot = _median(keys[low], keys[(low + high) >>> 1], keys[high]);
+                int lt = low, i = low, gt = high;
+                while (i <= gt) {
+                    if (keys[i] < pivot)
+                        _swap(lt++, i++);
+                    else if (keys[i] > pivot)
+                        _swap(i, gt--);
+                    else
+                        i++;
+                }
+                // Recurses on the smaller part, so the stack stays small
+                if (lt - low < high - gt) {
+                    _sort(low, lt - 1);
+                    low = gt + 1;
+                }
+                else {
+                    _sort(gt + 1, high);
+                    high = lt - 1;
+                }
+            }
+            for (int i = low + 1; i <= high; i++) {
+                for (int j = i; j > low && keys[j - 1] > keys[j]; j--)
+                    _swap(j - 1, j);
+            }
+        }
+
+        private static long _median(long a, long b, long c) {
+            return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+        }
+
+        private void _swap(int i, int j) {
+            long key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+            long value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+
+    /**
+     * Command line tool to build and query an index.
+     * <pre>
+     * PositionIndex INDEX_DIRECTORY ingest SGF_DIRECTORY [--threads=N]
+     * PositionIndex INDEX_DIRECTORY find FILE.sgf[#GAME] [--move=N] [--corner=tl|tr|bl|br]
+     * PositionIndex INDEX_DIRECTORY compact
+     * </pre>
+     * "find" searches the position of a game after the specified move (its last move by default),
+     * or one of its corners.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage : PositionIndex INDEX_DIRECTORY ingest SGF_DIRECTORY [--threads=N]");
+            System.err.println("        PositionIndex INDEX_DIRECTORY find FILE.sgf[#GAME] [--move=N] [--corner=tl|tr|bl|br]");
+            System.err.println("        PositionIndex INDEX_DIRECTORY compact");
+            System.exit(2);
+        }
+
+        PositionIndex index = open(new File(args[0]));
+        String command = args[1];
+        long startTime = System.nanoTime();
+        if (command.equals("ingest") && args.length >= 3) {
+            for (int i = 3; i < args.length; i++) {
+                if (args[i].startsWith("--threads="))
+                    index.setThreadCount(Integer.parseInt(args[i].substring(10)));
+            }
+            int count = index.ingest(new File(args[2]));
+            System.out.println(String.format("%d files read in %.1f s, %d files and %d games indexed, %d records",
+                    count, (System.nanoTime() - startTime) / 1e9, index.getFileCount(), index.getGameCount(), index.getRecordCount()));
+        }
+        else if (command.equals("find") && args.length >= 3) {
+            String name = args[2];
+            int gameIndex = 0;
+            int pos = name.lastIndexOf('#');
+            if (pos >= 0) {
+                gameIndex = Integer.parseInt(name.substring(pos + 1)) - 1;
+                name = name.substring(0, pos);
+            }
+            int moveNumber = -1;
+            int corner = -1;
+            for (int i = 3; i < args.length; i++) {
+                if (args[i].startsWith("--move="))
+                    moveNumber = Integer.parseInt(args[i].substring(7));
+                else if (args[i].startsWith("--corner="))
+                    corner = Arrays.asList("tl", "tr", "bl", "br").indexOf(args[i].substring(9));
+            }
+
+            GoGame game = SgfParser.parse(new File(name))[gameIndex];
+            game.gotoFirstMove();
+            game.navigate((moveNumber < 0) ? Integer.MAX_VALUE : moveNumber);
+            startTime = System.nanoTime();
+            List<Match> matches = (corner >= 0) ? index.findCornerPattern(game.board, corner) : index.findPosition(game.board);
+            double millis = (System.nanoTime() - startTime) / 1e6;
+            for (Match match : matches)
+                System.out.println(match);
+            System.out.println(String.format("%d matches in %.2f ms", matches.size(), millis));
+        }
+        else if (command.equals("compact")) {
+            index.compact();
+            System.out.println(String.format("Compacted in %.1f s, %d records", (System.nanoTime() - startTime) / 1e9, index.getRecordCount()));
+        }
+        else {
+            System.err.println("Unknown command : " + command);
+            System.exit(2);
+        }
+    }
+}
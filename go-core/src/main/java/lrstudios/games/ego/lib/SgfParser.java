@@ -79,6 +79,7 @@ public final class SgfParser {
     private IOException _exception;
     private GameInfo _gameInfo;
     private boolean _optimized;
+    private boolean _mainLineOnly;
     private boolean _infoOnly;
     private Coords _cachedCoords = new Coords();
     private StringBuilder _property = new StringBuilder(2);
@@ -434,6 +435,17 @@ public final class SgfParser {
         save(game, stream);
     }
 
+    /**
+     * Saves only the main variation of a game (the first variation of each node) in the specified
+     * stream, with the same optimizations as {@link #saveOptimized(GoGame, OutputStream)}.
+     *
+     * @throws IOException An error occurred during writing.
+     */
+    public void saveMainLine(GoGame game, OutputStream stream) throws IOException {
+        _mainLineOnly = true;
+        saveOptimized(game, stream);
+    }
+
     private Runnable save_loop = new Runnable() {
         @Override
         public void run() {
@@ -454,8 +466,14 @@ public final class SgfParser {
             _writeNode(curNode);
 
             List<GameNode> nextNodesList = curNode.nextNodes;
-            for (GameNode nextNode : nextNodesList) {
-                _save_loop(nextNode, nextNodesList.size() > 1);
+            if (_mainLineOnly) {
+                if (nextNodesList.size() > 0)
+                    _save_loop(nextNodesList.get(0), false);
+            }
+            else {
+                for (GameNode nextNode : nextNodesList) {
+                    _save_loop(nextNode, nextNodesList.size() > 1);
+                }
             }
             if (writeParentheses)
                 _writer.write(')');
@@ -0,0 +1,616 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.lib;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+
+
+/**
+ * A GTP engine written in Java, which plays random legal moves. It is meant to test the GTP
+ * clients without a real engine : it can run in the same process (see {@link #connect()}) or as
+ * a separate process (see {@link #main(String[])}), and can simulate the problems of a real
+ * engine : think time, crash in the middle of a command, garbage on the standard output and
+ * slow standard error.
+ * <p/>
+ * During genmove, the standard error receives the same statistics as Pachi (so they can be read
+ * by PachiStatsParser), and final_score uses area scoring with all stones alive.
+ */
+public class SimulatedGtpEngine {
+    private static final String _BOARD_LETTERS = "ABCDEFGHJKLMNOPQRST";
+    private static final String[] _COMMANDS = {
+            "protocol_version", "name", "version", "known_command", "list_commands", "quit",
+            "boardsize", "clear_board", "komi", "play", "genmove", "undo", "fixed_handicap",
+            "final_score", "final_status_list", "showboard", "loadsgf", "time_settings", "time_left"};
+    private static final String _STDERR_END = "";
+
+    private final List<String> _commandLog = Collections.synchronizedList(new ArrayList<String>());
+    private Random _random = new Random();
+    private long _minThinkTime;
+    private long _maxThinkTime;
+    private int _playoutsPerSecond = 10000;
+    private int _crashAfter = -1;
+    private double _garbageProbability;
+    private long _stderrDelay;
+
+    private Writer _writer;
+    private LinkedBlockingQueue<String> _stderrLines;
+    private GoGame _game;
+    private int _boardSize = 19;
+    private double _komi = 7.5;
+    private int _commandCount;
+    private volatile boolean _crashed;
+
+
+    /**
+     * Starts the engine as a process, on the standard streams. Options :
+     * <pre>
+     * --seed=N          Seed of the random moves.
+     * --think=MIN[:MAX] Time of each genmove, in milliseconds.
+     * --crash-after=N   Exits in the middle of the response to the Nth command.
+     * --garbage=P       Probability to write a line which is not a response before each response.
+     * --stderr-delay=MS Delay of each line written on the standard error.
+     * </pre>
+     */
+    public static void main(String[] args) throws IOException {
+        SimulatedGtpEngine engine = new SimulatedGtpEngine();
+        for (String arg : args) {
+            int pos = arg.indexOf('=');
+            String name = (pos < 0) ? arg : arg.substring(0, pos);
+            String value = (pos < 0) ? "" : arg.substring(pos + 1);
+            if (name.equals("--seed")) {
+                engine.setSeed(Long.parseLong(value));
+            }
+            else if (name.equals("--think")) {
+                String[] bounds = value.split(":");
+                engine.setThinkTime(Long.parseLong(bounds[0]), Long.parseLong(bounds[bounds.length - 1]));
+            }
+            else if (name.equals("--crash-after")) {
+                engine.setCrashAfter(Integer.parseInt(value));
+            }
+            else if (name.equals("--garbage")) {
+                engine.setGarbageProbability(Double.parseDouble(value));
+            }
+            else if (name.equals("--stderr-delay")) {
+                engine.setStderrDelay(Long.parseLong(value));
+            }
+            else {
+                System.err.println("Unknown option : " + arg);
+                System.exit(2);
+            }
+        }
+        engine.run(System.in, System.out, System.err);
+        System.exit(engine.hasCrashed() ? 1 : 0);
+    }
+
+
+    /**
+     * Sets the seed of the random moves, to play the same games again.
+     */
+    public void setSeed(long seed) {
+        _random = new Random(seed);
+    }
+
+    /**
+     * Sets the time of each genmove (a random time between the bounds), in milliseconds.
+     */
+    public void setThinkTime(long minMillis, long maxMillis) {
+        _minThinkTime = minMillis;
+        _maxThinkTime = Math.max(minMillis, maxMillis);
+    }
+
+    /**
+     * Sets the speed reported in the statistics of genmove.
+     */
+    public void setPlayoutsPerSecond(int playoutsPerSecond) {
+        _playoutsPerSecond = playoutsPerSecond;
+    }
+
+    /**
+     * The engine will stop in the middle of its response to the specified command (the first
+     * command is 1), as if it had crashed. -1 disables the crash.
+     */
+    public void setCrashAfter(int commandCount) {
+        _crashAfter = commandCount;
+    }
+
+    /**
+     * Sets the probability to write a line which is not part of a response before each response.
+     */
+    public void setGarbageProbability(double probability) {
+        _garbageProbability = probability;
+    }
+
+    /**
+     * Delays each line written on the standard error, so it arrives after the responses.
+     */
+    public void setStderrDelay(long millis) {
+        _stderrDelay = millis;
+    }
+
+    /**
+     * Returns the commands received by the engine, without their id.
+     */
+    public List<String> getCommandLog() {
+        synchronized (_commandLog) {
+            return new ArrayList<>(_commandLog);
+        }
+    }
+
+    /**
+     * Returns true if the engine has stopped because of {@link #setCrashAfter(int)}.
+     */
+    public boolean hasCrashed() {
+        return _crashed;
+    }
+
+    /**
+     * Starts the engine on a new thread, and returns a client connected to it.
+     *
+     * @param errorOutput Receives the standard error of the engine (can be null).
+     */
+    public GtpClient connect(final OutputStream errorOutput) throws IOException {
+        final PipedOutputStream commands = new PipedOutputStream();
+        final PipedInputStream commandsInput = new PipedInputStream(commands, 65536);
+        final PipedInputStream responses = new PipedInputStream(65536);
+        final PipedOutputStream responsesOutput = new PipedOutputStream(responses);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SimulatedGtpEngine.this.run(commandsInput, responsesOutput, errorOutput);
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "SimulatedGtpEngine").start();
+        return new GtpClient(responses, commands);
+    }
+
+    /**
+     * Starts the engine on a new thread, and returns a client connected to it.
+     * The standard error is ignored.
+     */
+    public GtpClient connect() throws IOException {
+        return connect(null);
+    }
+
+    /**
+     * Executes the commands until "quit" or the end of the input. The output is closed at the end.
+     *
+     * @param errorOutput Receives the standard error of the engine (can be null).
+     */
+    public void run(InputStream input, OutputStream output, OutputStream errorOutput) throws IOException {
+        _writer = new OutputStreamWriter(output, "UTF-8");
+        _game = new GoGame(_boardSize, _komi, 0);
+        Thread stderrThread = null;
+        if (errorOutput != null) {
+            _stderrLines = new LinkedBlockingQueue<>();
+            stderrThread = _startStderrThread(errorOutput);
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#"))
+                    continue;
+
+                // Read the id of the command, if there is one
+                String id = "";
+                int pos = 0;
+                while (pos < line.length() && Character.isDigit(line.charAt(pos)))
+                    pos++;
+                if (pos > 0) {
+                    id = line.substring(0, pos);
+                    line = line.substring(pos).trim();
+                }
+                _commandLog.add(line);
+                _commandCount++;
+
+                String[] words = line.split("\\s+");
+                String response;
+                boolean success = true;
+                try {
+                    response = _execute(words[0].toLowerCase(Locale.US), words);
+                }
+                catch (GtpException e) {
+                    response = e.getMessage();
+                    success = false;
+                }
+
+                if (_garbageProbability > 0 && _random.nextDouble() < _garbageProbability)
+                    _writer.write("garbage line " + _random.nextInt(1000) + "\n");
+                String text = (success ? "=" : "?") + id + (response.length() > 0 ? " " + response : "");
+                if (_commandCount == _crashAfter) {
+                    // Crash in the middle of the response
+                    _writer.write(text.substring(0, Math.max(1, text.length() / 2)));
+                    _writer.flush();
+                    _crashed = true;
+                    return;
+                }
+                _writer.write(text + "\n\n");
+                _writer.flush();
+                if (words[0].equalsIgnoreCase("quit"))
+                    return;
+            }
+        }
+        finally {
+            if (_stderrLines != null)
+                _stderrLines.add(_STDERR_END);
+            if (stderrThread != null) {
+                try {
+                    stderrThread.join();
+                }
+                catch (InterruptedException ignored) {
+                }
+            }
+            Utils.closeObject(_writer);
+        }
+    }
+
+
+    private String _execute(String command, String[] args) throws GtpException {
+        if (command.equals("protocol_version")) {
+            return "2";
+        }
+        else if (command.equals("name")) {
+            return "Simulated";
+        }
+        else if (command.equals("version")) {
+            return "1.0";
+        }
+        else if (command.equals("known_command")) {
+            _checkArgs(args, 2);
+            for (String name : _COMMANDS) {
+                if (name.equals(args[1]))
+                    return "true";
+            }
+            return "false";
+        }
+        else if (command.equals("list_commands")) {
+            StringBuilder sb = new StringBuilder();
+            for (String name : _COMMANDS)
+                sb.append(sb.length() > 0 ? "\n" : "").append(name);
+            return sb.toString();
+        }
+        else if (command.equals("quit") || command.equals("time_settings") || command.equals("time_left")) {
+            return "";
+        }
+        else if (command.equals("boardsize")) {
+            _checkArgs(args, 2);
+            int size = Utils.tryParseInt(args[1], -1);
+            if (size < 2 || size > _BOARD_LETTERS.length())
+                throw new GtpException("unacceptable size");
+            _boardSize = size;
+            _game = new GoGame(_boardSize, _komi, 0);
+            return "";
+        }
+        else if (command.equals("clear_board")) {
+            _game = new GoGame(_boardSize, _komi, 0);
+            return "";
+        }
+        else if (command.equals("komi")) {
+            _checkArgs(args, 2);
+            try {
+                _komi = Double.parseDouble(args[1]);
+            }
+            catch (NumberFormatException e) {
+                throw new GtpException("syntax error");
+            }
+            _game.info.komi = _komi;
+            return "";
+        }
+        else if (command.equals("play")) {
+            _checkArgs(args, 3);
+            byte color = _parseColor(args[1]);
+            Coords coords = _parseCoords(args[2]);
+            if (coords.x >= 0 && !_game.isLegal(coords.x, coords.y, color))
+                throw new GtpException("illegal move");
+            _game.playMove(coords.x, coords.y, color);
+            return "";
+        }
+        else if (command.equals("genmove")) {
+            _checkArgs(args, 2);
+            return _genMove(_parseColor(args[1]));
+        }
+        else if (command.equals("undo")) {
+            if (_game.undo(true) == null)
+                throw new GtpException("cannot undo");
+            return "";
+        }
+        else if (command.equals("fixed_handicap")) {
+            _checkArgs(args, 2);
+            int handicap = Utils.tryParseInt(args[1], -1);
+            if (handicap < 2 || handicap > 9 || _boardSize % 2 == 0 || _boardSize < 7)
+                throw new GtpException("invalid handicap");
+            for (int y = 0; y < _boardSize; y++) {
+                for (int x = 0; x < _boardSize; x++) {
+                    if (_game.board.getColor(x, y) != GoBoard.EMPTY)
+                        throw new GtpException("board not empty");
+                }
+            }
+            _game.placeHandicap(handicap);
+            StringBuilder sb = new StringBuilder();
+            for (int y = 0; y < _boardSize; y++) {
+                for (int x = 0; x < _boardSize; x++) {
+                    if (_game.board.getColor(x, y) == GoBoard.BLACK)
+                        sb.append(sb.length() > 0 ? " " : "").append(_formatCoords(x, y));
+                }
+            }
+            return sb.toString();
+        }
+        else if (command.equals("final_score")) {
+            double score = _getAreaScore();
+            if (score == 0)
+                return "0";
+            return (score > 0 ? "B+" : "W+") + new java.text.DecimalFormat("0.#", java.text.DecimalFormatSymbols.getInstance(Locale.US)).format(Math.abs(score));
+        }
+        else if (command.equals("final_status_list")) {
+            _checkArgs(args, 2);
+            return ""; // All stones are alive, and territories are not listed
+        }
+        else if (command.equals("showboard")) {
+            return _showBoard();
+        }
+        else if (command.equals("loadsgf")) {
+            _checkArgs(args, 2);
+            return _loadSgf(args[1]);
+        }
+        throw new GtpException("unknown command");
+    }
+
+    private String _genMove(byte color) {
+        long thinkTime = _minThinkTime;
+        if (_maxThinkTime > _minThinkTime)
+            thinkTime += (long) (_random.nextDouble() * (_maxThinkTime - _minThinkTime));
+        long start = System.nanoTime();
+
+        // Candidates : all legal moves which don't fill an eye of the player
+        ArrayList<Coords> moves = new ArrayList<>();
+        for (int x = 0; x < _boardSize; x++) {
+            for (int y = 0; y < _boardSize; y++) {
+                if (_game.isLegal(x, y, color) && !_isEye(x, y, color))
+                    moves.add(new Coords(x, y));
+            }
+        }
+        Coords move = moves.isEmpty() ? new Coords(-1, -1) : moves.get(_random.nextInt(moves.size()));
+        String moveStr = (move.x < 0) ? "pass" : _formatCoords(move.x, move.y);
+
+        // Simulates the search, with the same statistics as Pachi
+        int steps = 4;
+        int playouts = (int) (thinkTime * _playoutsPerSecond / 1000);
+        double winRate = 0.3 + _random.nextDouble() * 0.4;
+        for (int i = 1; i <= steps; i++) {
+            _sleep(thinkTime / steps);
+            if (!moves.isEmpty()) {
+                Coords other = moves.get(_random.nextInt(moves.size()));
+                _printError(String.format(Locale.US, "[%d] best %f xkomi 0.0 | seq %-3s | can %s(%.3f) %s(%.3f) ",
+                        playouts * i / steps, winRate, moveStr, moveStr, winRate,
+                        _formatCoords(other.x, other.y), winRate * 0.9));
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9 + 0.000001;
+        _printError(String.format(Locale.US, "*** WINNER is %s (%d,%d) with score %.4f (%d/%d:%d/%d games), extra komi %f",
+                moveStr, move.x + 1, _boardSize - move.y, winRate, playouts / 2, playouts, playouts, playouts, 0.0));
+        _printError(String.format(Locale.US, "genmove in %.2fs (%d games/s, %d games/s/thread)",
+                seconds, (int) (playouts / seconds), (int) (playouts / seconds)));
+
+        _game.playMove(move.x, move.y, color);
+        return moveStr;
+    }
+
+    /**
+     * Returns true if the point is surrounded by stones of the specified color (or the edge).
+     */
+    private boolean _isEye(int x, int y, byte color) {
+        int[][] neighbours = {{x - 1, y}, {x + 1, y}, {x, y - 1}, {x, y + 1}};
+        for (int[] n : neighbours) {
+            if (n[0] >= 0 && n[1] >= 0 && n[0] < _boardSize && n[1] < _boardSize
+                    && _game.board.getColor(n[0], n[1]) != color)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the score with area scoring (black - white - komi), all stones being alive.
+     */
+    private double _getAreaScore() {
+        int black = 0;
+        int white = 0;
+        boolean[] visited = new boolean[_boardSize * _boardSize];
+        ArrayList<Integer> region = new ArrayList<>();
+        for (int start = 0; start < visited.length; start++) {
+            byte color = _game.board.getColor(start % _boardSize, start / _boardSize);
+            if (color == GoBoard.BLACK) {
+                black++;
+            }
+            else if (color == GoBoard.WHITE) {
+                white++;
+            }
+            else if (!visited[start]) {
+                // Flood fill the empty region and find which colors border it
+                int borders = 0;
+                region.clear();
+                region.add(start);
+                visited[start] = true;
+                for (int i = 0; i < region.size(); i++) {
+                    int x = region.get(i) % _boardSize;
+                    int y = region.get(i) / _boardSize;
+                    int[][] neighbours = {{x - 1, y}, {x + 1, y}, {x, y - 1}, {x, y + 1}};
+                    for (int[] n : neighbours) {
+                        if (n[0] < 0 || n[1] < 0 || n[0] >= _boardSize || n[1] >= _boardSize)
+                            continue;
+                        int index = n[1] * _boardSize + n[0];
+                        byte neighbour = _game.board.getColor(n[0], n[1]);
+                        if (neighbour == GoBoard.EMPTY) {
+                            if (!visited[index]) {
+                                visited[index] = true;
+                                region.add(index);
+                            }
+                        }
+                        else {
+                            borders |= neighbour;
+                        }
+                    }
+                }
+                if (borders == GoBoard.BLACK)
+                    black += region.size();
+                else if (borders == GoBoard.WHITE)
+                    white += region.size();
+            }
+        }
+        return black - white - _komi;
+    }
+
+    private String _showBoard() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n  ");
+        for (int x = 0; x < _boardSize; x++)
+            sb.append(' ').append(_BOARD_LETTERS.charAt(x));
+        for (int y = 0; y < _boardSize; y++) {
+            sb.append(String.format(Locale.US, "\n%2d", _boardSize - y));
+            for (int x = 0; x < _boardSize; x++) {
+                byte color = _game.board.getColor(x, y);
+                sb.append(' ').append(color == GoBoard.BLACK ? 'X' : (color == GoBoard.WHITE ? 'O' : '.'));
+            }
+        }
+        return sb.toString();
+    }
+
+    private String _loadSgf(String path) throws GtpException {
+        InputStream stream = null;
+        try {
+            stream = new FileInputStream(path);
+            GoGame game = GoGame.loadSgf(stream)[0];
+            game.gotoLastMove();
+            _game = game;
+            _boardSize = game.board.getSize();
+            _komi = game.info.komi;
+            return "";
+        }
+        catch (IOException e) {
+            throw new GtpException("cannot load file");
+        }
+        finally {
+            Utils.closeObject(stream);
+        }
+    }
+
+
+    private Thread _startStderrThread(OutputStream errorOutput) throws IOException {
+        final Writer writer = new OutputStreamWriter(errorOutput, "UTF-8");
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    String line;
+                    while ((line = _stderrLines.take()) != _STDERR_END) {
+                        if (_stderrDelay > 0)
+                            Thread.sleep(_stderrDelay);
+                        writer.write(line);
+                        writer.write('\n');
+                        writer.flush();
+                    }
+                }
+                catch (InterruptedException ignored) {
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "SimulatedGtpEngine-stderr");
+        thread.start();
+        return thread;
+    }
+
+    private void _printError(String line) {
+        if (_stderrLines != null)
+            _stderrLines.add(line);
+    }
+
+    private static void _sleep(long millis) {
+        if (millis <= 0)
+            return;
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void _checkArgs(String[] args, int count) throws GtpException {
+        if (args.length < count)
+            throw new GtpException("syntax error");
+    }
+
+    private static byte _parseColor(String color) throws GtpException {
+        String c = color.toLowerCase(Locale.US);
+        if (c.equals("b") || c.equals("black"))
+            return GoBoard.BLACK;
+        else if (c.equals("w") || c.equals("white"))
+            return GoBoard.WHITE;
+        throw new GtpException("invalid color");
+    }
+
+    private Coords _parseCoords(String coords) throws GtpException {
+        if (coords.equalsIgnoreCase("pass"))
+            return new Coords(-1, -1);
+        int x = _BOARD_LETTERS.indexOf(Character.toUpperCase(coords.charAt(0)));
+        int row = Utils.tryParseInt(coords.substring(1), -1);
+        if (x < 0 || x >= _boardSize || row < 1 || row > _boardSize)
+            throw new GtpException("invalid coordinate");
+        return new Coords(x, _boardSize - row);
+    }
+
+    private String _formatCoords(int x, int y) {
+        return String.valueOf(_BOARD_LETTERS.charAt(x)) + (_boardSize - y);
+    }
+
+
+    /**
+     * A command failed (the message is the text of the response).
+     */
+    private static final class GtpException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        GtpException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.lib;
+
+
+/**
+ * Keeps the Zobrist hashes (see {@link ZobristHash}) of a position seen through the 8 symmetries
+ * of the board, so equivalent positions (rotated or mirrored) can be recognized : they have
+ * the same canonical hash, which is the smallest of the 8 hashes.
+ * <p/>
+ * The hashes are updated incrementally with {@link #toggleStone(int, int, byte)}, without copying
+ * the board. {@link GoBoard#getSymmetryHash()} returns an instance which follows the board.
+ * <p/>
+ * A symmetry (or transform) is a number between 0 and 7 : a transposition of x and y (bit 2),
+ * followed by a horizontal flip (bit 0) and a vertical flip (bit 1). 0 is the identity.
+ * A position P seen through the transform t is the position where the stone of each
+ * intersection p of P is placed on t(p). The canonical transform of a position is the one which
+ * gives its canonical hash, and moves are converted between the real board and the canonical
+ * board with {@link #toCanonical(int, Coords)} and {@link #toReal(int, Coords)}.
+ */
+public final class SymmetryHash {
+    public static final int IDENTITY = 0;
+    public static final int TRANSFORM_COUNT = 8;
+
+    /**
+     * The transform applied by {@link GoBoard#rotateCCW()}.
+     */
+    public static final int ROTATE_CCW = 6;
+
+    // _compose[a][b] is the transform which applies b, then a
+    private static final int[][] _compose = new int[TRANSFORM_COUNT][TRANSFORM_COUNT];
+
+    static {
+        // Finds each composition by comparing the images of two points of a 3x3 board
+        for (int a = 0; a < TRANSFORM_COUNT; a++) {
+            for (int b = 0; b < TRANSFORM_COUNT; b++) {
+                for (int c = 0; c < TRANSFORM_COUNT; c++) {
+                    boolean same = true;
+                    for (int p = 0; p < 2; p++) {
+                        int x = 1 - p, y = 0;
+                        int bx = transformX(b, x, y, 3), by = transformY(b, x, y, 3);
+                        same &= transformX(a, bx, by, 3) == transformX(c, x, y, 3)
+                                && transformY(a, bx, by, 3) == transformY(c, x, y, 3);
+                    }
+                    if (same)
+                        _compose[a][b] = c;
+                }
+            }
+        }
+    }
+
+    private final int _size;
+    private final long[] _hashes = new long[TRANSFORM_COUNT];
+
+
+    /**
+     * Creates the hashes of an empty board.
+     */
+    public SymmetryHash(int size) {
+        if (size > ZobristHash.MAX_SIZE)
+            throw new IllegalArgumentException("The board is too large (" + size + ").");
+        _size = size;
+        clear();
+    }
+
+    /**
+     * Creates the hashes of the stones of the specified board.
+     */
+    public SymmetryHash(GoBoard board) {
+        this(board.getSize());
+        reset(board);
+    }
+
+    /**
+     * Creates a copy of the specified hashes.
+     */
+    public SymmetryHash(SymmetryHash other) {
+        _size = other._size;
+        System.arraycopy(other._hashes, 0, _hashes, 0, TRANSFORM_COUNT);
+    }
+
+
+    /**
+     * Sets the hashes of an empty board.
+     */
+    public void clear() {
+        long sizeKey = ZobristHash.getSizeKey(_size);
+        for (int t = 0; t < TRANSFORM_COUNT; t++)
+            _hashes[t] = sizeKey;
+    }
+
+    /**
+     * Computes the hashes of the stones of the specified board, which must have the same size.
+     */
+    public void reset(GoBoard board) {
+        clear();
+        byte[] colors = board.getBoardArray();
+        for (int y = 0; y < _size; y++) {
+            for (int x = 0; x < _size; x++) {
+                byte color = colors[y * _size + x];
+                if (color == GoBoard.BLACK || color == GoBoard.WHITE)
+                    toggleStone(x, y, color);
+            }
+        }
+    }
+
+    /**
+     * Adds or removes a stone (adding it twice removes it). Other colors than black and white are ignored.
+     */
+    public void toggleStone(int x, int y, byte color) {
+        if (color != GoBoard.BLACK && color != GoBoard.WHITE)
+            return;
+        for (int t = 0; t < TRANSFORM_COUNT; t++)
+            _hashes[t] ^= ZobristHash.getStoneKey(transformX(t, x, y, _size), transformY(t, x, y, _size), color);
+    }
+
+    /**
+     * Updates the hashes after all stones of the board have been moved by the specified
+     * transform (the 8 hashes are only reordered).
+     */
+    public void transform(int transform) {
+        long[] previous = _hashes.clone();
+        for (int t = 0; t < TRANSFORM_COUNT; t++)
+            _hashes[t] = previous[_compose[t][transform]];
+    }
+
+
+    /**
+     * Returns the hash of the position seen through the specified transform.
+     *
+     * @param ko         The intersection forbidden by a ko on the real board, or null.
+     * @param nextPlayer The player to move.
+     */
+    public long getHash(int transform, Coords ko, byte nextPlayer) {
+        long hash = _hashes[transform] ^ ZobristHash.getPlayerKey(nextPlayer);
+        if (ko != null)
+            hash ^= ZobristHash.getKoKey(transformX(transform, ko.x, ko.y, _size), transformY(transform, ko.x, ko.y, _size));
+        return hash;
+    }
+
+    /**
+     * Returns the canonical hash of the position : the smallest of its 8 hashes.
+     */
+    public long getCanonicalHash(Coords ko, byte nextPlayer) {
+        return getHash(getCanonicalTransform(ko, nextPlayer), ko, nextPlayer);
+    }
+
+    /**
+     * Returns the transform which gives the canonical hash of the position. When the position is
+     * symmetric, several transforms give it and the first one is returned.
+     */
+    public int getCanonicalTransform(Coords ko, byte nextPlayer) {
+        int best = 0;
+        long smallest = getHash(0, ko, nextPlayer);
+        for (int t = 1; t < TRANSFORM_COUNT; t++) {
+            long hash = getHash(t, ko, nextPlayer);
+            if (hash < smallest) {
+                smallest = hash;
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Stores all transforms which give the canonical hash of the position, and returns their
+     * number (more than 1 if the position is symmetric). The moves of a symmetric position
+     * converted with any of these transforms are equivalent.
+     *
+     * @param transforms An array of at least 8 values.
+     */
+    public int getCanonicalTransforms(Coords ko, byte nextPlayer, int[] transforms) {
+        long smallest = 0;
+        int count = 0;
+        for (int t = 0; t < TRANSFORM_COUNT; t++) {
+            long hash = getHash(t, ko, nextPlayer);
+            if (count == 0 || hash < smallest) {
+                smallest = hash;
+                count = 0;
+            }
+            if (hash == smallest)
+                transforms[count++] = t;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the board size of the hashes.
+     */
+    public int getSize() {
+        return _size;
+    }
+
+
+    /**
+     * Converts a move of the real board to the board seen through the specified transform.
+     * Passes (negative coordinates) are not converted.
+     */
+    public Coords toCanonical(int transform, Coords coords) {
+        if (coords.x < 0 || coords.y < 0)
+            return coords;
+        return new Coords(transformX(transform, coords.x, coords.y, _size), transformY(transform, coords.x, coords.y, _size));
+    }
+
+    /**
+     * Converts a move of the board seen through the specified transform to the real board.
+     * Passes (negative coordinates) are not converted.
+     */
+    public Coords toReal(int transform, Coords coords) {
+        return toCanonical(inverse(transform), coords);
+    }
+
+    /**
+     * Returns the x coordinate of the intersection (x, y) after the specified transform.
+     */
+    public static int transformX(int transform, int x, int y, int size) {
+        int value = ((transform & 4) != 0) ? y : x;
+        return ((transform & 1) != 0) ? size - 1 - value : value;
+    }
+
+    /**
+     * Returns the y coordinate of the intersection (x, y) after the specified transform.
+     */
+    public static int transformY(int transform, int x, int y, int size) {
+        int value = ((transform & 4) != 0) ? x : y;
+        return ((transform & 2) != 0) ? size - 1 - value : value;
+    }
+
+    /**
+     * Returns the transform which cancels the specified one.
+     */
+    public static int inverse(int transform) {
+        if ((transform & 4) == 0)
+            return transform;
+        return 4 | ((transform & 1) << 1) | ((transform & 2) >> 1);
+    }
+
+    /**
+     * Returns the transform which applies b, then a.
+     */
+    public static int compose(int a, int b) {
+        return _compose[a][b];
+    }
+}
@@ -18,7 +18,7 @@
 
 package lrstudios.games.ego.lib;
 
-import android.util.Log;
+import lrstudios.util.Log;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
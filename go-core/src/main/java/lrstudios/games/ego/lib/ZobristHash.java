@@ -0,0 +1,133 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.lib;
+
+import java.util.Random;
+
+
+/**
+ * Computes 64-bit Zobrist hashes of Go positions : each (intersection, color) pair has a random
+ * key, and the hash of a position is the XOR of the keys of its stones, of its ko point and of
+ * the player to move. A position can be updated incrementally by XORing the keys of the
+ * stones which are added or removed.
+ * <p/>
+ * The keys are generated from a fixed seed, so hashes can be stored in files and compared
+ * between sessions. Don't change the seed or the order of generation.
+ */
+public final class ZobristHash {
+    /**
+     * The largest supported board size.
+     */
+    public static final int MAX_SIZE = 25;
+
+    private static final long _SEED = 0x476f5a6f62726973L;
+
+    private static final long[] _blackKeys = new long[MAX_SIZE * MAX_SIZE];
+    private static final long[] _whiteKeys = new long[MAX_SIZE * MAX_SIZE];
+    private static final long[] _koKeys = new long[MAX_SIZE * MAX_SIZE];
+    private static final long[] _sizeKeys = new long[MAX_SIZE + 1];
+    private static final long _whiteToPlayKey;
+
+    static {
+        Random random = new Random(_SEED);
+        for (int i = 0; i < _blackKeys.length; i++) {
+            _blackKeys[i] = random.nextLong();
+            _whiteKeys[i] = random.nextLong();
+            _koKeys[i] = random.nextLong();
+        }
+        for (int i = 0; i < _sizeKeys.length; i++)
+            _sizeKeys[i] = random.nextLong();
+        _whiteToPlayKey = random.nextLong();
+    }
+
+
+    private ZobristHash() {
+    }
+
+    /**
+     * Returns the key of a stone. Colors other than black and white (empty intersections,
+     * territories, marks...) have a key of 0.
+     */
+    public static long getStoneKey(int x, int y, byte color) {
+        if (color == GoBoard.BLACK)
+            return _blackKeys[y * MAX_SIZE + x];
+        else if (color == GoBoard.WHITE)
+            return _whiteKeys[y * MAX_SIZE + x];
+        else
+            return 0;
+    }
+
+    /**
+     * Returns the key of an intersection forbidden by a ko.
+     */
+    public static long getKoKey(int x, int y) {
+        return _koKeys[y * MAX_SIZE + x];
+    }
+
+    /**
+     * Returns the key of a board size, so the same stones on different boards have different hashes.
+     */
+    public static long getSizeKey(int size) {
+        return _sizeKeys[size];
+    }
+
+    /**
+     * Returns the key of the player to move (black has a key of 0).
+     */
+    public static long getPlayerKey(byte color) {
+        return (color == GoBoard.WHITE) ? _whiteToPlayKey : 0;
+    }
+
+    /**
+     * Returns the hash of the stones, the size and the ko point of the specified board.
+     *
+     * @throws IllegalArgumentException The board is larger than {@link #MAX_SIZE}.
+     */
+    public static long hash(GoBoard board) {
+        int size = board.getSize();
+        if (size > MAX_SIZE)
+            throw new IllegalArgumentException("The board is too large (" + size + ").");
+
+        long hash = _sizeKeys[size];
+        byte[] colors = board.getBoardArray();
+        for (int y = 0; y < size; y++) {
+            int offset = y * size;
+            for (int x = 0; x < size; x++) {
+                byte color = colors[offset + x];
+                if (color == GoBoard.BLACK)
+                    hash ^= _blackKeys[y * MAX_SIZE + x];
+                else if (color == GoBoard.WHITE)
+                    hash ^= _whiteKeys[y * MAX_SIZE + x];
+            }
+        }
+
+        Coords ko = board.getKoCoords();
+        if (ko != null)
+            hash ^= _koKeys[ko.y * MAX_SIZE + ko.x];
+        return hash;
+    }
+
+    /**
+     * Returns the hash of the specified board with the specified player to move.
+     */
+    public static long hash(GoBoard board, byte nextPlayer) {
+        return hash(board) ^ getPlayerKey(nextPlayer);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+
+/**
+ * Logging for the code which doesn't depend on Android, with the same methods as android.util.Log.
+ * By default, warnings and errors are written on the standard error, and the other messages
+ * are ignored. Android applications should call {@link #setLogger(Logger)} to send everything
+ * to logcat.
+ */
+public final class Log {
+    public static final int
+            VERBOSE = 2,
+            DEBUG = 3,
+            INFO = 4,
+            WARN = 5,
+            ERROR = 6;
+
+    private static volatile Logger _logger = new Logger() {
+        @Override
+        public void println(int priority, String tag, String message) {
+            if (priority >= WARN)
+                System.err.println(tag + ": " + message);
+        }
+    };
+
+
+    /**
+     * Receives the log messages (the priorities are the same as android.util.Log).
+     */
+    public interface Logger {
+        void println(int priority, String tag, String message);
+    }
+
+
+    private Log() {
+    }
+
+    /**
+     * Sets the object which receives all log messages.
+     */
+    public static void setLogger(Logger logger) {
+        _logger = logger;
+    }
+
+    public static void v(String tag, String message) {
+        _logger.println(VERBOSE, tag, message);
+    }
+
+    public static void d(String tag, String message) {
+        _logger.println(DEBUG, tag, message);
+    }
+
+    public static void i(String tag, String message) {
+        _logger.println(INFO, tag, message);
+    }
+
+    public static void w(String tag, String message) {
+        _logger.println(WARN, tag, message);
+    }
+
+    public static void e(String tag, String message) {
+        _logger.println(ERROR, tag, message);
+    }
+
+    public static void e(String tag, String message, Throwable throwable) {
+        _logger.println(ERROR, tag, message + '\n' + getStackTraceString(throwable));
+    }
+
+    public static String getStackTraceString(Throwable throwable) {
+        StringWriter writer = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+}
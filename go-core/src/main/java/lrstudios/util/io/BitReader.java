@@ -0,0 +1,156 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.util.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Reads bits from an InputStream or a ByteBuffer.
+ * <p/>
+ * Bits are stored from the lowest to the highest bit of each byte. The bytes are loaded
+ * in a 64-bit accumulator (with their bit order reversed), so most reads only need a shift.
+ */
+public class BitReader {
+    private InputStream _stream;
+    private ByteBuffer _byteBuffer;
+    private byte[] _buffer;
+    private int _bufferPos;
+    private int _bufferEnd;
+
+    /**
+     * The next bits to read, starting from the highest bit.
+     */
+    private long _acc;
+    private int _accBits;
+
+
+    public BitReader(InputStream stream) {
+        _stream = stream;
+        _buffer = new byte[128];
+    }
+
+    /**
+     * Reads bits from the remaining bytes of the specified buffer. The position of the buffer
+     * is advanced as bytes are consumed.
+     */
+    public BitReader(ByteBuffer buffer) {
+        _byteBuffer = buffer;
+    }
+
+    /**
+     * Reads a single bit from the underlying stream.
+     *
+     * @throws IOException An error occured during reading, or the end of stream has been reached.
+     */
+    public boolean read() throws IOException {
+        if (_accBits == 0 && _fill() == 0)
+            throw new EOFException();
+
+        boolean bit = _acc < 0;
+        _acc <<= 1;
+        _accBits--;
+        return bit;
+    }
+
+
+    /**
+     * Reads multiple bits from the underlying stream and returns them in a long (bit order is
+     * preserved : the first bits read will be the highest bits of the returned long).
+     *
+     * @param bitsToRead The number of bits to read, between 1 and 64 (included).
+     * @throws IOException An error occured during reading, or the end of stream has been reached.
+     */
+    public long read(int bitsToRead) throws IOException {
+        if (bitsToRead > 64)
+            bitsToRead = 64;
+        if (bitsToRead > 32)
+            return (read(bitsToRead - 32) << 32) | read(32);
+        if (bitsToRead <= 0)
+            return 0;
+
+        if (_accBits < bitsToRead && _fill() < bitsToRead)
+            throw new EOFException();
+
+        long result = _acc >>> (64 - bitsToRead);
+        _acc <<= bitsToRead;
+        _accBits -= bitsToRead;
+        return result;
+    }
+
+    /**
+     * Reads several values of the same width and stores them in the specified array.
+     *
+     * @param dst          The array which will contain the values.
+     * @param offset       The index of the first value in the array.
+     * @param count        The number of values to read.
+     * @param bitsPerValue The number of bits of each value, between 1 and 64 (included).
+     * @throws IOException An error occured during reading, or the end of stream has been reached.
+     */
+    public void readBits(long[] dst, int offset, int count, int bitsPerValue) throws IOException {
+        int end = offset + count;
+        if (bitsPerValue > 32) {
+            for (int i = offset; i < end; i++)
+                dst[i] = read(bitsPerValue);
+            return;
+        }
+
+        final int shift = 64 - bitsPerValue;
+        for (int i = offset; i < end; i++) {
+            if (_accBits < bitsPerValue && _fill() < bitsPerValue)
+                throw new EOFException();
+
+            dst[i] = _acc >>> shift;
+            _acc <<= bitsPerValue;
+            _accBits -= bitsPerValue;
+        }
+    }
+
+
+    /**
+     * Fills the accumulator with as many whole bytes as possible and returns the number of
+     * bits available.
+     */
+    private int _fill() throws IOException {
+        if (_byteBuffer != null) {
+            while (_accBits <= 56 && _byteBuffer.hasRemaining()) {
+                _acc |= (long) BitWriter.REVERSED_BYTES[_byteBuffer.get() & 0xFF] << (56 - _accBits);
+                _accBits += 8;
+            }
+        }
+        else {
+            while (_accBits <= 56) {
+                if (_bufferPos == _bufferEnd) {
+                    _bufferEnd = _stream.read(_buffer);
+                    _bufferPos = 0;
+                    if (_bufferEnd <= 0) {
+                        _bufferEnd = 0;
+                        break;
+                    }
+                }
+                _acc |= (long) BitWriter.REVERSED_BYTES[_buffer[_bufferPos++] & 0xFF] << (56 - _accBits);
+                _accBits += 8;
+            }
+        }
+        return _accBits;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.util.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Writes bits to an OutputStream or a ByteBuffer.
+ * <p/>
+ * Bits are stored from the lowest to the highest bit of each byte (this is the format
+ * expected by {@link BitReader}). They are accumulated in a 64-bit word and written by whole bytes.
+ */
+public class BitWriter {
+    /**
+     * Contains each byte value with its bit order reversed.
+     */
+    static final int[] REVERSED_BYTES = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++)
+            REVERSED_BYTES[i] = Integer.reverse(i) >>> 24;
+    }
+
+    private OutputStream _stream;
+    private ByteBuffer _byteBuffer;
+    private byte[] _buffer;
+    private int _bufferPos;
+
+    /**
+     * The pending bits, the last written bit being the lowest one.
+     */
+    private long _acc;
+    private int _accBits;
+
+
+    public BitWriter(OutputStream stream) {
+        _stream = stream;
+        _buffer = new byte[128];
+    }
+
+    /**
+     * Writes the bits directly in the specified buffer, from its current position.
+     * A {@link java.nio.BufferOverflowException} is thrown if the buffer is too small.
+     */
+    public BitWriter(ByteBuffer buffer) {
+        _byteBuffer = buffer;
+    }
+
+
+    public void write(boolean bit) throws IOException {
+        _acc = (_acc << 1) | (bit ? 1 : 0);
+        if (++_accBits >= 32)
+            _drain();
+    }
+
+    /**
+     * Writes the specified bits (starting from the highest bits) to the underlying OutputStream.
+     *
+     * @param bits        The integer containing the bits to write.
+     * @param bitsToWrite The number of bits to write.
+     * @throws IOException An error occured during writing.
+     */
+    public void write(long bits, int bitsToWrite) throws IOException {
+        if (bitsToWrite > 64)
+            bitsToWrite = 64;
+        if (bitsToWrite > 32) {
+            write(bits >>> 32, bitsToWrite - 32);
+            bitsToWrite = 32;
+        }
+        if (bitsToWrite <= 0)
+            return;
+
+        _acc = (_acc << bitsToWrite) | (bits & (-1L >>> (64 - bitsToWrite)));
+        _accBits += bitsToWrite;
+        if (_accBits >= 32)
+            _drain();
+    }
+
+    public void writeLittleEndian(long bits, int bitsToWrite) throws IOException {
+        if (bitsToWrite > 64)
+            bitsToWrite = 64;
+        if (bitsToWrite <= 0)
+            return;
+
+        write(Long.reverse(bits) >>> (64 - bitsToWrite), bitsToWrite);
+    }
+
+    /**
+     * Writes several values of the same width.
+     *
+     * @param src          The array containing the values.
+     * @param offset       The index of the first value in the array.
+     * @param count        The number of values to write.
+     * @param bitsPerValue The number of bits of each value, between 1 and 64 (included).
+     * @throws IOException An error occured during writing.
+     */
+    public void writeBits(long[] src, int offset, int count, int bitsPerValue) throws IOException {
+        int end = offset + count;
+        if (bitsPerValue > 32) {
+            for (int i = offset; i < end; i++)
+                write(src[i], bitsPerValue);
+            return;
+        }
+
+        final long mask = -1L >>> (64 - bitsPerValue);
+        for (int i = offset; i < end; i++) {
+            _acc = (_acc << bitsPerValue) | (src[i] & mask);
+            _accBits += bitsPerValue;
+            if (_accBits >= 32)
+                _drain();
+        }
+    }
+
+
+    /**
+     * Flushes the buffer (necessary after writing all bits). If the number of bits written
+     * isn't a multiple of 8, zeros will be appended to complete the last byte.
+     *
+     * @throws IOException An error occured while writing to the OutputStream.
+     */
+    public void flush() throws IOException {
+        _drain();
+        if (_accBits > 0) {
+            _put(REVERSED_BYTES[(int) (_acc << (8 - _accBits)) & 0xFF]);
+            _acc = 0;
+            _accBits = 0;
+        }
+
+        if (_stream != null) {
+            _stream.write(_buffer, 0, _bufferPos);
+            _bufferPos = 0;
+        }
+    }
+
+
+    /**
+     * Writes all complete bytes contained in the accumulator.
+     */
+    private void _drain() throws IOException {
+        while (_accBits >= 8) {
+            _accBits -= 8;
+            _put(REVERSED_BYTES[(int) (_acc >>> _accBits) & 0xFF]);
+        }
+    }
+
+    private void _put(int b) throws IOException {
+        if (_byteBuffer != null) {
+            _byteBuffer.put((byte) b);
+        }
+        else {
+            if (_bufferPos == _buffer.length) {
+                _stream.write(_buffer, 0, _bufferPos);
+                _bufferPos = 0;
+            }
+            _buffer[_bufferPos++] = (byte) b;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.util.io;
+
+import java.io.IOException;
+
+
+/**
+ * Decodes the data written by a {@link RangeEncoder}. The decoder reads exactly the bytes
+ * written by the encoder, so the underlying {@link BitReader} can be used to read
+ * other data once everything has been decoded.
+ */
+public final class RangeDecoder {
+    private final BitReader _reader;
+    private int _range = 0xFFFFFFFF;
+    private int _code;
+
+
+    /**
+     * Creates a new decoder and reads the first bytes of the coded data.
+     *
+     * @throws IOException An error occured during reading, or the end of stream has been reached.
+     */
+    public RangeDecoder(BitReader reader) throws IOException {
+        _reader = reader;
+        for (int i = 0; i < 5; i++)
+            _code = (_code << 8) | (int) reader.read(8);
+    }
+
+
+    /**
+     * Decodes a single bit with the probability stored in probs[index].
+     */
+    public int decodeBit(int[] probs, int index) throws IOException {
+        int prob = probs[index];
+        int bound = (_range >>> RangeEncoder.PROB_BITS) * prob;
+        int bit;
+        if ((_code ^ 0x80000000) < (bound ^ 0x80000000)) {
+            _range = bound;
+            probs[index] = prob + (((1 << RangeEncoder.PROB_BITS) - prob) >>> RangeEncoder.MOVE_BITS);
+            bit = 0;
+        }
+        else {
+            _range -= bound;
+            _code -= bound;
+            probs[index] = prob - (prob >>> RangeEncoder.MOVE_BITS);
+            bit = 1;
+        }
+
+        while ((_range & RangeEncoder.TOP_MASK) == 0) {
+            _code = (_code << 8) | (int) _reader.read(8);
+            _range <<= 8;
+        }
+        return bit;
+    }
+
+    /**
+     * Decodes a value written with {@link RangeEncoder#encodeBitTree(int[], int, int)}.
+     */
+    public int decodeBitTree(int[] probs, int numBits) throws IOException {
+        int m = 1;
+        for (int i = 0; i < numBits; i++)
+            m = (m << 1) | decodeBit(probs, m);
+        return m - (1 << numBits);
+    }
+
+    /**
+     * Decodes a value written with {@link RangeEncoder#encodeDirectBits(int, int)}.
+     */
+    public int decodeDirectBits(int numBits) throws IOException {
+        int result = 0;
+        for (int i = 0; i < numBits; i++) {
+            _range >>>= 1;
+            int t = (_code - _range) >>> 31;
+            _code -= _range & (t - 1);
+            result = (result << 1) | (1 - t);
+
+            while ((_range & RangeEncoder.TOP_MASK) == 0) {
+                _code = (_code << 8) | (int) _reader.read(8);
+                _range <<= 8;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.util.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * Adaptive binary range encoder (the same as the one used by LZMA), which writes its output
+ * through a {@link BitWriter}. The data must be read back with a {@link RangeDecoder} using
+ * the same probability models.
+ * <p/>
+ * A probability model is an int array initialized with {@link #initModel(int[])} : each element
+ * contains the probability that the next bit coded with this element is 0, and is updated after
+ * each coded bit.
+ */
+public final class RangeEncoder {
+    static final int PROB_BITS = 11;
+    static final int PROB_INIT = (1 << PROB_BITS) / 2;
+    static final int MOVE_BITS = 5;
+    static final int TOP_MASK = 0xFF000000;
+
+    private final BitWriter _writer;
+    private long _low;
+    private int _range = 0xFFFFFFFF;
+    private int _cache;
+    private long _cacheSize = 1;
+
+
+    public RangeEncoder(BitWriter writer) {
+        _writer = writer;
+    }
+
+    /**
+     * Resets all probabilities of the specified model.
+     */
+    public static void initModel(int[] probs) {
+        Arrays.fill(probs, PROB_INIT);
+    }
+
+
+    /**
+     * Encodes a single bit with the probability stored in probs[index].
+     */
+    public void encodeBit(int[] probs, int index, int bit) throws IOException {
+        int prob = probs[index];
+        int bound = (_range >>> PROB_BITS) * prob;
+        if (bit == 0) {
+            _range = bound;
+            probs[index] = prob + (((1 << PROB_BITS) - prob) >>> MOVE_BITS);
+        }
+        else {
+            _low += bound & 0xFFFFFFFFL;
+            _range -= bound;
+            probs[index] = prob - (prob >>> MOVE_BITS);
+        }
+
+        while ((_range & TOP_MASK) == 0) {
+            _range <<= 8;
+            _shiftLow();
+        }
+    }
+
+    /**
+     * Encodes the lowest numBits of value, starting from the highest bit. Each bit is coded
+     * with a probability depending on the previous bits, so the model must contain
+     * (1 << numBits) elements.
+     */
+    public void encodeBitTree(int[] probs, int numBits, int value) throws IOException {
+        int m = 1;
+        for (int i = numBits - 1; i >= 0; i--) {
+            int bit = (value >>> i) & 1;
+            encodeBit(probs, m, bit);
+            m = (m << 1) | bit;
+        }
+    }
+
+    /**
+     * Encodes the lowest numBits of value without any probability model (each bit costs 1 bit).
+     */
+    public void encodeDirectBits(int value, int numBits) throws IOException {
+        for (int i = numBits - 1; i >= 0; i--) {
+            _range >>>= 1;
+            if (((value >>> i) & 1) != 0)
+                _low += _range & 0xFFFFFFFFL;
+
+            while ((_range & TOP_MASK) == 0) {
+                _range <<= 8;
+                _shiftLow();
+            }
+        }
+    }
+
+    /**
+     * Writes the last bytes needed to decode everything that was encoded. The underlying
+     * BitWriter is not flushed, so other bits can be written after the coded data.
+     */
+    public void finish() throws IOException {
+        for (int i = 0; i < 5; i++)
+            _shiftLow();
+    }
+
+
+    private void _shiftLow() throws IOException {
+        int lowHi = (int) (_low >>> 32);
+        if (lowHi != 0 || _low < 0xFF000000L) {
+            int temp = _cache;
+            do {
+                _writer.write((temp + lowHi) & 0xFF, 8);
+                temp = 0xFF;
+            } while (--_cacheSize != 0);
+            _cache = ((int) _low) >>> 24;
+        }
+        _cacheSize++;
+        _low = (_low & 0x00FFFFFFL) << 8;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.lib;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that {@link GtpEngine} keeps a {@link SimulatedGtpEngine} in sync with its game when
+ * moves are undone or replayed.
+ */
+public class GtpClientEngineTest {
+    private final List<GtpClient> _clients = new ArrayList<GtpClient>();
+
+
+    @After
+    public void tearDown() {
+        for (GtpClient client : _clients)
+            client.close();
+    }
+
+    @Test
+    public void testUndo() throws IOException {
+        GtpClientEngine engine = _startEngine(new SimulatedGtpEngine());
+        engine.newGame(9, GoBoard.BLACK, 7.5, 0);
+        String emptyBoard = engine.sendGtpCommand("showboard");
+
+        _playMoves(engine, 5);
+        String board = engine.sendGtpCommand("showboard");
+        _playMoves(engine, 1);
+
+        // Undo the move of the player and the answer of the engine
+        assertTrue(engine.undo(true));
+        assertEquals(board, engine.sendGtpCommand("showboard"));
+        assertEquals(10, engine.getGame().getCurrentMoveNumber());
+
+        while (engine.undo(true)) {
+        }
+        assertEquals(emptyBoard, engine.sendGtpCommand("showboard"));
+        assertEquals(0, engine.getGame().getCurrentMoveNumber());
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        GtpClientEngine engine = _startEngine(new SimulatedGtpEngine());
+        engine.newGame(9, GoBoard.BLACK, 7.5, 0);
+        _playMoves(engine, 10);
+
+        // Restore the game in another engine, as after a restart of the application
+        SimulatedGtpEngine simulated = new SimulatedGtpEngine();
+        GtpClientEngine restored = _startEngine(simulated);
+        restored.newGame(engine.getGame());
+        assertEquals(engine.sendGtpCommand("showboard"), restored.sendGtpCommand("showboard"));
+        assertEquals(20, restored.getGame().getCurrentMoveNumber());
+        assertEquals(engine.isBotTurn(), restored.isBotTurn());
+
+        int plays = 0;
+        for (String command : simulated.getCommandLog()) {
+            if (command.startsWith("play "))
+                plays++;
+        }
+        assertEquals(20, plays);
+    }
+
+
+    private GtpClientEngine _startEngine(SimulatedGtpEngine simulated) throws IOException {
+        simulated.setSeed(_clients.size() + 1);
+        GtpClient client = simulated.connect();
+        _clients.add(client);
+        GtpClientEngine engine = new GtpClientEngine(client);
+        assertTrue(engine.init(new Properties()));
+        return engine;
+    }
+
+    /**
+     * Plays the specified number of moves for each player, the player choosing the first legal
+     * intersection.
+     */
+    private static void _playMoves(GtpEngine engine, int count) {
+        for (int i = 0; i < count; i++) {
+            GoBoard board = engine.getGame().board;
+            int pos = 0;
+            while (!board.isLegal(pos % 9, pos / 9, engine.getGame().getNextPlayer()))
+                pos++;
+            assertTrue(engine.playMove(new Coords(pos % 9, pos / 9)));
+            Coords move = engine.genMove();
+            assertNotNull(move);
+            assertTrue(move.x >= -1);
+        }
+    }
+}
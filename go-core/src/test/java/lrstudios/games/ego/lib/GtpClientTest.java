@@ -0,0 +1,163 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.lib;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the pipelining of {@link GtpClient} against a {@link SimulatedGtpEngine}.
+ */
+public class GtpClientTest {
+    private GtpClient _client;
+
+
+    @After
+    public void tearDown() {
+        if (_client != null)
+            _client.close();
+    }
+
+    @Test
+    public void testPipelining() throws IOException {
+        SimulatedGtpEngine engine = new SimulatedGtpEngine();
+        engine.setSeed(1);
+        engine.setThinkTime(50, 50);
+        _client = engine.connect();
+
+        String[] commands = {"boardsize 9", "clear_board", "play b C3", "genmove w", "showboard", "name", "play b Z1"};
+        Future<GtpResponse>[] futures = _client.sendAll(commands);
+        // All commands are written before the genmove is over
+        assertFalse(futures[futures.length - 1].isDone());
+
+        GtpResponse[] responses = new GtpResponse[futures.length];
+        for (int i = 0; i < futures.length; i++)
+            responses[i] = GtpClient.getResult(futures[i]);
+        for (int i = 0; i < responses.length - 1; i++)
+            assertTrue(commands[i], responses[i].isSuccess());
+        assertFalse(responses[responses.length - 1].isSuccess());
+        assertEquals(1, responses[3].getWords().size());
+        assertEquals(11, responses[4].getLines().size()); // Empty first line, header and 9 rows
+        assertEquals(Arrays.asList(commands), engine.getCommandLog());
+    }
+
+    @Test
+    public void testGarbage() throws IOException {
+        SimulatedGtpEngine engine = new SimulatedGtpEngine();
+        engine.setGarbageProbability(1.0);
+        _client = engine.connect();
+
+        for (int i = 0; i < 20; i++) {
+            GtpResponse[] responses = _client.sendAllAndWait("protocol_version", "known_command genmove", "known_command foo");
+            assertEquals("2", responses[0].getText().trim());
+            assertEquals("true", responses[1].getText().trim());
+            assertEquals("false", responses[2].getText().trim());
+        }
+    }
+
+    @Test
+    public void testCrash() throws IOException {
+        SimulatedGtpEngine engine = new SimulatedGtpEngine();
+        engine.setCrashAfter(3);
+        _client = engine.connect();
+
+        Future<GtpResponse>[] futures = _client.sendAll("name", "version", "showboard", "name");
+        assertTrue(GtpClient.getResult(futures[0]).isSuccess());
+        assertTrue(GtpClient.getResult(futures[1]).isSuccess());
+        for (int i = 2; i < futures.length; i++) {
+            try {
+                GtpClient.getResult(futures[i]);
+                fail("The response " + i + " should have failed");
+            }
+            catch (IOException expected) {
+            }
+        }
+        assertTrue(engine.hasCrashed());
+
+        try {
+            _client.send("name");
+            fail("The client should be closed");
+        }
+        catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testResponseIds() throws Exception {
+        PipedOutputStream responses = new PipedOutputStream();
+        PipedInputStream commands = new PipedInputStream(65536);
+        _client = new GtpClient(new PipedInputStream(responses, 65536), new PipedOutputStream(commands));
+        Writer engine = new OutputStreamWriter(responses);
+
+        Future<GtpResponse>[] futures = _client.sendAll("name", "version", "protocol_version");
+        // Unknown ids are ignored, and the commands before the answered one fail
+        engine.write("=99 foo\n\n=2 1.0\n\n");
+        engine.flush();
+        assertEquals("1.0", GtpClient.getResult(futures[1]).getText().trim());
+        try {
+            GtpClient.getResult(futures[0]);
+            fail("The first command was not answered");
+        }
+        catch (IOException expected) {
+        }
+        assertFalse(futures[2].isDone());
+
+        engine.write("=3 2\n\n");
+        engine.flush();
+        assertEquals("2", GtpClient.getResult(futures[2]).getText().trim());
+    }
+
+    @Test
+    public void testCloseStopsThreads() throws Exception {
+        _client = new SimulatedGtpEngine().connect();
+        assertTrue(_client.sendAndWait("name").isSuccess());
+        _client.close();
+        _client = null;
+
+        long end = System.currentTimeMillis() + 5000;
+        Thread thread;
+        while ((thread = _findThread("GtpClient", "SimulatedGtpEngine")) != null && System.currentTimeMillis() < end)
+            Thread.sleep(10);
+        assertNull("The thread " + (thread == null ? "" : thread.getName()) + " is still running", thread);
+    }
+
+
+    private static Thread _findThread(String... names) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && Arrays.asList(names).contains(thread.getName()))
+                return thread;
+        }
+        return null;
+    }
+}
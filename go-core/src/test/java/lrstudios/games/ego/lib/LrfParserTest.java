@@ -0,0 +1,105 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lrstudios.games.ego.lib;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Stack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Saves games in both LRF encodings and checks that the same move tree is read back.
+ */
+public class LrfParserTest {
+    private static final String[] PASS_GAMES = {
+            "(;SZ[19];B[dd];W[pp];B[dp];W[];B[pd])",
+            "(;SZ[9];B[cc];W[gg];B[];W[cg])",
+            "(;SZ[9];B[];W[])",
+            "(;SZ[19];B[aa];W[ab];B[];W[];B[ba](;W[ss])(;W[]))"
+    };
+
+
+    @Test
+    public void testPasses() throws IOException {
+        for (String sgf : PASS_GAMES) {
+            GoGame game = GoGame.loadSgf(sgf)[0];
+            assertRoundTrip(sgf, game, LrfParser.ENCODING_FIXED);
+            assertRoundTrip(sgf, game, LrfParser.ENCODING_ARITHMETIC);
+        }
+    }
+
+    @Test
+    public void testRegressionGames() throws IOException {
+        File[] files = _getGamesDir().listFiles();
+        assertNotNull(files);
+        int count = 0;
+        for (File file : files) {
+            if (!file.getName().endsWith(".sgf"))
+                continue;
+            for (GoGame game : SgfParser.parse(file)) {
+                assertRoundTrip(file.getName(), game, LrfParser.ENCODING_FIXED);
+                assertRoundTrip(file.getName(), game, LrfParser.ENCODING_ARITHMETIC);
+            }
+            count++;
+        }
+        assertTrue(count > 0);
+    }
+
+
+    private static void assertRoundTrip(String name, GoGame game, int encoding) throws IOException {
+        GoGame result = new LrfParser().parse(new ByteArrayInputStream(_save(game, encoding)));
+        assertEquals(name + " (encoding " + encoding + ")", _getTree(game), _getTree(result));
+    }
+
+    private static byte[] _save(GoGame game, int encoding) throws IOException {
+        LrfParser parser = new LrfParser();
+        parser.setEncoding(encoding);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        parser.save(game, stream);
+        return stream.toByteArray();
+    }
+
+    /**
+     * Returns the coordinates and the variation count of all the nodes of the tree, in preorder. Colors are not compared
+     * because the LRF format assumes that they alternate.
+     */
+    private static String _getTree(GoGame game) {
+        StringBuilder builder = new StringBuilder();
+        Stack<GameNode> stack = new Stack<GameNode>();
+        stack.push(game.getBaseNode());
+        while (!stack.empty()) {
+            GameNode node = stack.pop();
+            builder.append(node.x).append(',').append(node.y).append(':').append(node.nextNodes.size()).append(' ');
+            for (int i = node.nextNodes.size() - 1; i >= 0; i--)
+                stack.push(node.nextNodes.get(i));
+        }
+        return builder.toString();
+    }
+
+    private static File _getGamesDir() {
+        return new File(System.getProperty("sgf.dir", "../jni/pachi/t-regress/games"));
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.lib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Indexes copies of the t-regress games, then checks the searches after a new ingestion of
+ * modified and deleted files, after {@link PositionIndex#compact()} and after the index is opened again.
+ */
+public class PositionIndexTest {
+    private File _sgfDir;
+    private File _indexDir;
+
+
+    @Before
+    public void setUp() throws IOException {
+        _sgfDir = _createTempDir("sgf");
+        _indexDir = _createTempDir("index");
+        File[] files = _getGamesDir().listFiles();
+        assertNotNull(files);
+        for (File file : files) {
+            if (file.getName().endsWith(".sgf"))
+                _copy(file, new File(_sgfDir, file.getName()));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        _delete(_sgfDir);
+        _delete(_indexDir);
+    }
+
+    @Test
+    public void testIngestFindCompact() throws IOException {
+        File[] files = _sgfDir.listFiles();
+        assertNotNull(files);
+        int fileCount = files.length;
+        assertTrue(fileCount > 2);
+
+        PositionIndex index = PositionIndex.open(_indexDir);
+        index.setThreadCount(4);
+        assertEquals(fileCount, index.ingest(_sgfDir));
+        assertEquals(fileCount, index.getFileCount());
+        for (File file : files)
+            assertFound(index, file, 30);
+
+        // Nothing is read again if the files have not changed
+        assertEquals(0, index.ingest(_sgfDir));
+        long recordCount = index.getRecordCount();
+
+        // A modified file is read again, the games of a deleted file are not found anymore
+        File modified = files[0];
+        File deleted = files[1];
+        assertTrue(modified.setLastModified(modified.lastModified() + 10000));
+        assertFound(index, deleted, 40);
+        GoGame deletedGame = SgfParser.parse(deleted)[0];
+        _replay(deletedGame, 40);
+        GoBoard deletedBoard = deletedGame.board;
+        assertTrue(deleted.delete());
+        assertEquals(1, index.ingest(_sgfDir));
+        assertEquals(fileCount - 1, index.getFileCount());
+        assertFound(index, modified, 30);
+        assertNotFound(index, deleted, deletedBoard);
+        assertTrue(index.getRecordCount() > recordCount);
+
+        // The records of the removed games are dropped by the compaction
+        index.compact();
+        assertTrue(index.getRecordCount() < recordCount);
+        for (File file : _sgfDir.listFiles())
+            assertFound(index, file, 30);
+        assertNotFound(index, deleted, deletedBoard);
+
+        PositionIndex reopened = PositionIndex.open(_indexDir);
+        assertEquals(fileCount - 1, reopened.getFileCount());
+        assertEquals(index.getRecordCount(), reopened.getRecordCount());
+        for (File file : _sgfDir.listFiles())
+            assertFound(reopened, file, 20);
+        assertEquals(0, reopened.ingest(_sgfDir));
+    }
+
+
+    /**
+     * Checks that the position after the specified move of the first game of a file (or its last
+     * move if the game is shorter) is found, also when the board is rotated.
+     */
+    private static void assertFound(PositionIndex index, File file, int maxMoveNumber) throws IOException {
+        GoGame game = SgfParser.parse(file)[0];
+        int moveNumber = _replay(game, maxMoveNumber);
+        GoBoard board = game.board;
+        File expectedFile = file.getCanonicalFile();
+        for (int rotation = 0; rotation < 4; rotation++) {
+            boolean found = false;
+            for (PositionIndex.Match match : index.findPosition(board)) {
+                if (match.file.equals(expectedFile) && match.gameIndex == 0 && match.moveNumber == moveNumber)
+                    found = true;
+            }
+            assertTrue(file.getName() + " (move " + moveNumber + ", rotation " + rotation + ")", found);
+            board.rotateCCW();
+        }
+    }
+
+    private static void assertNotFound(PositionIndex index, File file, GoBoard board) throws IOException {
+        File deletedFile = file.getCanonicalFile();
+        List<PositionIndex.Match> matches = index.findPosition(board);
+        for (PositionIndex.Match match : matches)
+            assertFalse(file.getName(), match.file.equals(deletedFile));
+    }
+
+    /**
+     * Plays the main variation of a game from the start, up to the specified number of moves,
+     * and returns the number of moves played.
+     */
+    private static int _replay(GoGame game, int maxMoveNumber) {
+        game.gotoFirstMove();
+        int moveNumber = 0;
+        while (moveNumber < maxMoveNumber && game.getCurrentNode().nextNodes.size() > 0) {
+            GameNode move = game.getCurrentNode().nextNodes.get(0);
+            game.placeMove(move.x, move.y, move.color);
+            moveNumber++;
+        }
+        return moveNumber;
+    }
+
+    private static File _getGamesDir() {
+        return new File(System.getProperty("sgf.dir", "../jni/pachi/t-regress/games"));
+    }
+
+    private static File _createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        if (!dir.delete() || !dir.mkdir())
+            throw new IOException("Cannot create the directory " + dir);
+        return dir;
+    }
+
+    private static void _copy(File source, File target) throws IOException {
+        InputStream input = null;
+        OutputStream output = null;
+        try {
+            input = new FileInputStream(source);
+            output = new FileOutputStream(target);
+            Utils.copyStream(input, output, 4096);
+        }
+        finally {
+            Utils.closeObject(input);
+            Utils.closeObject(output);
+        }
+    }
+
+    private static void _delete(File file) {
+        if (file == null)
+            return;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children)
+                _delete(child);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * This file is part of Elygo-lib.
+ * Copyright (C) 2012   Emmanuel Mathis [emmanuel *at* lr-studios.net]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package lrstudios.games.ego.lib;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the hashes updated incrementally by {@link GoBoard} are the same as the hashes
+ * computed from scratch, and the conversions of moves between the real and canonical boards.
+ */
+public class SymmetryHashTest {
+
+    @Test
+    public void testTransformRoundTrip() {
+        for (int size : new int[]{9, 13, 19}) {
+            SymmetryHash hash = new SymmetryHash(size);
+            for (int t = 0; t < SymmetryHash.TRANSFORM_COUNT; t++) {
+                assertEquals(SymmetryHash.IDENTITY, SymmetryHash.compose(SymmetryHash.inverse(t), t));
+                for (int y = 0; y < size; y++) {
+                    for (int x = 0; x < size; x++) {
+                        Coords coords = new Coords(x, y);
+                        Coords canonical = hash.toCanonical(t, coords);
+                        assertTrue(canonical.x >= 0 && canonical.x < size && canonical.y >= 0 && canonical.y < size);
+                        assertEquals("transform " + t + " on " + size + "x" + size, coords, hash.toReal(t, canonical));
+                    }
+                }
+                Coords pass = new Coords(-1, -1);
+                assertEquals(pass, hash.toReal(t, hash.toCanonical(t, pass)));
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalHashes() throws IOException {
+        File[] files = _getGamesDir().listFiles();
+        assertNotNull(files);
+        int count = 0;
+        for (File file : files) {
+            if (!file.getName().endsWith(".sgf"))
+                continue;
+            for (GoGame game : SgfParser.parse(file)) {
+                String name = file.getName();
+                game.gotoFirstMove();
+                // The hashes follow the board from here
+                game.board.getSymmetryHash();
+                assertSameHashes(name + " (start)", game.board);
+
+                int moves = 0;
+                while (game.navigate(1) > 0) {
+                    moves++;
+                    assertSameHashes(name + " (move " + moves + ")", game.board);
+                }
+
+                long canonical = game.board.getSymmetryHash().getCanonicalHash(null, GoBoard.BLACK);
+                for (int i = 0; i < 4; i++) {
+                    game.rotateCCW();
+                    assertSameHashes(name + " (rotation " + (i + 1) + ")", game.board);
+                    assertEquals(name, canonical, game.board.getSymmetryHash().getCanonicalHash(null, GoBoard.BLACK));
+                }
+
+                game.rotateCCW();
+                game.navigate(-moves / 2);
+                assertSameHashes(name + " (back to move " + (moves - moves / 2) + ")", game.board);
+                while (game.navigate(1) > 0)
+                    assertSameHashes(name + " (after rotation, move " + game.getCurrentMoveNumber() + ")", game.board);
+            }
+            count++;
+        }
+        assertTrue(count > 0);
+    }
+
+
+    private static void assertSameHashes(String message, GoBoard board) {
+        SymmetryHash expected = new SymmetryHash(board);
+        SymmetryHash actual = board.getSymmetryHash();
+        Coords ko = board.getKoCoords();
+        for (int t = 0; t < SymmetryHash.TRANSFORM_COUNT; t++) {
+            assertEquals(message + ", transform " + t, expected.getHash(t, ko, GoBoard.BLACK), actual.getHash(t, ko, GoBoard.BLACK));
+            assertEquals(message + ", transform " + t, expected.getHash(t, ko, GoBoard.WHITE), actual.getHash(t, ko, GoBoard.WHITE));
+        }
+    }
+
+    private static File _getGamesDir() {
+        return new File(System.getProperty("sgf.dir", "../jni/pachi/t-regress/games"));
+    }
+}